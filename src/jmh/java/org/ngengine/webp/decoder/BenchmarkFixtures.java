@@ -0,0 +1,22 @@
+package org.ngengine.webp.decoder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Fixture loading shared by the JMH benchmarks (paths are relative to the project root). */
+final class BenchmarkFixtures {
+    private BenchmarkFixtures() {}
+
+    /** Reads {@code tests/images/<fixture>.webp}. */
+    static byte[] readWebP(String fixture) {
+        Path p = Path.of("tests", "images", fixture + ".webp");
+        try {
+            return Files.readAllBytes(p);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Missing benchmark fixture " + p.toAbsolutePath()
+                    + " (run benchmarks from the project root, e.g. ./gradlew jmh)", e);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.ngengine.webp.decoder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The chunk-based {@link Vp8ArithmeticDecoder} as it was before the 56-bit window rewrite, kept as the baseline
+ * for {@link Vp8BoolDecoderBenchmark}. Only the reading methods are kept.
+ */
+final class LegacyVp8ArithmeticDecoder {
+    /** Sentinel indicating the tolerant one-byte-overread window has been exhausted. */
+    private static final int FINAL_BYTES_REMAINING_EOF = -0xE;
+
+    private int[] chunks; // big-endian u32 chunks; reused across init() calls
+    private int numChunks;
+    private int chunkIndex;
+    private long value;
+    private int range;
+    private int bitCount;
+
+    private final byte[] finalBytes = new byte[3];
+    private int finalBytesRemaining;
+
+    /** Creates a decoder in reset state; call {@link #init(ByteBuffer, int, int)} before reading bits. */
+    LegacyVp8ArithmeticDecoder() {
+        this.chunks = new int[0];
+        this.chunkIndex = 0;
+        this.value = 0;
+        this.range = 255;
+        this.bitCount = -8;
+        this.finalBytesRemaining = FINAL_BYTES_REMAINING_EOF;
+    }
+
+    /**
+     * Initializes the decoder with a VP8 partition payload.
+     *
+     * @param buf partition byte buffer
+     * @param len number of bytes from {@code buf} that belong to this partition
+     * @throws WebPDecodeException if {@code len} is out of bounds
+     */
+    void init(byte[] buf, int len) throws WebPDecodeException {
+        init(ByteBuffer.wrap(buf), 0, len);
+    }
+
+    /**
+     * Initializes the decoder with the VP8 partition stored at {@code buf[off, off + len)}, using absolute indexes.
+     *
+     * @throws WebPDecodeException if the slice is out of bounds
+     */
+    void init(ByteBuffer buf, int off, int len) throws WebPDecodeException {
+        if (off < 0 || len < 0 || len > buf.limit() - off) {
+            throw new WebPDecodeException("Invalid partition length");
+        }
+
+        int numFullChunks = len / 4;
+        int rem = len - 4 * numFullChunks;
+
+        if (this.chunks.length < numFullChunks) {
+            this.chunks = new int[numFullChunks];
+        }
+        this.numChunks = 0;
+        loadChunks(buf, off, numFullChunks, rem);
+
+        this.chunkIndex = 0;
+        this.value = 0;
+        this.range = 255;
+        this.bitCount = -8;
+    }
+
+    private void loadChunks(ByteBuffer buf, int off, int numFullChunks, int rem) {
+        // Chunks are big-endian; getInt honours the buffer's own byte order.
+        boolean swap = buf.order() == ByteOrder.LITTLE_ENDIAN;
+        for (int i = numChunks; i < numFullChunks; i++) {
+            int v = buf.getInt(off + i * 4);
+            this.chunks[i] = swap ? Integer.reverseBytes(v) : v;
+        }
+        this.numChunks = numFullChunks;
+
+        for (int i = 0; i < 3; i++) {
+            this.finalBytes[i] = i < rem ? buf.get(off + numFullChunks * 4 + i) : 0;
+        }
+        this.finalBytesRemaining = rem;
+    }
+
+    /**
+     * Returns {@code true} when the decoder has advanced past the tolerant read window at stream end.
+     */
+    boolean isPastEof() {
+        return finalBytesRemaining == FINAL_BYTES_REMAINING_EOF;
+    }
+
+    private void loadFromFinalBytes() {
+        if (finalBytesRemaining > 0) {
+            finalBytesRemaining -= 1;
+            byte b = finalBytes[0];
+            // rotate left
+            finalBytes[0] = finalBytes[1];
+            finalBytes[1] = finalBytes[2];
+            finalBytes[2] = 0;
+
+            value <<= 8;
+            value |= (b & 0xFFL);
+            bitCount += 8;
+        } else if (finalBytesRemaining == 0) {
+            // libwebp tolerance: allow reading one byte past end
+            finalBytesRemaining -= 1;
+            value <<= 8;
+            bitCount += 8;
+        } else {
+            finalBytesRemaining = FINAL_BYTES_REMAINING_EOF;
+        }
+    }
+
+    /**
+     * Reads one arithmetic-coded bit using the provided probability.
+     *
+     * @param probability probability in [0, 255]
+     * @return decoded bit value
+     * @throws WebPDecodeException if the bitstream ends unexpectedly
+     */
+    private boolean readBit(int probability) throws WebPDecodeException {
+        if (bitCount < 0) {
+            if (chunkIndex < numChunks) {
+                long v = chunks[chunkIndex++] & 0xFFFF_FFFFL;
+                value <<= 32;
+                value |= v;
+                bitCount += 32;
+            } else {
+                loadFromFinalBytes();
+                if (isPastEof()) {
+                    throw new WebPDecodeException("VP8 bitstream ended early");
+                }
+            }
+        }
+
+        int split = 1 + (((range - 1) * probability) >> 8);
+        long bigSplit = ((long) split) << bitCount;
+
+        boolean retval;
+        if (value >= bigSplit) {
+            range -= split;
+            value -= bigSplit;
+            retval = true;
+        } else {
+            range = split;
+            retval = false;
+        }
+
+        int shift = Integer.numberOfLeadingZeros(range) - 24;
+        if (shift < 0) {
+            shift = 0;
+        }
+        range <<= shift;
+        bitCount -= shift;
+
+        return retval;
+    }
+
+    /** Reads a single boolean using VP8 probability coding. */
+    boolean readBool(int probability) throws WebPDecodeException {
+        return readBit(probability & 0xFF);
+    }
+
+    /** Reads a single unbiased flag bit (equivalent to probability 128). */
+    boolean readFlag() throws WebPDecodeException {
+        return readBit(128);
+    }
+
+    /**
+     * Reads an unsigned literal made of {@code n} bits.
+     *
+     * @param n bit width
+     * @return unsigned value composed MSB-first from the stream
+     */
+    int readLiteral(int n) throws WebPDecodeException {
+        int v = 0;
+        for (int i = 0; i < n; i++) {
+            v = (v << 1) | (readFlag() ? 1 : 0);
+        }
+        return v;
+    }
+}
@@ -0,0 +1,80 @@
+package org.ngengine.webp.decoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Symbol decoding throughput of {@link Vp8ArithmeticDecoder#readWithTree} and of the unrolled coefficient reader
+ * {@link Vp8Decoder.Decoder#readCoefficients} on pseudo-random partitions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Vp8ArithmeticDecoderBenchmark {
+    private static final int SYMBOLS = 4096;
+
+    private final Vp8ArithmeticDecoder decoder = new Vp8ArithmeticDecoder();
+    private byte[] partition;
+    private Vp8TreeNode[] tokenTree;
+    private Vp8TreeNode[] bpredTree;
+    private final byte[] tokenProbs = Vp8Common.newDefaultTokenProbs();
+    private final int[] block = new int[16];
+
+    @Setup
+    public void setup() {
+        // Random bytes decode like a high-entropy partition; the tolerant tail keeps reads in-bounds.
+        partition = new byte[SYMBOLS * 2];
+        new Random(0x5EED).nextBytes(partition);
+        tokenTree = Vp8Common.treeNodesFrom(Vp8Common.DCT_TOKEN_TREE, Vp8Common.COEFF_PROBS[0][1][0]);
+        bpredTree = Vp8Common.KEYFRAME_BPRED_MODE_NODES[0][0];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public int readWithTreeTokens() throws WebPDecodeException {
+        decoder.init(partition, partition.length);
+        int acc = 0;
+        for (int i = 0; i < SYMBOLS; i++) {
+            acc += decoder.readWithTree(tokenTree);
+        }
+        return acc;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public int readWithTreeIntraModes() throws WebPDecodeException {
+        decoder.init(partition, partition.length);
+        int acc = 0;
+        for (int i = 0; i < SYMBOLS; i++) {
+            acc += decoder.readWithTree(bpredTree);
+        }
+        return acc;
+    }
+
+    /** Scored per 4x4 block; random data ends most blocks after a few tokens. */
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public int readCoefficients() throws WebPDecodeException {
+        decoder.init(partition, partition.length);
+        int acc = 0;
+        for (int i = 0; i < SYMBOLS; i++) {
+            acc += Vp8Decoder.Decoder.readCoefficients(decoder, tokenProbs, 3, i % 3, 0, (short) 8, (short) 10, block, 0);
+        }
+        return acc + block[0];
+    }
+}
@@ -0,0 +1,113 @@
+package org.ngengine.webp.decoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Vp8ArithmeticDecoder} against {@link LegacyVp8ArithmeticDecoder}, its chunk-based predecessor: bits with
+ * varying probabilities, unbiased flags and 8-bit literals, scored per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Vp8BoolDecoderBenchmark {
+    private static final int CALLS = 4096;
+
+    private final Vp8ArithmeticDecoder decoder = new Vp8ArithmeticDecoder();
+    private final LegacyVp8ArithmeticDecoder legacy = new LegacyVp8ArithmeticDecoder();
+    private byte[] partition;
+    private int[] probs;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(0x22);
+        // Random bytes decode like a high-entropy partition; large enough for CALLS 8-bit literals.
+        partition = new byte[CALLS * 2];
+        rnd.nextBytes(partition);
+        probs = new int[CALLS];
+        for (int i = 0; i < CALLS; i++) {
+            probs[i] = 1 + rnd.nextInt(255);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public int readBool() throws WebPDecodeException {
+        decoder.init(partition, partition.length);
+        int acc = 0;
+        for (int i = 0; i < CALLS; i++) {
+            acc += decoder.readBool(probs[i]) ? 1 : 0;
+        }
+        return acc;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public int readBoolLegacy() throws WebPDecodeException {
+        legacy.init(partition, partition.length);
+        int acc = 0;
+        for (int i = 0; i < CALLS; i++) {
+            acc += legacy.readBool(probs[i]) ? 1 : 0;
+        }
+        return acc;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public int readFlag() throws WebPDecodeException {
+        decoder.init(partition, partition.length);
+        int acc = 0;
+        for (int i = 0; i < CALLS; i++) {
+            acc += decoder.readFlag() ? 1 : 0;
+        }
+        return acc;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public int readFlagLegacy() throws WebPDecodeException {
+        legacy.init(partition, partition.length);
+        int acc = 0;
+        for (int i = 0; i < CALLS; i++) {
+            acc += legacy.readFlag() ? 1 : 0;
+        }
+        return acc;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public int readLiteral8() throws WebPDecodeException {
+        decoder.init(partition, partition.length);
+        int acc = 0;
+        for (int i = 0; i < CALLS; i++) {
+            acc += decoder.readLiteral(8);
+        }
+        return acc;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public int readLiteral8Legacy() throws WebPDecodeException {
+        legacy.init(partition, partition.length);
+        int acc = 0;
+        for (int i = 0; i < CALLS; i++) {
+            acc += legacy.readLiteral(8);
+        }
+        return acc;
+    }
+}
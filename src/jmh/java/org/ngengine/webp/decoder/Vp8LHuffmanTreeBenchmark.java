@@ -0,0 +1,108 @@
+package org.ngengine.webp.decoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** VP8L Huffman table construction and {@link Vp8LHuffmanTree#readSymbol} throughput. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Vp8LHuffmanTreeBenchmark {
+    private static final int SYMBOLS = 4096;
+
+    /** Green/length alphabet (280) or a plain 8-bit channel alphabet (256). */
+    @Param({"280", "256"})
+    public int alphabetSize;
+
+    /** Frequency skew: larger values give longer codes and more secondary-table lookups. */
+    @Param({"1", "8"})
+    public int skew;
+
+    private int[] codeLengths;
+    private Vp8LHuffmanTree tree;
+    private final Vp8LHuffmanTree.Scratch scratch = new Vp8LHuffmanTree.Scratch();
+    private ByteBuffer bits;
+
+    @Setup
+    public void setup() throws WebPDecodeException {
+        Random rnd = new Random(0x4C05);
+        int[] freq = new int[alphabetSize];
+        for (int i = 0; i < freq.length; i++) {
+            freq[i] = 1 + rnd.nextInt(1000 / skew + 1) * (i < 16 ? skew * skew : 1);
+        }
+        codeLengths = huffmanCodeLengths(freq);
+        tree = Vp8LHuffmanTree.buildImplicit(codeLengths);
+        byte[] raw = new byte[SYMBOLS * 2 + 16];
+        rnd.nextBytes(raw);
+        bits = ByteBuffer.wrap(raw);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public int readSymbol() throws WebPDecodeException {
+        Vp8LBitReader br = new Vp8LBitReader(bits, 0, bits.limit());
+        int acc = 0;
+        for (int i = 0; i < SYMBOLS; i++) {
+            br.fill();
+            acc += tree.readSymbol(br);
+        }
+        return acc;
+    }
+
+    @Benchmark
+    public Vp8LHuffmanTree buildImplicit() throws WebPDecodeException {
+        return Vp8LHuffmanTree.buildImplicit(codeLengths, codeLengths.length, scratch);
+    }
+
+    /** Classic Huffman construction; yields a complete prefix code for {@code freq}. */
+    private static int[] huffmanCodeLengths(int[] freq) {
+        int n = freq.length;
+        int[] parent = new int[2 * n];
+        long[] weight = new long[2 * n];
+        PriorityQueue<Integer> pq = new PriorityQueue<>((a, b) -> Long.compare(weight[a], weight[b]));
+        for (int i = 0; i < n; i++) {
+            weight[i] = freq[i];
+            pq.add(i);
+        }
+        int next = n;
+        while (pq.size() > 1) {
+            int a = pq.poll();
+            int b = pq.poll();
+            weight[next] = weight[a] + weight[b];
+            parent[a] = next;
+            parent[b] = next;
+            pq.add(next++);
+        }
+        int root = next - 1;
+        int[] lengths = new int[n];
+        for (int i = 0; i < n; i++) {
+            int len = 0;
+            for (int p = i; p != root; p = parent[p]) {
+                len++;
+            }
+            if (len > 15) {
+                throw new IllegalStateException("Code too long for VP8L; reduce skew");
+            }
+            lengths[i] = len;
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,72 @@
+package org.ngengine.webp.decoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Vp8LTransforms#applyPredictorRow} over a whole image with every block using the same predictor, one score
+ * per mode.
+ * {@link Vp8LTransformsBenchmark} covers a mix of modes.
+ *
+ * <p>Each invocation restores the residuals first; that copy is included in the score.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Vp8LPredictorBenchmark {
+    private static final int WIDTH = 512;
+    private static final int HEIGHT = 512;
+    private static final int SIZE_BITS = 4;
+
+    /** VP8L predictor mode used by every block. */
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13"})
+    public int predictor;
+
+    private int[] residuals;
+    private int[] image;
+    private int[] predictorData;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(0x18);
+        residuals = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < residuals.length; i++) {
+            // Small per-channel residuals, as produced by a good predictor.
+            for (int shift = 0; shift < 32; shift += 8) {
+                residuals[i] |= ((rnd.nextInt(7) - 3) & 0xFF) << shift;
+            }
+        }
+
+        int blocks = Vp8LTransforms.subsampleSize(WIDTH, SIZE_BITS) * Vp8LTransforms.subsampleSize(HEIGHT, SIZE_BITS);
+        predictorData = new int[blocks];
+        // Predictor mode lives in the green channel.
+        Arrays.fill(predictorData, predictor << 8);
+
+        image = new int[residuals.length];
+    }
+
+    @Benchmark
+    public int[] applyPredictorTransform() {
+        System.arraycopy(residuals, 0, image, 0, residuals.length);
+        for (int y = 0; y < HEIGHT; y++) {
+            Vp8LTransforms.applyPredictorRow(image, y * WIDTH, WIDTH, y, SIZE_BITS, predictorData);
+        }
+        return image;
+    }
+}
@@ -0,0 +1,94 @@
+package org.ngengine.webp.decoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Vp8LTransforms#applyPredictorRow} over the rows of a synthetic residual image, and
+ * {@link Vp8LTransforms#applyColorIndexingRow} over the rows of a 2-bit packed palette image.
+ *
+ * <p>Each invocation restores its input first; that copy is included in the score.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Vp8LTransformsBenchmark {
+    private static final int WIDTH = 512;
+    private static final int HEIGHT = 512;
+    private static final int SIZE_BITS = 4;
+
+    private int[] residuals;
+    private int[] image;
+    private int[] predictorData;
+
+    private int[] packedIndexes;
+    private int[] palette;
+    private int paletteBits;
+    private int[] paletteLut;
+    private int[] packedRow;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(0x13);
+        residuals = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < residuals.length; i++) {
+            // Small per-channel residuals, as produced by a good predictor.
+            for (int shift = 0; shift < 32; shift += 8) {
+                residuals[i] |= ((rnd.nextInt(7) - 3) & 0xFF) << shift;
+            }
+        }
+
+        int blocks = Vp8LTransforms.subsampleSize(WIDTH, SIZE_BITS) * Vp8LTransforms.subsampleSize(HEIGHT, SIZE_BITS);
+        predictorData = new int[blocks];
+        for (int b = 0; b < blocks; b++) {
+            // Predictor mode lives in the green channel; cycle through all 14 modes.
+            predictorData[b] = rnd.nextInt(14) << 8;
+        }
+
+        image = new int[residuals.length];
+
+        // Four colors, four 2-bit indexes per packed green byte.
+        packedIndexes = new int[(WIDTH / 4) * HEIGHT];
+        for (int i = 0; i < packedIndexes.length; i++) {
+            packedIndexes[i] = rnd.nextInt(256) << 8;
+        }
+        palette = new int[] {0xFF000000, 0xFFFFFFFF, 0x80FF0000, 0x00000000};
+        paletteBits = Vp8LTransforms.colorIndexBits(palette.length);
+        paletteLut = Vp8LTransforms.expansionTable(palette.length, palette, paletteBits);
+        packedRow = new int[WIDTH / 4];
+    }
+
+    @Benchmark
+    public int[] applyPredictorTransform() {
+        System.arraycopy(residuals, 0, image, 0, residuals.length);
+        for (int y = 0; y < HEIGHT; y++) {
+            Vp8LTransforms.applyPredictorRow(image, y * WIDTH, WIDTH, y, SIZE_BITS, predictorData);
+        }
+        return image;
+    }
+
+    @Benchmark
+    public int[] applyColorIndexingTransform() {
+        System.arraycopy(packedIndexes, 0, image, 0, packedIndexes.length);
+        // Bottom-up, so expanding a row never overwrites packed rows not yet read.
+        for (int y = HEIGHT - 1; y >= 0; y--) {
+            Vp8LTransforms.applyColorIndexingRow(image, y * (WIDTH / 4), image, y * WIDTH, WIDTH, paletteBits,
+                    paletteLut, packedRow);
+        }
+        return image;
+    }
+}
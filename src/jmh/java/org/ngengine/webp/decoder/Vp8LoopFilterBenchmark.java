@@ -0,0 +1,108 @@
+package org.ngengine.webp.decoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-plane {@link Vp8LoopFilter} cost using the same edge order as the VP8 decoder
+ * (left MB edge, inner vertical edges, top MB edge, inner horizontal edges).
+ *
+ * <p>Each edge is filtered with one kernel call, as the decoder does. Each invocation restores the unfiltered plane
+ * first; that copy is included in the score.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Vp8LoopFilterBenchmark {
+    private static final int MB_W = 32;
+    private static final int MB_H = 32;
+    private static final int STRIDE = MB_W * 16;
+
+    private static final int INTERIOR_LIMIT = 10;
+    private static final int HEV_THRESHOLD = 1;
+    private static final int FILTER_LEVEL = 20;
+    private static final int MB_EDGE_LIMIT = (FILTER_LEVEL + 2) * 2 + INTERIOR_LIMIT;
+    private static final int SUB_EDGE_LIMIT = FILTER_LEVEL * 2 + INTERIOR_LIMIT;
+
+    private byte[] source;
+    private byte[] plane;
+
+    @Setup
+    public void setup() {
+        // Smooth gradients with mild noise so most edges pass the filter thresholds.
+        Random rnd = new Random(0x1F);
+        source = new byte[STRIDE * MB_H * 16];
+        for (int y = 0; y < MB_H * 16; y++) {
+            for (int x = 0; x < STRIDE; x++) {
+                int v = 64 + ((x + y) >> 3) + ((x >> 4) & 1) * 6 + rnd.nextInt(5);
+                source[y * STRIDE + x] = (byte) Math.min(255, v);
+            }
+        }
+        plane = new byte[source.length];
+    }
+
+    @Benchmark
+    public byte[] normalFilter() {
+        System.arraycopy(source, 0, plane, 0, source.length);
+        for (int mby = 0; mby < MB_H; mby++) {
+            for (int mbx = 0; mbx < MB_W; mbx++) {
+                int base = mby * 16 * STRIDE + mbx * 16;
+                if (mbx > 0) {
+                    Vp8LoopFilter.macroblockEdgeHorizontal(HEV_THRESHOLD, INTERIOR_LIMIT, MB_EDGE_LIMIT,
+                            plane, base, STRIDE, 16);
+                }
+                for (int x = 4; x < 13; x += 4) {
+                    Vp8LoopFilter.subblockEdgeHorizontal(HEV_THRESHOLD, INTERIOR_LIMIT, SUB_EDGE_LIMIT,
+                            plane, base + x, STRIDE, 16);
+                }
+                if (mby > 0) {
+                    Vp8LoopFilter.macroblockEdgeVertical(HEV_THRESHOLD, INTERIOR_LIMIT, MB_EDGE_LIMIT,
+                            plane, base, STRIDE, 16);
+                }
+                for (int y = 4; y < 13; y += 4) {
+                    Vp8LoopFilter.subblockEdgeVertical(HEV_THRESHOLD, INTERIOR_LIMIT, SUB_EDGE_LIMIT,
+                            plane, base + y * STRIDE, STRIDE, 16);
+                }
+            }
+        }
+        return plane;
+    }
+
+    @Benchmark
+    public byte[] simpleFilter() {
+        System.arraycopy(source, 0, plane, 0, source.length);
+        for (int mby = 0; mby < MB_H; mby++) {
+            for (int mbx = 0; mbx < MB_W; mbx++) {
+                int base = mby * 16 * STRIDE + mbx * 16;
+                if (mbx > 0) {
+                    Vp8LoopFilter.simpleEdgeHorizontal(MB_EDGE_LIMIT, plane, base, STRIDE, 16);
+                }
+                for (int x = 4; x < 15; x += 4) {
+                    Vp8LoopFilter.simpleEdgeHorizontal(SUB_EDGE_LIMIT, plane, base + x, STRIDE, 16);
+                }
+                if (mby > 0) {
+                    Vp8LoopFilter.simpleEdgeVertical(MB_EDGE_LIMIT, plane, base, STRIDE, 16);
+                }
+                for (int y = 4; y < 15; y += 4) {
+                    Vp8LoopFilter.simpleEdgeVertical(SUB_EDGE_LIMIT, plane, base + y * STRIDE, STRIDE, 16);
+                }
+            }
+        }
+        return plane;
+    }
+}
@@ -0,0 +1,63 @@
+package org.ngengine.webp.decoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** End-to-end {@link WebPDecoder#decode(byte[])} throughput over the bundled fixtures. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebPDecodeBenchmark {
+    @Param({
+            // lossy
+            "gallery1/1",
+            "gallery1/2",
+            "gallery1/3",
+            "gallery1/4",
+            "gallery1/5",
+            // lossless
+            "gallery2/1_webp_ll",
+            "gallery2/2_webp_ll",
+            "gallery2/3_webp_ll",
+            "gallery2/4_webp_ll",
+            "gallery2/5_webp_ll",
+            // lossy + ALPH
+            "gallery2/1_webp_a",
+            "gallery2/2_webp_a",
+            "gallery2/3_webp_a",
+            "gallery2/4_webp_a",
+            "gallery2/5_webp_a",
+            // color-indexing (palette) transforms
+            "regression/color_index",
+            "regression/lossless_indexed_1bit_palette",
+            "regression/lossless_indexed_2bit_palette",
+            "regression/lossless_indexed_4bit_palette",
+    })
+    public String fixture;
+
+    private byte[] webp;
+
+    @Setup
+    public void setup() {
+        webp = BenchmarkFixtures.readWebP(fixture);
+    }
+
+    @Benchmark
+    public DecodedWebP decode() throws WebPDecodeException {
+        return WebPDecoder.decode(webp);
+    }
+}
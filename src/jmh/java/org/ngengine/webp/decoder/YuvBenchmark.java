@@ -0,0 +1,68 @@
+package org.ngengine.webp.decoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Fancy-upsampling YUV420 to RGBA conversion ({@link Yuv#fillRgbaBufferFancy}). */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YuvBenchmark {
+    @Param({"1024x768"})
+    public String size;
+
+    /** Output buffer kind: heap or direct {@link ByteBuffer}. */
+    @Param({"heap", "direct"})
+    public String output;
+
+    private int width;
+    private int height;
+    private int bufferWidth;
+    private byte[] y;
+    private byte[] u;
+    private byte[] v;
+    private ByteBuffer rgba;
+
+    @Setup
+    public void setup() {
+        String[] wh = size.split("x");
+        width = Integer.parseInt(wh[0]);
+        height = Integer.parseInt(wh[1]);
+        bufferWidth = (width + 15) & ~15;
+        int bufferHeight = (height + 15) & ~15;
+
+        Random rnd = new Random(0x7075);
+        y = new byte[bufferWidth * bufferHeight];
+        u = new byte[y.length / 4];
+        v = new byte[y.length / 4];
+        rnd.nextBytes(y);
+        rnd.nextBytes(u);
+        rnd.nextBytes(v);
+
+        int rgbaSize = width * height * 4;
+        rgba = "direct".equals(output) ? ByteBuffer.allocateDirect(rgbaSize) : ByteBuffer.allocate(rgbaSize);
+    }
+
+    @Benchmark
+    public ByteBuffer fillRgbaBufferFancy() throws WebPDecodeException {
+        rgba.clear();
+        Yuv.fillRgbaBufferFancy(rgba, y, u, v, width, height, bufferWidth);
+        return rgba;
+    }
+}
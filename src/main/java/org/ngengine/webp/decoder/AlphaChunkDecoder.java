@@ -1,29 +1,39 @@
 package org.ngengine.webp.decoder;
 
 import java.nio.ByteBuffer;
-import java.util.function.IntFunction;
 
-/** ALPH chunk decoding and application onto an existing RGBA buffer. */
+/** ALPH chunk decoding and merging of the alpha plane into decoded pixel rows. */
 final class AlphaChunkDecoder {
     private AlphaChunkDecoder() {}
 
     /**
-     * Decodes an `ALPH` chunk payload and writes the reconstructed alpha channel into {@code rgba}.
+     * Decoded `ALPH` payload: per-pixel alpha values. The prediction filter is undone in place as rows are merged.
      */
-    static void applyAlph(
-            byte[] webp,
+    static final class AlphaPlane {
+        final byte[] values;
+        final int width;
+        final int filtering;
+
+        AlphaPlane(byte[] values, int width, int filtering) {
+            this.values = values;
+            this.width = width;
+            this.filtering = filtering;
+        }
+    }
+
+    /** Decodes an `ALPH` chunk payload without applying its prediction filter. */
+    static AlphaPlane decode(
+            ByteBuffer webp,
             int alphOff,
             int alphLen,
             int width,
-            int height,
-            ByteBuffer rgba,
-            IntFunction<ByteBuffer> rgbaAllocator
+            int height
     ) throws WebPDecodeException {
         if (alphLen < 1) {
             throw new WebPDecodeException("Invalid ALPH chunk");
         }
 
-        int info = webp[alphOff] & 0xFF;
+        int info = webp.get(alphOff) & 0xFF;
         int preprocessing = (info >> 4) & 0b11;
         int filtering = (info >> 2) & 0b11;
         int compression = info & 0b11;
@@ -43,30 +53,38 @@ final class AlphaChunkDecoder {
                 throw new WebPDecodeException("ALPH payload too short");
             }
             alpha = new byte[width * height];
-            System.arraycopy(webp, payloadOff, alpha, 0, alpha.length);
+            ByteBuffer src = webp.duplicate();
+            src.position(payloadOff);
+            src.get(alpha);
         } else {
             // Lossless-compressed alpha plane: decode as VP8L with implicit dimensions and read GREEN.
-            int rgbaSize = width * height * 4;
-            ByteBuffer tmp = rgbaAllocator.apply(rgbaSize);
-            if (tmp == null || tmp.capacity() < rgbaSize) {
-                throw new WebPDecodeException("RGBA allocator returned too-small buffer");
-            }
-            tmp.clear();
-            tmp.limit(rgbaSize);
-            Vp8LDecoder.decodeToRgba(webp, payloadOff, payloadLen, width, height, true, tmp, rgbaAllocator);
-
-            alpha = new byte[width * height];
-            for (int i = 0; i < alpha.length; i++) {
-                alpha[i] = tmp.get(i * 4 + 1);
-            }
+            byte[] plane = new byte[width * height];
+            Vp8LDecoder.decode(webp, payloadOff, payloadLen, width, height, true, (y, argb, off, w) -> {
+                for (int x = 0, i = y * w; x < w; x++, i++) {
+                    plane[i] = (byte) (argb[off + x] >> 8);
+                }
+            });
+            alpha = plane;
         }
 
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int idx = y * width + x;
-                int pred = AlphaPredictor.predict(x, y, width, filtering, rgba);
-                rgba.put(idx * 4 + 3, (byte) ((pred + (alpha[idx] & 0xFF)) & 0xFF));
-            }
+        return new AlphaPlane(alpha, width, filtering);
+    }
+
+    /**
+     * Replaces the alpha of the packed ARGB row {@code argb[off, off + width)} with row {@code y} of the plane.
+     * Rows must be merged in order: the filter predicts from the alpha values above and to the left, which are
+     * unfiltered in the plane itself.
+     */
+    static void mergeRow(AlphaPlane plane, int y, int[] argb, int off) {
+        byte[] alpha = plane.values;
+        int width = plane.width;
+        int rowStart = y * width;
+        for (int x = 0; x < width; x++) {
+            int idx = rowStart + x;
+            int pred = AlphaPredictor.predict(x, y, width, plane.filtering, alpha);
+            int a = (pred + alpha[idx]) & 0xFF;
+            alpha[idx] = (byte) a;
+            argb[off + x] = (argb[off + x] & 0x00FF_FFFF) | (a << 24);
         }
     }
 }
@@ -1,71 +1,70 @@
 package org.ngengine.webp.decoder;
 
-import java.nio.ByteBuffer;
-
 /** Predictor functions used by ALPH filtering. */
 final class AlphaPredictor {
     private AlphaPredictor() {}
 
     /**
-     * Computes the ALPH predictor value for a pixel using the configured filtering method.
+     * Computes the ALPH predictor value for a pixel using the configured filtering method, from the already
+     * unfiltered values of the {@code width}-wide alpha plane.
      */
-    static int predict(int x, int y, int width, int filteringMethod, ByteBuffer rgba) {
+    static int predict(int x, int y, int width, int filteringMethod, byte[] alpha) {
         // filteringMethod: 0 None, 1 Horizontal, 2 Vertical, 3 Gradient
         switch (filteringMethod) {
             case 0:
                 return 0;
             case 1:
-                return horizontal(x, y, width, rgba);
+                return horizontal(x, y, width, alpha);
             case 2:
-                return vertical(x, y, width, rgba);
+                return vertical(x, y, width, alpha);
             case 3:
-                return gradient(x, y, width, rgba);
+                return gradient(x, y, width, alpha);
             default:
                 return 0;
         }
     }
 
-    private static int alphaAt(ByteBuffer rgba, int pixelIndex) {
-        return rgba.get(pixelIndex * 4 + 3) & 0xFF;
+    private static int alphaAt(byte[] alpha, int pixelIndex) {
+        return alpha[pixelIndex] & 0xFF;
     }
 
-    private static int horizontal(int x, int y, int width, ByteBuffer rgba) {
+    private static int horizontal(int x, int y, int width, byte[] alpha) {
         if (x == 0 && y == 0) return 0;
         if (x == 0) {
             int above = (y - 1) * width + x;
-            return alphaAt(rgba, above);
+            return alphaAt(alpha, above);
         }
         int left = y * width + (x - 1);
-        return alphaAt(rgba, left);
+        return alphaAt(alpha, left);
     }
 
-    private static int vertical(int x, int y, int width, ByteBuffer rgba) {
+    private static int vertical(int x, int y, int width, byte[] alpha) {
         if (x == 0 && y == 0) return 0;
         if (y == 0) {
             int left = y * width + (x - 1);
-            return alphaAt(rgba, left);
+            return alphaAt(alpha, left);
         }
         int above = (y - 1) * width + x;
-        return alphaAt(rgba, above);
+        return alphaAt(alpha, above);
     }
 
-    private static int gradient(int x, int y, int width, ByteBuffer rgba) {
+    private static int gradient(int x, int y, int width, byte[] alpha) {
         int left, top, topLeft;
         if (x == 0 && y == 0) {
             left = top = topLeft = 0;
         } else if (x == 0) {
             int above = (y - 1) * width + x;
-            left = top = topLeft = alphaAt(rgba, above);
+            left = top = topLeft = alphaAt(alpha, above);
         } else if (y == 0) {
             int l = y * width + (x - 1);
-            left = top = topLeft = alphaAt(rgba, l);
+            left = top = topLeft = alphaAt(alpha, l);
         } else {
             int l = y * width + (x - 1);
             int t = (y - 1) * width + x;
             int tl = (y - 1) * width + (x - 1);
-            left = alphaAt(rgba, l);
-            top = alphaAt(rgba, t);
-            topLeft = alphaAt(rgba, tl);
+            left = alphaAt(alpha, l);
+            top = alphaAt(alpha, t);
+            topLeft = alphaAt(alpha, tl);
         }
 
         int comb = left + top - topLeft;
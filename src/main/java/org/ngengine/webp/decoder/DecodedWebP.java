@@ -2,7 +2,7 @@ package org.ngengine.webp.decoder;
 
 import java.nio.ByteBuffer;
 
-/** Decoded WebP still image as tightly-packed RGBA8888. */
+/** Decoded WebP still image as tightly-packed pixels, RGBA8888 unless another {@link #format} was requested. */
 public final class DecodedWebP {
     /** Image width in pixels. */
     public final int width;
@@ -11,8 +11,13 @@ public final class DecodedWebP {
     /** True when the decoded source contains transparency. */
     public final boolean hasAlpha;
 
-    /** Tightly-packed RGBA8888. Treat as direct-capable (do not assume array-backed). */
+    /**
+     * Tightly-packed pixels in {@link #format}, {@code width * height * format.bytesPerPixel()} bytes. Treat as
+     * direct-capable (do not assume array-backed).
+     */
     public final ByteBuffer rgba;
+    /** Layout of {@link #rgba}. */
+    public final WebPPixelFormat format;
 
     /**
      * Creates a decoded image container.
@@ -23,9 +28,23 @@ public final class DecodedWebP {
      * @param rgba tightly-packed RGBA8888 buffer with size {@code width * height * 4}
      */
     public DecodedWebP(int width, int height, boolean hasAlpha, ByteBuffer rgba) {
+        this(width, height, hasAlpha, rgba, WebPPixelFormat.RGBA);
+    }
+
+    /**
+     * Creates a decoded image container.
+     *
+     * @param width image width in pixels
+     * @param height image height in pixels
+     * @param hasAlpha whether source image includes alpha
+     * @param pixels tightly-packed buffer in {@code format}
+     * @param format pixel layout of {@code pixels}
+     */
+    public DecodedWebP(int width, int height, boolean hasAlpha, ByteBuffer pixels, WebPPixelFormat format) {
         this.width = width;
         this.height = height;
         this.hasAlpha = hasAlpha;
-        this.rgba = rgba;
+        this.rgba = pixels;
+        this.format = format;
     }
 }
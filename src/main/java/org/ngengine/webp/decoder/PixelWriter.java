@@ -0,0 +1,106 @@
+package org.ngengine.webp.decoder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Stores rows of packed {@code 0xAARRGGBB} pixels into the caller's output, converting them to the requested
+ * {@link WebPPixelFormat} on the way. Decoders produce one row at a time in this form, so every output layout is
+ * written in the same single pass.
+ */
+final class PixelWriter {
+    private final WebPPixelFormat format;
+    /** Big-endian view of the output buffer, or {@code null} for {@code int[]} output. */
+    private final ByteBuffer bytes;
+    private final int[] ints;
+    private final int base;
+    private final int stride;
+
+    private PixelWriter(WebPPixelFormat format, ByteBuffer bytes, int[] ints, int base, int stride) {
+        this.format = format;
+        this.bytes = bytes;
+        this.ints = ints;
+        this.base = base;
+        this.stride = stride;
+    }
+
+    /** Writes row {@code y} at index {@code base + y * stride} of {@code out}, using absolute indexes. */
+    static PixelWriter of(ByteBuffer out, WebPPixelFormat format, int base, int stride) {
+        return new PixelWriter(format, out.duplicate().order(ByteOrder.BIG_ENDIAN), null, base, stride);
+    }
+
+    /** Writes row {@code y} as ARGB ints at {@code out[base + y * stride]}. */
+    static PixelWriter of(int[] out, int base, int stride) {
+        return new PixelWriter(WebPPixelFormat.ARGB, null, out, base, stride);
+    }
+
+    /** Stores {@code width} pixels of {@code argb}, starting at {@code off}, as output row {@code y}. */
+    void putRow(int y, int[] argb, int off, int width) {
+        int at = base + y * stride;
+        if (ints != null) {
+            System.arraycopy(argb, off, ints, at, width);
+            return;
+        }
+        ByteBuffer out = bytes;
+        int end = off + width;
+        switch (format) {
+            case RGBA:
+                for (int i = off; i < end; i++, at += 4) {
+                    int c = argb[i];
+                    out.putInt(at, (c << 8) | (c >>> 24));
+                }
+                break;
+            case BGRA:
+                for (int i = off; i < end; i++, at += 4) {
+                    out.putInt(at, Integer.reverseBytes(argb[i]));
+                }
+                break;
+            case ARGB:
+                for (int i = off; i < end; i++, at += 4) {
+                    out.putInt(at, argb[i]);
+                }
+                break;
+            case RGB:
+                for (int i = off; i < end; i++, at += 3) {
+                    int c = argb[i];
+                    out.putShort(at, (short) (c >>> 8));
+                    out.put(at + 2, (byte) c);
+                }
+                break;
+            case RGBA_PREMULTIPLIED:
+                for (int i = off; i < end; i++, at += 4) {
+                    int c = premultiply(argb[i]);
+                    out.putInt(at, (c << 8) | (c >>> 24));
+                }
+                break;
+            case BGRA_PREMULTIPLIED:
+                for (int i = off; i < end; i++, at += 4) {
+                    out.putInt(at, Integer.reverseBytes(premultiply(argb[i])));
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown pixel format " + format);
+        }
+    }
+
+    /** Returns {@code argb} with each color channel scaled by alpha / 255, rounded to nearest. */
+    static int premultiply(int argb) {
+        int a = argb >>> 24;
+        if (a == 255) {
+            return argb;
+        }
+        if (a == 0) {
+            return 0;
+        }
+        int r = mulDiv255((argb >>> 16) & 0xFF, a);
+        int g = mulDiv255((argb >>> 8) & 0xFF, a);
+        int b = mulDiv255(argb & 0xFF, a);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /** Computes {@code round(c * a / 255)} for bytes without a division. */
+    private static int mulDiv255(int c, int a) {
+        int t = c * a + 128;
+        return (t + (t >>> 8)) >>> 8;
+    }
+}
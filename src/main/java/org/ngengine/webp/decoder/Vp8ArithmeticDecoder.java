@@ -1,27 +1,51 @@
 package org.ngengine.webp.decoder;
 
-/** VP8 boolean arithmetic decoder (ported from Rust src/vp8_arithmetic_decoder.rs; correctness-first). */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * VP8 boolean arithmetic decoder (ported from Rust src/vp8_arithmetic_decoder.rs; bit reading follows libwebp).
+ *
+ * <p>Bytes are read straight from the partition, 7 at a time, into a window of up to 56 unread bits. As in libwebp,
+ * {@link #range} holds the current range minus one, so a split needs no extra add, and renormalization takes its
+ * shift from a table.
+ */
 final class Vp8ArithmeticDecoder {
-    /** Sentinel indicating the tolerant one-byte-overread window has been exhausted. */
-    private static final int FINAL_BYTES_REMAINING_EOF = -0xE;
+    /** Renormalization shift for each {@code range - 1} below 127: puts the range back into [128, 255]. */
+    private static final byte[] LOG2_RANGE = new byte[127];
+    /** {@code range - 1} after the shift in {@link #LOG2_RANGE}. */
+    private static final byte[] NEW_RANGE = new byte[127];
+
+    static {
+        for (int r = 0; r < 127; r++) {
+            int shift = Integer.numberOfLeadingZeros(r + 1) - 24;
+            LOG2_RANGE[r] = (byte) shift;
+            NEW_RANGE[r] = (byte) (((r + 1) << shift) - 1);
+        }
+    }
 
-    private int[] chunks; // big-endian u32 chunks
-    private int chunkIndex;
+    private ByteBuffer buf;
+    /** Whether {@link #buf} is little-endian, so 8-byte loads must be swapped. */
+    private boolean swap;
+    /** Next byte to load. */
+    private int pos;
+    /** End of the bytes given so far. */
+    private int end;
+    /** Bits read but not decoded yet; the decoder works on the 8 bits above {@link #bits}. */
     private long value;
+    /** Current range minus one, in [127, 254] between reads. */
     private int range;
-    private int bitCount;
-
-    private final byte[] finalBytes = new byte[3];
-    private int finalBytesRemaining;
+    /** Number of unread bits in {@link #value} below the current 8; negative when a load is due. */
+    private int bits;
+    /** Whether the zero byte tolerated after the end (as in libwebp) has been loaded. */
+    private boolean eof;
 
-    /** Creates a decoder in reset state; call {@link #init(byte[], int)} before reading bits. */
+    /** Creates a decoder in reset state; call {@link #init(ByteBuffer, int, int)} before reading bits. */
     Vp8ArithmeticDecoder() {
-        this.chunks = new int[0];
-        this.chunkIndex = 0;
-        this.value = 0;
-        this.range = 255;
-        this.bitCount = -8;
-        this.finalBytesRemaining = FINAL_BYTES_REMAINING_EOF;
+        this.range = 255 - 1;
+        this.bits = -8;
+        // Nothing to read, not even the tolerated byte, until init.
+        this.eof = true;
     }
 
     /**
@@ -32,62 +56,105 @@ final class Vp8ArithmeticDecoder {
      * @throws WebPDecodeException if {@code len} is out of bounds
      */
     void init(byte[] buf, int len) throws WebPDecodeException {
-        if (len < 0 || len > buf.length) {
-            throw new WebPDecodeException("Invalid partition length");
-        }
-
-        int numFullChunks = len / 4;
-        int rem = len - 4 * numFullChunks;
+        init(ByteBuffer.wrap(buf), 0, len);
+    }
 
-        this.chunks = new int[numFullChunks];
-        for (int i = 0; i < numFullChunks; i++) {
-            int off = i * 4;
-            this.chunks[i] = ((buf[off] & 0xFF) << 24)
-                    | ((buf[off + 1] & 0xFF) << 16)
-                    | ((buf[off + 2] & 0xFF) << 8)
-                    | (buf[off + 3] & 0xFF);
+    /**
+     * Initializes the decoder with the VP8 partition stored at {@code buf[off, off + len)}, using absolute indexes.
+     * The bytes are read in place, so a reused decoder does not allocate.
+     *
+     * @throws WebPDecodeException if the slice is out of bounds
+     */
+    void init(ByteBuffer buf, int off, int len) throws WebPDecodeException {
+        if (off < 0 || len < 0 || len > buf.limit() - off) {
+            throw new WebPDecodeException("Invalid partition length");
         }
+        this.buf = buf;
+        this.swap = buf.order() == ByteOrder.LITTLE_ENDIAN;
+        this.pos = off;
+        this.end = off + len;
+        this.value = 0;
+        this.range = 255 - 1;
+        this.bits = -8;
+        this.eof = false;
+    }
 
-        for (int i = 0; i < 3; i++) {
-            this.finalBytes[i] = 0;
+    /**
+     * Makes the first {@code len} bytes of the partition at {@code buf[off]} readable while keeping the read
+     * position, after an earlier {@link #init} or {@code extend} saw only a prefix of them. The bytes already
+     * given must be unchanged, and the zero byte tolerated past their end must not have been read yet (see
+     * {@link #usedFinalBytes()}); restore a saved {@link Position} first if it was.
+     *
+     * @throws WebPDecodeException if the slice is out of bounds
+     */
+    void extend(ByteBuffer buf, int off, int len) throws WebPDecodeException {
+        if (off < 0 || len < 0 || len > buf.limit() - off || off + len < end) {
+            throw new WebPDecodeException("Invalid partition length");
         }
-        if (rem != 0) {
-            System.arraycopy(buf, numFullChunks * 4, this.finalBytes, 0, rem);
+        if (usedFinalBytes()) {
+            throw new IllegalStateException("Partition tail was already read");
         }
-        this.finalBytesRemaining = rem;
-
-        this.chunkIndex = 0;
-        this.value = 0;
-        this.range = 255;
-        this.bitCount = -8;
+        this.buf = buf;
+        this.swap = buf.order() == ByteOrder.LITTLE_ENDIAN;
+        this.end = off + len;
     }
 
     /**
-     * Returns {@code true} when the decoder has advanced past the tolerant read window at stream end.
+     * Returns {@code true} once reading went past the bytes given, into the tolerated zero byte after them. On a
+     * partition that is still arriving this means the result may be wrong.
      */
-    boolean isPastEof() {
-        return finalBytesRemaining == FINAL_BYTES_REMAINING_EOF;
+    boolean usedFinalBytes() {
+        return eof;
     }
 
-    private void loadFromFinalBytes() {
-        if (finalBytesRemaining > 0) {
-            finalBytesRemaining -= 1;
-            byte b = finalBytes[0];
-            // rotate left
-            finalBytes[0] = finalBytes[1];
-            finalBytes[1] = finalBytes[2];
-            finalBytes[2] = 0;
+    /** Copies the current read position into {@code p}. */
+    void save(Position p) {
+        p.pos = pos;
+        p.value = value;
+        p.range = range;
+        p.bits = bits;
+        p.eof = eof;
+    }
 
-            value <<= 8;
-            value |= (b & 0xFFL);
-            bitCount += 8;
-        } else if (finalBytesRemaining == 0) {
+    /** Rewinds to a position saved from this decoder since its last {@link #init}. */
+    void restore(Position p) {
+        pos = p.pos;
+        value = p.value;
+        range = p.range;
+        bits = p.bits;
+        eof = p.eof;
+    }
+
+    /** Saved read position of a {@link Vp8ArithmeticDecoder}. */
+    static final class Position {
+        private int pos;
+        private long value;
+        private int range;
+        private int bits;
+        private boolean eof;
+    }
+
+    /** Refills {@link #value}; only called when {@link #bits} is negative. */
+    private void loadNewBytes() throws WebPDecodeException {
+        if (pos <= end - 8) {
+            long in = buf.getLong(pos);
+            if (swap) {
+                in = Long.reverseBytes(in);
+            }
+            // Take the first 7 bytes; the 8th stays for the next load.
+            value = (value << 56) | (in >>> 8);
+            pos += 7;
+            bits += 56;
+        } else if (pos < end) {
+            value = (value << 8) | (buf.get(pos++) & 0xFF);
+            bits += 8;
+        } else if (!eof) {
             // libwebp tolerance: allow reading one byte past end
-            finalBytesRemaining -= 1;
             value <<= 8;
-            bitCount += 8;
+            bits += 8;
+            eof = true;
         } else {
-            finalBytesRemaining = FINAL_BYTES_REMAINING_EOF;
+            throw new WebPDecodeException("VP8 bitstream ended early");
         }
     }
 
@@ -99,41 +166,24 @@ final class Vp8ArithmeticDecoder {
      * @throws WebPDecodeException if the bitstream ends unexpectedly
      */
     private boolean readBit(int probability) throws WebPDecodeException {
-        if (bitCount < 0) {
-            if (chunkIndex < chunks.length) {
-                long v = chunks[chunkIndex++] & 0xFFFF_FFFFL;
-                value <<= 32;
-                value |= v;
-                bitCount += 32;
-            } else {
-                loadFromFinalBytes();
-                if (isPastEof()) {
-                    throw new WebPDecodeException("VP8 bitstream ended early");
-                }
-            }
+        if (bits < 0) {
+            loadNewBytes();
         }
-
-        int split = 1 + (((range - 1) * probability) >> 8);
-        long bigSplit = ((long) split) << bitCount;
-
-        boolean retval;
-        if (value >= bigSplit) {
-            range -= split;
-            value -= bigSplit;
-            retval = true;
+        int range = this.range;
+        int split = (range * probability) >>> 8;
+        boolean bit = (int) (value >>> bits) > split;
+        if (bit) {
+            range -= split + 1;
+            value -= (long) (split + 1) << bits;
         } else {
             range = split;
-            retval = false;
         }
-
-        int shift = Integer.numberOfLeadingZeros(range) - 24;
-        if (shift < 0) {
-            shift = 0;
+        if (range < 127) {
+            bits -= LOG2_RANGE[range];
+            range = NEW_RANGE[range] & 0xFF;
         }
-        range <<= shift;
-        bitCount -= shift;
-
-        return retval;
+        this.range = range;
+        return bit;
     }
 
     /** Reads a single boolean using VP8 probability coding. */
@@ -141,22 +191,63 @@ final class Vp8ArithmeticDecoder {
         return readBit(probability & 0xFF);
     }
 
-    /** Reads a single unbiased flag bit (equivalent to probability 128). */
+    /**
+     * Reads a single unbiased flag bit (equivalent to probability 128). The split is half the range, and the range
+     * afterwards renormalizes by one bit unless it is exactly 128, so neither a multiply nor the table is needed.
+     */
     boolean readFlag() throws WebPDecodeException {
-        return readBit(128);
+        if (bits < 0) {
+            loadNewBytes();
+        }
+        int split = range >>> 1;
+        boolean bit = (int) (value >>> bits) > split;
+        int range;
+        if (bit) {
+            range = this.range - split - 1;
+            value -= (long) (split + 1) << bits;
+        } else {
+            range = split;
+        }
+        if (range < 127) {
+            range = (range << 1) | 1;
+            bits--;
+        }
+        this.range = range;
+        return bit;
     }
 
     /**
-     * Reads an unsigned literal made of {@code n} bits.
+     * Reads an unsigned literal made of {@code n} bits. The decoder state stays in locals for the whole literal,
+     * and each bit is decoded like {@link #readFlag()} but without branching on its value.
      *
      * @param n bit width
      * @return unsigned value composed MSB-first from the stream
      */
     int readLiteral(int n) throws WebPDecodeException {
+        long value = this.value;
+        int range = this.range;
+        int bits = this.bits;
         int v = 0;
         for (int i = 0; i < n; i++) {
-            v = (v << 1) | (readFlag() ? 1 : 0);
+            if (bits < 0) {
+                this.value = value;
+                this.bits = bits;
+                loadNewBytes();
+                value = this.value;
+                bits = this.bits;
+            }
+            int split = range >>> 1;
+            int mask = (split - (int) (value >>> bits)) >> 31; // -1 if the bit is set
+            value -= (long) ((split + 1) & mask) << bits;
+            range = split + (mask & (range - 2 * split - 1));
+            int shift = (range - 127) >>> 31;
+            range = (range << shift) | shift;
+            bits -= shift;
+            v = (v << 1) - mask;
         }
+        this.value = value;
+        this.range = range;
+        this.bits = bits;
         return v;
     }
 
@@ -181,6 +272,11 @@ final class Vp8ArithmeticDecoder {
         return readFlag();
     }
 
+    /** Reads a sign bit and applies it to {@code v}: returns {@code -v} when the bit is set. */
+    int readSigned(int v) throws WebPDecodeException {
+        return readFlag() ? -v : v;
+    }
+
     /** Decodes a symbol by traversing the supplied VP8 probability tree from its root node. */
     int readWithTree(Vp8TreeNode[] tree) throws WebPDecodeException {
         Vp8TreeNode first = tree[0];
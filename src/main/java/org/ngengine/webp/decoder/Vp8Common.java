@@ -595,35 +595,48 @@ final class Vp8Common {
         return out;
     }
 
-    /** Creates default token-probability trees used for coefficient decoding. */
-    static Vp8TreeNode[][][][] newDefaultTokenProbNodes() {
-        Vp8TreeNode[][][][] out = new Vp8TreeNode[4][8][3][];
-        for (int p = 0; p < 4; p++) {
-            for (int b = 0; b < 8; b++) {
-                for (int c = 0; c < 3; c++) {
-                    out[p][b][c] = treeNodesFrom(DCT_TOKEN_TREE, COEFF_PROBS[p][b][c]);
-                }
-            }
+    /** Token probabilities per context, one for each inner node of {@link #DCT_TOKEN_TREE}. */
+    static final int TOKEN_PROBS_PER_CTX = NUM_DCT_TOKENS - 1;
+    static final int TOKEN_PROBS_PER_BAND = 3 * TOKEN_PROBS_PER_CTX;
+    static final int TOKEN_PROBS_PER_PLANE = 8 * TOKEN_PROBS_PER_BAND;
+
+    /**
+     * Offset of the band used at each coefficient position within a plane of a flat token-probability table. Entry
+     * 16 is never read for a coefficient; it keeps the lookahead after the last position in bounds.
+     */
+    static final int[] COEFF_BAND_OFFSETS = createCoeffBandOffsets();
+    private static int[] createCoeffBandOffsets() {
+        int[] out = new int[17];
+        for (int i = 0; i < 16; i++) {
+            out[i] = COEFF_BANDS[i] * TOKEN_PROBS_PER_BAND;
         }
         return out;
     }
 
-    /** Deep-copies token-probability trees so decode updates do not mutate shared defaults. */
-    static Vp8TreeNode[][][][] deepCopyTokenProbNodes(Vp8TreeNode[][][][] in) {
-        Vp8TreeNode[][][][] out = new Vp8TreeNode[4][8][3][];
+    /** {@link #COEFF_PROBS} as one flat table, indexed {@code [plane][band][ctx][node]}. */
+    private static final byte[] DEFAULT_TOKEN_PROBS = createDefaultTokenProbs();
+    private static byte[] createDefaultTokenProbs() {
+        byte[] out = new byte[4 * TOKEN_PROBS_PER_PLANE];
+        int at = 0;
         for (int p = 0; p < 4; p++) {
             for (int b = 0; b < 8; b++) {
                 for (int c = 0; c < 3; c++) {
-                    Vp8TreeNode[] srcNodes = in[p][b][c];
-                    Vp8TreeNode[] dstNodes = new Vp8TreeNode[srcNodes.length];
-                    for (int i = 0; i < srcNodes.length; i++) {
-                        Vp8TreeNode n = srcNodes[i];
-                        dstNodes[i] = new Vp8TreeNode(n.left, n.right, n.prob, n.index);
+                    for (short prob : COEFF_PROBS[p][b][c]) {
+                        out[at++] = (byte) prob;
                     }
-                    out[p][b][c] = dstNodes;
                 }
             }
         }
         return out;
     }
+
+    /** Creates a flat token-probability table holding the default probabilities. */
+    static byte[] newDefaultTokenProbs() {
+        return DEFAULT_TOKEN_PROBS.clone();
+    }
+
+    /** Restores the default probabilities in a table created by {@link #newDefaultTokenProbs()}. */
+    static void resetTokenProbs(byte[] probs) {
+        System.arraycopy(DEFAULT_TOKEN_PROBS, 0, probs, 0, DEFAULT_TOKEN_PROBS.length);
+    }
 }
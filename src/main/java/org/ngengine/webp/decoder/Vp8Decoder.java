@@ -1,30 +1,45 @@
 package org.ngengine.webp.decoder;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntConsumer;
 
 /** VP8 (lossy) keyframe decoder (ported from Rust src/vp8.rs; no AWT). */
 final class Vp8Decoder {
     private Vp8Decoder() {}
 
-    /** Decodes a VP8 keyframe payload and writes RGBA pixels to {@code outRgba}. */
-    static void decodeToRgba(
-            byte[] webp,
+    /**
+     * Decodes a VP8 keyframe payload using a reusable {@link Decoder} and hands the pixel rows, with the alpha of
+     * {@code alpha} merged in if it is not {@code null}, to {@code out}.
+     */
+    static void decode(
+            ByteBuffer webp,
             int off,
             int len,
             int width,
             int height,
-            ByteBuffer outRgba
+            PixelWriter out,
+            AlphaChunkDecoder.AlphaPlane alpha,
+            Decoder d,
+            WebPDecodeOptions options
     ) throws WebPDecodeException {
-        Decoder d = new Decoder(webp, off, len);
-        Frame f = d.decodeFrame();
-        if (f.width != width || f.height != height) {
-            throw new WebPDecodeException("VP8 decoded size mismatch");
-        }
-        Yuv.fillRgbaBufferFancy(outRgba, f.ybuf, f.ubuf, f.vbuf, width, height, f.bufferWidth);
+        d.reset(webp, off, len);
+        d.decodeFrame(width, height, out, alpha, options);
     }
 
-    /** Decoded VP8 frame buffers and frame-level header metadata. */
+    /**
+     * Rows above the current macroblock row kept in the luma strip: the loop filter reads 4 of them and RGBA output
+     * lags 7 rows behind the filtered row.
+     */
+    private static final int FILTER_EXTRA_Y = 8;
+    /** Rows above the current macroblock row kept in the chroma strips. */
+    private static final int FILTER_EXTRA_UV = 4;
+
+    /** Decoded VP8 macroblock-row strips and frame-level header metadata. */
     private static final class Frame {
         /** Frame width in pixels. */
         int width;
@@ -32,12 +47,8 @@ final class Vp8Decoder {
         int height;
         /** Internal luma buffer stride width in pixels. */
         int bufferWidth;
-        /** Luma plane buffer. */
-        byte[] ybuf;
-        /** Chroma U plane buffer. */
-        byte[] ubuf;
-        /** Chroma V plane buffer. */
-        byte[] vbuf;
+        /** Macroblock row {@code mby} is reconstructed into {@code strips[mby & 1]}. */
+        final Strip[] strips = {new Strip(), new Strip()};
 
         /** VP8 bitstream version from frame tag. */
         int version;
@@ -53,6 +64,16 @@ final class Vp8Decoder {
         int sharpnessLevel;
     }
 
+    /** YUV pixels of one macroblock row, preceded by the rows of the row above that filtering and output need. */
+    private static final class Strip {
+        /** Luma: {@link #FILTER_EXTRA_Y} rows of the previous macroblock row, then the 16 rows of this one. */
+        byte[] y;
+        /** Chroma U: {@link #FILTER_EXTRA_UV} rows of the previous macroblock row, then the 8 rows of this one. */
+        byte[] u;
+        /** Chroma V, laid out like {@link #u}. */
+        byte[] v;
+    }
+
     /** Segment-level quantization and loop-filter configuration. */
     private static final class Segment {
         /** Segment Y DC quantizer. */
@@ -76,6 +97,20 @@ final class Vp8Decoder {
         byte loopfilterLevel;
     }
 
+    /** Loop filter strengths shared by the macroblocks of one segment that are, or are not, B_PRED. */
+    private static final class FilterParams {
+        /** Filter level; 0 turns the filter off. */
+        int level;
+        /** Limit on differences between neighbouring pixels on either side of an edge. */
+        int interiorLimit;
+        /** Threshold above which an edge counts as having high variance. */
+        int hevThreshold;
+        /** Edge limit for macroblock edges. */
+        int mbEdgeLimit;
+        /** Edge limit for edges between subblocks. */
+        int subEdgeLimit;
+    }
+
     /** Per-macroblock mode flags and decoded non-zero state. */
     private static final class MacroBlock {
         /** 4x4 luma block prediction modes in raster order. */
@@ -90,6 +125,214 @@ final class Vp8Decoder {
         boolean coeffsSkipped;
         /** Whether any transform coefficient is non-zero. */
         boolean nonZeroDct;
+        /** {@link Vp8Transform} block kind of luma block {@code i} in bits {@code 2i, 2i + 1}. */
+        int nonZeroY;
+        /** Block kinds of the 4 U, then 4 V blocks, packed like {@link #nonZeroY}. */
+        int nonZeroUv;
+    }
+
+    /** Modes and dequantized residuals of one parsed macroblock row. */
+    private static final class MacroBlockRow {
+        MacroBlock[] mbs = new MacroBlock[0];
+        /**
+         * 384 dequantized coefficients per macroblock: 16 luma blocks, then 4 U and 4 V blocks, 16 each in raster
+         * order. The inverse transform runs at reconstruction, fused with adding the residue to the prediction.
+         */
+        int[] coeffs = new int[0];
+
+        void ensureWidth(int mbWidth) {
+            if (mbs.length < mbWidth) {
+                int old = mbs.length;
+                mbs = Arrays.copyOf(mbs, mbWidth);
+                for (int i = old; i < mbWidth; i++) mbs[i] = new MacroBlock();
+                coeffs = new int[mbWidth * 384];
+            }
+        }
+    }
+
+    /**
+     * Row counters and stages of a parallel decode. Each stage works through the rows in order and waits until the
+     * stages it depends on are far enough ahead; the first failure stops every stage.
+     *
+     * <p>Stages are offered to an executor, which may start them late, never, or on the decoding thread itself. So
+     * a stage belongs to whichever thread claims it first: a worker when it starts running the task, or the
+     * decoding thread as soon as it would have to wait while the stage has not started. The decoding thread then
+     * runs the rows of the stages it claimed whenever it would otherwise wait, and a task that starts afterwards
+     * returns at once.
+     */
+    private static final class RowPipeline {
+        static final int PARSED = 0;
+        static final int RECONSTRUCTED = 1;
+        static final int EMITTED = 2;
+
+        private final Thread decodingThread = Thread.currentThread();
+        private final int rows;
+        private final int[] done = new int[3];
+        private final List<Stage> stages = new ArrayList<>(2);
+        private int runningWorkers;
+        private Throwable failure;
+
+        RowPipeline(int rows) {
+            this.rows = rows;
+        }
+
+        /**
+         * Adds a stage that runs {@code task} for rows 0, 1, ... in order, row {@code mby} as soon as
+         * {@code done[deps[i]] >= mby + deps[i + 1]} for every even {@code i}, and offers it to {@code executor}.
+         */
+        void start(Executor executor, IntConsumer task, int... deps) {
+            Stage stage = new Stage(task, deps);
+            synchronized (this) {
+                stages.add(stage);
+            }
+            try {
+                executor.execute(stage);
+            } catch (RejectedExecutionException e) {
+                // Never claimed by a worker, so the decoding thread runs it.
+            }
+        }
+
+        /**
+         * Waits on the decoding thread until {@code stage} has finished {@code count} rows, meanwhile running the
+         * rows of the stages no worker has started. Returns false once the decode has failed.
+         */
+        boolean await(int stage, int count) {
+            while (true) {
+                Stage own;
+                synchronized (this) {
+                    if (failure != null) return false;
+                    if (done[stage] >= count) return true;
+                    own = claimReady();
+                    if (own == null) {
+                        waitForProgress();
+                        continue;
+                    }
+                }
+                try {
+                    own.task.accept(own.next++);
+                } catch (Throwable t) {
+                    fail(t);
+                }
+            }
+        }
+
+        synchronized void advance(int stage) {
+            done[stage]++;
+            notifyAll();
+        }
+
+        synchronized void fail(Throwable t) {
+            if (failure == null) failure = t;
+            notifyAll();
+        }
+
+        /**
+         * Completes the stages left to the decoding thread, cancels those never started, waits until no worker
+         * touches the decoder any more and rethrows the first failure. An interrupt fails the decode; the workers
+         * then stop after their current row.
+         */
+        void finish() throws WebPDecodeException {
+            await(EMITTED, rows);
+            boolean interrupted = false;
+            synchronized (this) {
+                for (Stage s : stages) {
+                    if (s.owner == null) s.owner = decodingThread;
+                }
+                while (runningWorkers > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        fail(new WebPDecodeException("Interrupted while decoding"));
+                    }
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+
+            Throwable t;
+            synchronized (this) {
+                t = failure;
+            }
+            if (t == null) return;
+            if (t instanceof WebPDecodeException) throw (WebPDecodeException) t;
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            if (t instanceof Error) throw (Error) t;
+            throw new WebPDecodeException("VP8 decode failed", t);
+        }
+
+        /** Claims the stages no worker has started and returns one of them whose next row can run, or null. */
+        private Stage claimReady() {
+            for (Stage s : stages) {
+                if (s.owner == null) s.owner = decodingThread;
+                if (s.owner == decodingThread && s.next < rows && s.ready(s.next)) return s;
+            }
+            return null;
+        }
+
+        /** Waits for a counter change; an interrupt fails the decode. */
+        private void waitForProgress() {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(new WebPDecodeException("Interrupted while decoding"));
+            }
+        }
+
+        /** One stage, run either by the worker that claims it or row by row by the decoding thread. */
+        private final class Stage implements Runnable {
+            final IntConsumer task;
+            final int[] deps;
+            /** Claiming thread, or null while nobody has. */
+            Thread owner;
+            /** Next row, while the decoding thread owns the stage. */
+            int next;
+
+            Stage(IntConsumer task, int[] deps) {
+                this.task = task;
+                this.deps = deps;
+            }
+
+            /** Whether row {@code mby} can run; the caller holds the pipeline lock. */
+            boolean ready(int mby) {
+                for (int i = 0; i < deps.length; i += 2) {
+                    if (done[deps[i]] < mby + deps[i + 1]) return false;
+                }
+                return true;
+            }
+
+            @Override
+            public void run() {
+                synchronized (RowPipeline.this) {
+                    // A caller-runs executor hands the task back to the decoding thread, which must not block here.
+                    if (owner != null || Thread.currentThread() == decodingThread) return;
+                    owner = Thread.currentThread();
+                    runningWorkers++;
+                }
+                try {
+                    for (int mby = 0; mby < rows && awaitReady(mby); mby++) {
+                        task.accept(mby);
+                    }
+                } catch (Throwable t) {
+                    fail(t);
+                } finally {
+                    synchronized (RowPipeline.this) {
+                        runningWorkers--;
+                        RowPipeline.this.notifyAll();
+                    }
+                }
+            }
+
+            /** Waits on the worker until row {@code mby} can run; returns false once the decode has failed. */
+            private boolean awaitReady(int mby) {
+                synchronized (RowPipeline.this) {
+                    while (!ready(mby) && failure == null) {
+                        waitForProgress();
+                    }
+                    return failure == null;
+                }
+            }
+        }
     }
 
     /** Prediction and complexity context carried from neighboring macroblocks. */
@@ -101,19 +344,31 @@ final class Vp8Decoder {
         final byte[] complexity = new byte[9];
     }
 
-    /** Stateful VP8 bitstream decoder for a single keyframe payload. */
-    private static final class Decoder {
+    /**
+     * Stateful VP8 bitstream decoder.
+     *
+     * <p>One instance can decode any number of keyframes in sequence: {@link #reset(ByteBuffer, int, int)} restores
+     * the default probabilities and segment state, and frame-sized buffers are kept and only grown when a
+     * larger frame arrives.
+     */
+    static final class Decoder {
         private static final int PLANE_YCOEFF1 = 0;
         private static final int PLANE_Y2 = 1;
         private static final int PLANE_CHROMA = 2;
         private static final int PLANE_YCOEFF0 = 3;
 
-        private final Vp8Reader r;
+        private final Vp8Reader r = new Vp8Reader();
         private final Vp8ArithmeticDecoder b = new Vp8ArithmeticDecoder();
 
+        /** Parsed rows a parallel decode may hold between the parse and reconstruct stages. */
+        private static final int PIPELINE_ROWS = 4;
+        /** Frames with fewer macroblock rows are always decoded on the calling thread. */
+        private static final int MIN_PARALLEL_MB_ROWS = 4;
+
         private int mbWidth;
         private int mbHeight;
-        private MacroBlock[] macroblocks;
+        /** Parsed macroblock rows; row {@code mby} goes to slot {@code mby % PIPELINE_ROWS} (slot 0 when serial). */
+        private final MacroBlockRow[] rows = new MacroBlockRow[PIPELINE_ROWS];
         private final Frame frame = new Frame();
 
         private boolean segmentsEnabled;
@@ -123,19 +378,42 @@ final class Vp8Decoder {
         private boolean loopFilterAdjustmentsEnabled;
         private final int[] refDelta = new int[4];
         private final int[] modeDelta = new int[4];
+        /** Loop filter strengths by segment, then by whether the macroblock is B_PRED; set per frame. */
+        private final FilterParams[][] filterParams = new FilterParams[Vp8Common.MAX_SEGMENTS][2];
+        /** Whether any entry of {@link #filterParams} has a non-zero level. */
+        private boolean loopFilterEnabled;
 
         private final Vp8ArithmeticDecoder[] partitions = {
                 new Vp8ArithmeticDecoder(), new Vp8ArithmeticDecoder(), new Vp8ArithmeticDecoder(), new Vp8ArithmeticDecoder(),
                 new Vp8ArithmeticDecoder(), new Vp8ArithmeticDecoder(), new Vp8ArithmeticDecoder(), new Vp8ArithmeticDecoder()
         };
         private int numPartitions = 1;
+        /** Token partition {@code i} is {@code r.data()[partOff[i], partOff[i] + partLen[i])}. */
+        private final int[] partOff = new int[8];
+        private final int[] partLen = new int[8];
+        /** Start and end of the VP8 payload in {@code r.data()}. */
+        private int payloadOff;
+        private int payloadEnd;
+        /** End of the bytes of {@code r.data()} that have arrived; less than the payload end while incremental. */
+        private int dataEnd;
+
+        // Incremental decoding: the next macroblock row to parse, and the parse state to roll back to when a row
+        // runs into token data that has not arrived yet.
+        private int nextRow;
+        private final Vp8ArithmeticDecoder.Position savedModes = new Vp8ArithmeticDecoder.Position();
+        private final Vp8ArithmeticDecoder.Position savedTokens = new Vp8ArithmeticDecoder.Position();
+        private byte[] savedTop = new byte[0];
+
+        /** One output row as packed ARGB, filled by the emit stage before it goes to the {@link PixelWriter}. */
+        private int[] argbRow = new int[0];
 
         private final Vp8TreeNode[] segmentTreeNodes;
-        private final Vp8TreeNode[][][][] tokenProbs;
+        /** Token probabilities, see {@link Vp8Common#newDefaultTokenProbs()}. */
+        private final byte[] tokenProbs;
 
         private int probSkipFalse = -1;
 
-        private PreviousMacroBlock[] top;
+        private PreviousMacroBlock[] top = new PreviousMacroBlock[0];
         private final PreviousMacroBlock left = new PreviousMacroBlock();
 
         private byte[] topBorderY;
@@ -145,68 +423,297 @@ final class Vp8Decoder {
         private byte[] topBorderV;
         private byte[] leftBorderV;
 
-        Decoder(byte[] webp, int off, int len) throws WebPDecodeException {
-            this.r = new Vp8Reader(webp, off, len);
+        // Per-macroblock scratch, reused for every macroblock of every frame. block16 belongs to the parse stage,
+        // the rest to the reconstruct stage.
+        private final int[] block16 = new int[16];
+        private final byte[] lumaWs = new byte[Vp8Prediction.LUMA_BLOCK_SIZE];
+        private final byte[] uWs = new byte[Vp8Prediction.CHROMA_BLOCK_SIZE];
+        private final byte[] vWs = new byte[Vp8Prediction.CHROMA_BLOCK_SIZE];
+
+        Decoder() {
             for (int i = 0; i < segment.length; i++) {
                 segment[i] = new Segment();
+                filterParams[i][0] = new FilterParams();
+                filterParams[i][1] = new FilterParams();
             }
             this.segmentTreeNodes = new Vp8TreeNode[3];
             for (int i = 0; i < 3; i++) {
                 Vp8TreeNode n = Vp8Common.SEGMENT_TREE_NODE_DEFAULTS[i];
                 this.segmentTreeNodes[i] = new Vp8TreeNode(n.left, n.right, n.prob, n.index);
             }
-            this.tokenProbs = Vp8Common.newDefaultTokenProbNodes();
+            this.tokenProbs = Vp8Common.newDefaultTokenProbs();
         }
 
-        /** Decodes one full VP8 keyframe into planar YUV buffers. */
-        Frame decodeFrame() throws WebPDecodeException {
+        /** Prepares this decoder for the keyframe payload {@code webp[off, off + len)}. */
+        void reset(ByteBuffer webp, int off, int len) throws WebPDecodeException {
+            r.reset(webp, off, len);
+            payloadOff = off;
+            payloadEnd = off + len;
+            dataEnd = payloadEnd;
+
+            for (Segment seg : segment) {
+                seg.deltaValues = false;
+                seg.quantizerLevel = 0;
+                seg.loopfilterLevel = 0;
+            }
+            for (int i = 0; i < 3; i++) {
+                segmentTreeNodes[i].prob = Vp8Common.SEGMENT_TREE_NODE_DEFAULTS[i].prob;
+            }
+            Vp8Common.resetTokenProbs(tokenProbs);
+
+            segmentsEnabled = false;
+            segmentsUpdateMap = false;
+            loopFilterAdjustmentsEnabled = false;
+            Arrays.fill(refDelta, 0);
+            Arrays.fill(modeDelta, 0);
+            numPartitions = 1;
+            probSkipFalse = -1;
+        }
+
+        /**
+         * Decodes one VP8 keyframe of the expected size and hands its pixel rows, with the alpha of {@code alpha}
+         * merged in if it is not {@code null}, to {@code out}.
+         *
+         * <p>Each macroblock row is parsed, reconstructed and loop-filtered (prediction works from the saved
+         * unfiltered borders, not from the strips), and the rows the next filter pass can no longer touch are
+         * converted straight away, so only two strips of the YUV planes are ever kept. With more than one thread
+         * the three steps run as a pipeline on consecutive rows.
+         */
+        void decodeFrame(
+                int width,
+                int height,
+                PixelWriter out,
+                AlphaChunkDecoder.AlphaPlane alpha,
+                WebPDecodeOptions options
+        ) throws WebPDecodeException {
             readFrameHeader();
+            if (frame.width != width || frame.height != height) {
+                throw new WebPDecodeException("VP8 decoded size mismatch");
+            }
 
-            macroblocks = new MacroBlock[mbWidth * mbHeight];
+            int threads = options.threads();
+            if (threads < 2 || mbHeight < MIN_PARALLEL_MB_ROWS) {
+                MacroBlockRow row = row(0);
+                for (int mby = 0; mby < mbHeight; mby++) {
+                    parseRow(mby, row);
+                    reconstructRow(mby, row);
+                    emitRow(mby, out, alpha);
+                }
+                return;
+            }
 
-            for (int mby = 0; mby < mbHeight; mby++) {
-                int p = mby % numPartitions;
-                Arrays.fill(left.bpred, (byte) 0);
-                Arrays.fill(left.complexity, (byte) 0);
+            for (int i = 0; i < PIPELINE_ROWS; i++) row(i);
+            RowPipeline pipe = new RowPipeline(mbHeight);
+            Executor executor = options.executorOrShared();
+            if (threads == 2) {
+                pipe.start(executor, mby -> {
+                    reconstructRow(mby, rows[mby % PIPELINE_ROWS]);
+                    pipe.advance(RowPipeline.RECONSTRUCTED);
+                    emitRow(mby, out, alpha);
+                    pipe.advance(RowPipeline.EMITTED);
+                }, RowPipeline.PARSED, 1);
+            } else {
+                // The strip is shared with row mby - 2, which must have been converted.
+                pipe.start(executor, mby -> {
+                    reconstructRow(mby, rows[mby % PIPELINE_ROWS]);
+                    pipe.advance(RowPipeline.RECONSTRUCTED);
+                }, RowPipeline.PARSED, 1, RowPipeline.EMITTED, -1);
+                pipe.start(executor, mby -> {
+                    emitRow(mby, out, alpha);
+                    pipe.advance(RowPipeline.EMITTED);
+                }, RowPipeline.RECONSTRUCTED, 1);
+            }
 
-                for (int mbx = 0; mbx < mbWidth; mbx++) {
-                    MacroBlock mb = readMacroblockHeader(mbx);
-                    int[] blocks;
-                    if (!mb.coeffsSkipped) {
-                        blocks = readResidualData(mb, mbx, p);
-                    } else {
-                        if (mb.lumaMode != Vp8Common.B_PRED) {
-                            left.complexity[0] = 0;
-                            top[mbx].complexity[0] = 0;
-                        }
-                        for (int i = 1; i < 9; i++) {
-                            left.complexity[i] = 0;
-                            top[mbx].complexity[i] = 0;
-                        }
-                        blocks = new int[384];
-                    }
+            try {
+                for (int mby = 0; mby < mbHeight; mby++) {
+                    if (!pipe.await(RowPipeline.RECONSTRUCTED, mby - PIPELINE_ROWS + 1)) break;
+                    parseRow(mby, rows[mby % PIPELINE_ROWS]);
+                    pipe.advance(RowPipeline.PARSED);
+                }
+            } catch (Throwable t) {
+                pipe.fail(t);
+            }
+            pipe.finish();
+        }
 
-                    intraPredictLuma(mbx, mby, mb, blocks);
-                    intraPredictChroma(mbx, mby, mb, blocks);
+        private MacroBlockRow row(int slot) {
+            MacroBlockRow row = rows[slot];
+            if (row == null) {
+                row = rows[slot] = new MacroBlockRow();
+            }
+            row.ensureWidth(mbWidth);
+            return row;
+        }
 
-                    macroblocks[mby * mbWidth + mbx] = mb;
+        /** Reads the modes and residuals of macroblock row {@code mby} into {@code row}. */
+        private void parseRow(int mby, MacroBlockRow row) throws WebPDecodeException {
+            int p = mby % numPartitions;
+            Arrays.fill(left.bpred, (byte) 0);
+            Arrays.fill(left.complexity, (byte) 0);
+
+            for (int mbx = 0; mbx < mbWidth; mbx++) {
+                MacroBlock mb = row.mbs[mbx];
+                int base = mbx * 384;
+                readMacroblockHeader(mbx, mb);
+                if (!mb.coeffsSkipped) {
+                    readResidualData(mb, mbx, p, row.coeffs, base);
+                } else {
+                    if (mb.lumaMode != Vp8Common.B_PRED) {
+                        left.complexity[0] = 0;
+                        top[mbx].complexity[0] = 0;
+                    }
+                    for (int i = 1; i < 9; i++) {
+                        left.complexity[i] = 0;
+                        top[mbx].complexity[i] = 0;
+                    }
                 }
+            }
+        }
+
+        /** Predicts, adds residuals and loop-filters macroblock row {@code mby} into its strip. */
+        private void reconstructRow(int mby, MacroBlockRow row) {
+            Strip strip = frame.strips[mby & 1];
+            int lumaW = frame.bufferWidth;
+            int chromaW = lumaW / 2;
+            if (mby > 0) {
+                Strip prev = frame.strips[(mby - 1) & 1];
+                System.arraycopy(prev.y, 16 * lumaW, strip.y, 0, FILTER_EXTRA_Y * lumaW);
+                System.arraycopy(prev.u, 8 * chromaW, strip.u, 0, FILTER_EXTRA_UV * chromaW);
+                System.arraycopy(prev.v, 8 * chromaW, strip.v, 0, FILTER_EXTRA_UV * chromaW);
+            }
 
-                leftBorderY = new byte[1 + 16];
-                Arrays.fill(leftBorderY, (byte) 129);
-                leftBorderU = new byte[1 + 8];
-                Arrays.fill(leftBorderU, (byte) 129);
-                leftBorderV = new byte[1 + 8];
-                Arrays.fill(leftBorderV, (byte) 129);
+            for (int mbx = 0; mbx < mbWidth; mbx++) {
+                MacroBlock mb = row.mbs[mbx];
+                intraPredictLuma(mbx, mby, mb, row.coeffs, mbx * 384, strip);
+                intraPredictChroma(mbx, mby, mb, row.coeffs, mbx * 384, strip);
             }
 
-            for (int mby = 0; mby < mbHeight; mby++) {
+            Arrays.fill(leftBorderY, (byte) 129);
+            Arrays.fill(leftBorderU, (byte) 129);
+            Arrays.fill(leftBorderV, (byte) 129);
+
+            if (loopFilterEnabled) {
                 for (int mbx = 0; mbx < mbWidth; mbx++) {
-                    loopFilter(mbx, mby, macroblocks[mby * mbWidth + mbx]);
+                    loopFilter(mbx, mby, row.mbs[mbx], strip);
                 }
             }
+        }
 
-            return frame;
+        /**
+         * Converts the output rows that became final with macroblock row {@code mby}. The next row's filter still
+         * modifies the 3 luma rows above it (and reads a 4th), so output stops at row 16 * mby + 8, whose lower
+         * chroma row 8 * mby + 4 is the last final one.
+         */
+        private void emitRow(int mby, PixelWriter out, AlphaChunkDecoder.AlphaPlane alpha) {
+            Strip strip = frame.strips[mby & 1];
+            int lumaW = frame.bufferWidth;
+            int chromaW = lumaW / 2;
+            int rowStart = mby == 0 ? 0 : mby * 16 - 7;
+            int rowEnd = mby == mbHeight - 1 ? frame.height : mby * 16 + 9;
+            int[] argb = argbRow;
+            for (int y = rowStart; y < rowEnd; y++) {
+                Yuv.fillArgbRowFancy(argb, 0,
+                        strip.y, (FILTER_EXTRA_Y - mby * 16) * lumaW, lumaW,
+                        strip.u, strip.v, (FILTER_EXTRA_UV - mby * 8) * chromaW, chromaW,
+                        frame.width, frame.height, y);
+                if (alpha != null) {
+                    AlphaChunkDecoder.mergeRow(alpha, y, argb, 0);
+                }
+                out.putRow(y, argb, 0, frame.width);
+            }
+        }
+
+        /**
+         * Starts decoding the keyframe at {@code webp[off, off + len)} of which only the first {@code available}
+         * bytes have arrived. Returns {@code false}, without changing any state, while the frame header, the first
+         * partition and the partition size table are still incomplete.
+         *
+         * <p>Afterwards, call {@link #moreData} whenever the payload grows and {@link #decodeAvailableRows} to
+         * decode what it allows.
+         */
+        boolean beginIncremental(ByteBuffer webp, int off, int len, int available, int width, int height)
+                throws WebPDecodeException {
+            if (available < len) {
+                if (available < 10) return false;
+                int firstPartitionSize = WebPRiffDecoder.read3LE(webp, off) >> 5;
+                // Up to 7 partition sizes follow the first partition.
+                if (available < Math.min(len, 10 + firstPartitionSize + 3 * 7)) return false;
+            }
+            // The reader only sees the bytes that have arrived, which cover everything the header parse reads.
+            reset(webp, off, available);
+            payloadEnd = off + len;
+            readFrameHeader();
+            if (frame.width != width || frame.height != height) {
+                throw new WebPDecodeException("VP8 decoded size mismatch");
+            }
+            row(0);
+            if (savedTop.length < mbWidth * 13) {
+                savedTop = new byte[mbWidth * 13];
+            }
+            nextRow = 0;
+            return true;
+        }
+
+        /** Makes the first {@code available} payload bytes readable; {@code webp} may be a new, larger copy. */
+        void moreData(ByteBuffer webp, int available) throws WebPDecodeException {
+            int oldEnd = dataEnd;
+            dataEnd = Math.max(oldEnd, payloadOff + available);
+            for (int i = 0; i < numPartitions; i++) {
+                if (oldEnd < partOff[i] + partLen[i] && dataEnd > partOff[i]) {
+                    partitions[i].extend(webp, partOff[i], availablePartitionBytes(i));
+                }
+            }
+        }
+
+        /**
+         * Parses, reconstructs and converts every further macroblock row whose tokens have fully arrived, and returns
+         * the number of leading output rows that are final.
+         */
+        int decodeAvailableRows(PixelWriter out, AlphaChunkDecoder.AlphaPlane alpha) throws WebPDecodeException {
+            MacroBlockRow row = rows[0];
+            while (nextRow < mbHeight) {
+                int mby = nextRow;
+                int p = mby % numPartitions;
+                if (availablePartitionBytes(p) == partLen[p]) {
+                    parseRow(mby, row);
+                } else if (!parsePartialRow(mby, row, partitions[p])) {
+                    break;
+                }
+                reconstructRow(mby, row);
+                emitRow(mby, out, alpha);
+                nextRow++;
+            }
+            if (nextRow == 0) return 0;
+            return nextRow == mbHeight ? frame.height : (nextRow - 1) * 16 + 9;
+        }
+
+        /**
+         * Parses a row from a partition that is still arriving. When the row reads into the partition's last,
+         * possibly incomplete bytes, the parse state is rolled back and {@code false} is returned.
+         */
+        private boolean parsePartialRow(int mby, MacroBlockRow row, Vp8ArithmeticDecoder tokens)
+                throws WebPDecodeException {
+            b.save(savedModes);
+            tokens.save(savedTokens);
+            for (int mbx = 0; mbx < mbWidth; mbx++) {
+                System.arraycopy(top[mbx].bpred, 0, savedTop, mbx * 13, 4);
+                System.arraycopy(top[mbx].complexity, 0, savedTop, mbx * 13 + 4, 9);
+            }
+
+            try {
+                parseRow(mby, row);
+                if (!tokens.usedFinalBytes()) return true;
+            } catch (WebPDecodeException e) {
+                if (!tokens.usedFinalBytes()) throw e;
+            }
+
+            b.restore(savedModes);
+            tokens.restore(savedTokens);
+            for (int mbx = 0; mbx < mbWidth; mbx++) {
+                System.arraycopy(savedTop, mbx * 13, top[mbx].bpred, 0, 4);
+                System.arraycopy(savedTop, mbx * 13 + 4, top[mbx].complexity, 0, 9);
+            }
+            return false;
         }
 
         private void readFrameHeader() throws WebPDecodeException {
@@ -220,8 +727,7 @@ final class Vp8Decoder {
             frame.forDisplay = ((tag >> 4) & 1) != 0;
             int firstPartitionSize = tag >> 5;
 
-            byte[] magic = r.readBytes(3);
-            if ((magic[0] & 0xFF) != 0x9D || (magic[1] & 0xFF) != 0x01 || (magic[2] & 0xFF) != 0x2A) {
+            if (r.readU8() != 0x9D || r.readU8() != 0x01 || r.readU8() != 0x2A) {
                 throw new WebPDecodeException("Invalid VP8 magic");
             }
 
@@ -231,31 +737,45 @@ final class Vp8Decoder {
             mbWidth = (frame.width + 15) / 16;
             mbHeight = (frame.height + 15) / 16;
 
-            top = new PreviousMacroBlock[mbWidth];
-            for (int i = 0; i < top.length; i++) top[i] = new PreviousMacroBlock();
+            if (top.length < mbWidth) {
+                top = new PreviousMacroBlock[mbWidth];
+                for (int i = 0; i < top.length; i++) top[i] = new PreviousMacroBlock();
+            } else {
+                for (int i = 0; i < mbWidth; i++) {
+                    Arrays.fill(top[i].bpred, (byte) 0);
+                    Arrays.fill(top[i].complexity, (byte) 0);
+                }
+            }
 
+            // Every strip row is rewritten by reconstruction before it is read, so stale contents can be kept.
             frame.bufferWidth = mbWidth * 16;
-            frame.ybuf = new byte[mbWidth * 16 * mbHeight * 16];
-            frame.ubuf = new byte[mbWidth * 8 * mbHeight * 8];
-            frame.vbuf = new byte[mbWidth * 8 * mbHeight * 8];
+            for (Strip strip : frame.strips) {
+                strip.y = grow(strip.y, mbWidth * 16 * (FILTER_EXTRA_Y + 16));
+                strip.u = grow(strip.u, mbWidth * 8 * (FILTER_EXTRA_UV + 8));
+                strip.v = grow(strip.v, mbWidth * 8 * (FILTER_EXTRA_UV + 8));
+            }
+            if (argbRow.length < frame.width) {
+                argbRow = new int[frame.width];
+            }
 
-            topBorderY = new byte[frame.width + 4 + 16];
+            topBorderY = grow(topBorderY, frame.width + 4 + 16);
             Arrays.fill(topBorderY, (byte) 127);
-            leftBorderY = new byte[1 + 16];
+            leftBorderY = grow(leftBorderY, 1 + 16);
             Arrays.fill(leftBorderY, (byte) 129);
 
-            topBorderU = new byte[8 * mbWidth];
+            topBorderU = grow(topBorderU, 8 * mbWidth);
             Arrays.fill(topBorderU, (byte) 127);
-            leftBorderU = new byte[1 + 8];
+            leftBorderU = grow(leftBorderU, 1 + 8);
             Arrays.fill(leftBorderU, (byte) 129);
 
-            topBorderV = new byte[8 * mbWidth];
+            topBorderV = grow(topBorderV, 8 * mbWidth);
             Arrays.fill(topBorderV, (byte) 127);
-            leftBorderV = new byte[1 + 8];
+            leftBorderV = grow(leftBorderV, 1 + 8);
             Arrays.fill(leftBorderV, (byte) 129);
 
-            byte[] part0 = r.readBytes(firstPartitionSize);
-            b.init(part0, firstPartitionSize);
+            int part0Off = r.position();
+            r.skip(firstPartitionSize);
+            b.init(r.data(), part0Off, firstPartitionSize);
 
             int colorSpace = b.readLiteral(1);
             frame.pixelType = b.readLiteral(1);
@@ -276,6 +796,7 @@ final class Vp8Decoder {
             if (loopFilterAdjustmentsEnabled) {
                 readLoopFilterAdjustments();
             }
+            computeFilterParameters();
 
             numPartitions = 1 << b.readLiteral(2);
             initPartitions(numPartitions);
@@ -296,13 +817,15 @@ final class Vp8Decoder {
         }
 
         private void updateTokenProbabilities() throws WebPDecodeException {
+            // COEFF_UPDATE_PROBS has the same [plane][band][ctx][node] order as the flat table.
+            int at = 0;
             for (int i = 0; i < Vp8Common.COEFF_UPDATE_PROBS.length; i++) {
                 for (int j = 0; j < Vp8Common.COEFF_UPDATE_PROBS[i].length; j++) {
                     for (int k = 0; k < Vp8Common.COEFF_UPDATE_PROBS[i][j].length; k++) {
-                        for (int t = 0; t < Vp8Common.NUM_DCT_TOKENS - 1; t++) {
+                        for (int t = 0; t < Vp8Common.TOKEN_PROBS_PER_CTX; t++, at++) {
                             int prob = Vp8Common.COEFF_UPDATE_PROBS[i][j][k][t] & 0xFF;
                             if (b.readBool(prob)) {
-                                tokenProbs[i][j][k][t].prob = b.readLiteral(8);
+                                tokenProbs[at] = (byte) b.readLiteral(8);
                             }
                         }
                     }
@@ -311,17 +834,32 @@ final class Vp8Decoder {
         }
 
         private void initPartitions(int n) throws WebPDecodeException {
-            if (n > 1) {
-                byte[] sizes = r.readBytes(3 * n - 3);
-                for (int i = 0; i < n - 1; i++) {
-                    int off = 3 * i;
-                    int size = (sizes[off] & 0xFF) | ((sizes[off + 1] & 0xFF) << 8) | ((sizes[off + 2] & 0xFF) << 16);
-                    byte[] part = r.readBytes(size);
-                    partitions[i].init(part, size);
+            int sizesOff = r.position();
+            r.skip(3 * n - 3);
+            int pos = r.position();
+            for (int i = 0; i < n - 1; i++) {
+                int size = WebPRiffDecoder.read3LE(r.data(), sizesOff + 3 * i);
+                if (size > payloadEnd - pos) {
+                    throw new WebPDecodeException("Unexpected EOF");
                 }
+                partOff[i] = pos;
+                partLen[i] = size;
+                pos += size;
+            }
+            partOff[n - 1] = pos;
+            partLen[n - 1] = payloadEnd - pos;
+            for (int i = 0; i < n; i++) {
+                partitions[i].init(r.data(), partOff[i], availablePartitionBytes(i));
             }
-            byte[] last = r.readBytes(r.remaining());
-            partitions[n - 1].init(last, last.length);
+        }
+
+        private int availablePartitionBytes(int p) {
+            return Math.max(0, Math.min(partLen[p], dataEnd - partOff[p]));
+        }
+
+        /** Returns {@code buf} when it holds at least {@code size} bytes, otherwise a new array of that size. */
+        private static byte[] grow(byte[] buf, int size) {
+            return buf != null && buf.length >= size ? buf : new byte[size];
         }
 
         private static short dcQuant(int index) {
@@ -425,12 +963,11 @@ final class Vp8Decoder {
             }
         }
 
-        private MacroBlock readMacroblockHeader(int mbx) throws WebPDecodeException {
-            MacroBlock mb = new MacroBlock();
-
-            if (segmentsEnabled && segmentsUpdateMap) {
-                mb.segmentId = b.readWithTree(segmentTreeNodes);
-            }
+        private void readMacroblockHeader(int mbx, MacroBlock mb) throws WebPDecodeException {
+            mb.segmentId = (segmentsEnabled && segmentsUpdateMap) ? b.readWithTree(segmentTreeNodes) : 0;
+            mb.nonZeroDct = false;
+            mb.nonZeroY = 0;
+            mb.nonZeroUv = 0;
 
             mb.coeffsSkipped = probSkipFalse >= 0 && b.readBool(probSkipFalse);
 
@@ -472,110 +1009,137 @@ final class Vp8Decoder {
             for (int i = 0; i < 4; i++) {
                 top[mbx].bpred[i] = mb.bpred[12 + i];
             }
-
-            return mb;
         }
 
-        private boolean readCoefficients(int[] block, int p, int plane, int complexity, short dcq, short acq) throws WebPDecodeException {
-            int firstCoeff = (plane == PLANE_YCOEFF1) ? 1 : 0;
-            Vp8ArithmeticDecoder dec = partitions[p];
-            boolean hasCoeffs = false;
-            boolean skip = false;
-
-            int cplx = complexity;
-
-            for (int i = firstCoeff; i < 16; i++) {
-                int band = Vp8Common.COEFF_BANDS[i];
-                Vp8TreeNode[] tree = tokenProbs[plane][band][cplx];
-
-                Vp8TreeNode firstNode = tree[skip ? 1 : 0];
-                int token = dec.readWithTreeWithFirstNode(tree, firstNode);
+        private int readCoefficients(int[] block, int off, int p, int plane, int complexity, short dcq, short acq)
+                throws WebPDecodeException {
+            int first = (plane == PLANE_YCOEFF1) ? 1 : 0;
+            return readCoefficients(partitions[p], tokenProbs, plane, complexity, first, dcq, acq, block, off);
+        }
 
-                int absValue;
-                if (token == Vp8Common.DCT_EOB) {
-                    break;
-                } else if (token == Vp8Common.DCT_0) {
-                    skip = true;
-                    hasCoeffs = true;
-                    cplx = 0;
-                    continue;
-                } else if (token >= Vp8Common.DCT_1 && token <= Vp8Common.DCT_4) {
-                    absValue = token;
-                } else if (token >= Vp8Common.DCT_CAT1 && token <= Vp8Common.DCT_CAT6) {
-                    short[] probs = Vp8Common.PROB_DCT_CAT[token - Vp8Common.DCT_CAT1];
-                    int extra = 0;
-                    for (short pr : probs) {
-                        int t = pr & 0xFF;
-                        if (t == 0) break;
-                        boolean bit = dec.readBool(t);
-                        extra = extra + extra + (bit ? 1 : 0);
+        /**
+         * Reads the tokens of one 4x4 block, from coefficient {@code first} on, and stores the dequantized values
+         * in raster order into {@code block[off, off + 16)}, which must be zero. Returns the zigzag position after
+         * the last token read: every coefficient from there on is zero, and a result above {@code first} means
+         * some token other than an immediate end-of-block was read.
+         *
+         * <p>The shape of {@link Vp8Common#DCT_TOKEN_TREE} is hardcoded, as in libwebp's {@code GetCoeffs}: runs of
+         * zeros loop on node 1 without re-checking end-of-block, and probabilities come straight from the flat
+         * table at {@code at}, which always points at the current band and context.
+         */
+        static int readCoefficients(
+                Vp8ArithmeticDecoder dec,
+                byte[] probs,
+                int plane,
+                int ctx,
+                int first,
+                short dcq,
+                short acq,
+                int[] block,
+                int off
+        ) throws WebPDecodeException {
+            int[] bands = Vp8Common.COEFF_BAND_OFFSETS;
+            int planeOff = plane * Vp8Common.TOKEN_PROBS_PER_PLANE;
+            int n = first;
+            int at = planeOff + bands[n] + ctx * Vp8Common.TOKEN_PROBS_PER_CTX;
+            while (n < 16) {
+                if (!dec.readBool(probs[at])) {
+                    break; // end of block
+                }
+                while (!dec.readBool(probs[at + 1])) {
+                    // zero coefficient; the next token cannot be end-of-block
+                    if (++n == 16) {
+                        return 16;
                     }
-                    absValue = Vp8Common.DCT_CAT_BASE[token - Vp8Common.DCT_CAT1] + extra;
-                } else {
-                    throw new WebPDecodeException("Unknown DCT token: " + token);
+                    at = planeOff + bands[n];
                 }
 
-                skip = false;
+                int v;
+                int nextCtx;
+                if (!dec.readBool(probs[at + 2])) {
+                    v = 1;
+                    nextCtx = 1;
+                } else {
+                    v = readLargeValue(dec, probs, at);
+                    nextCtx = 2;
+                }
+                block[off + Vp8Common.ZIGZAG[n]] = dec.readSigned(v) * (n > 0 ? acq : dcq);
 
-                cplx = (absValue == 0) ? 0 : (absValue == 1 ? 1 : 2);
+                n++;
+                at = planeOff + bands[n] + nextCtx * Vp8Common.TOKEN_PROBS_PER_CTX;
+            }
+            return n;
+        }
 
-                if (dec.readSign()) {
-                    absValue = -absValue;
+        /** Reads a coefficient magnitude of at least 2, starting at node 3 of the token tree at {@code probs[at]}. */
+        private static int readLargeValue(Vp8ArithmeticDecoder dec, byte[] probs, int at) throws WebPDecodeException {
+            if (!dec.readBool(probs[at + 3])) {
+                if (!dec.readBool(probs[at + 4])) {
+                    return 2;
                 }
-
-                int zigzag = Vp8Common.ZIGZAG[i];
-                int q = zigzag > 0 ? acq : dcq;
-                block[zigzag] = absValue * q;
-                hasCoeffs = true;
+                return dec.readBool(probs[at + 5]) ? 4 : 3;
             }
+            if (!dec.readBool(probs[at + 6])) {
+                int cat = dec.readBool(probs[at + 7]) ? 1 : 0;
+                return readExtraBits(dec, cat);
+            }
+            int bit1 = dec.readBool(probs[at + 8]) ? 1 : 0;
+            int bit0 = dec.readBool(probs[at + 9 + bit1]) ? 1 : 0;
+            return readExtraBits(dec, 2 + 2 * bit1 + bit0);
+        }
 
-            return hasCoeffs;
+        /** Reads the extra bits of token {@code DCT_CAT1 + cat} and returns the magnitude. */
+        private static int readExtraBits(Vp8ArithmeticDecoder dec, int cat) throws WebPDecodeException {
+            int extra = 0;
+            for (short pr : Vp8Common.PROB_DCT_CAT[cat]) {
+                if (pr == 0) {
+                    break;
+                }
+                extra = extra + extra + (dec.readBool(pr) ? 1 : 0);
+            }
+            return Vp8Common.DCT_CAT_BASE[cat] + extra;
         }
 
-        private int[] readResidualData(MacroBlock mb, int mbx, int p) throws WebPDecodeException {
+        /**
+         * Reads and dequantizes all 24 blocks of {@code mb} into {@code blocks[base, base + 384)} and records which
+         * inverse transform each block needs.
+         */
+        private void readResidualData(MacroBlock mb, int mbx, int p, int[] blocks, int base) throws WebPDecodeException {
             int sindex = mb.segmentId;
-            int[] blocks = new int[384];
+            Arrays.fill(blocks, base, base + 384, 0);
 
             int plane = (mb.lumaMode == Vp8Common.B_PRED) ? PLANE_YCOEFF0 : PLANE_Y2;
 
-            int[] block16 = new int[16];
-
             if (plane == PLANE_Y2) {
+                int[] block16 = this.block16;
                 int complexity = (top[mbx].complexity[0] & 0xFF) + (left.complexity[0] & 0xFF);
                 Arrays.fill(block16, 0);
-                boolean n = readCoefficients(block16, p, plane, complexity, segment[sindex].y2dc, segment[sindex].y2ac);
+                int end = readCoefficients(block16, 0, p, plane, complexity, segment[sindex].y2dc, segment[sindex].y2ac);
+                boolean n = end > 0;
 
                 left.complexity[0] = (byte) (n ? 1 : 0);
                 top[mbx].complexity[0] = (byte) (n ? 1 : 0);
 
                 Vp8Transform.iwht4x4(block16);
                 for (int k = 0; k < 16; k++) {
-                    blocks[16 * k] = block16[k];
+                    blocks[base + 16 * k] = block16[k];
                 }
 
                 plane = PLANE_YCOEFF1;
             }
+            int first = plane == PLANE_YCOEFF1 ? 1 : 0;
 
+            int nonZeroY = 0;
             for (int y = 0; y < 4; y++) {
                 byte leftC = left.complexity[y + 1];
                 for (int x = 0; x < 4; x++) {
                     int i = x + y * 4;
-                    int off = i * 16;
-
-                    Arrays.fill(block16, 0);
-                    if (plane == PLANE_YCOEFF1) {
-                        block16[0] = blocks[off];
-                    }
+                    int off = base + i * 16;
 
                     int complexity = (top[mbx].complexity[x + 1] & 0xFF) + (leftC & 0xFF);
-                    boolean n = readCoefficients(block16, p, plane, complexity, segment[sindex].ydc, segment[sindex].yac);
-
-                    if (block16[0] != 0 || n) {
-                        mb.nonZeroDct = true;
-                        Vp8Transform.idct4x4(block16);
-                    }
-
-                    System.arraycopy(block16, 0, blocks, off, 16);
+                    int end = readCoefficients(blocks, off, p, plane, complexity, segment[sindex].ydc, segment[sindex].yac);
+                    boolean n = end > first;
+                    nonZeroY |= Vp8Transform.kind(end, blocks[off] != 0) << (2 * i);
 
                     leftC = (byte) (n ? 1 : 0);
                     top[mbx].complexity[x + 1] = (byte) (n ? 1 : 0);
@@ -584,23 +1148,18 @@ final class Vp8Decoder {
             }
 
             plane = PLANE_CHROMA;
-            for (int j : new int[] {5, 7}) {
+            int nonZeroUv = 0;
+            for (int j = 5; j <= 7; j += 2) {
                 for (int y = 0; y < 2; y++) {
                     byte leftC = left.complexity[y + j];
                     for (int x = 0; x < 2; x++) {
                         int i = x + y * 2 + (j == 5 ? 16 : 20);
-                        int off = i * 16;
+                        int off = base + i * 16;
 
-                        Arrays.fill(block16, 0);
                         int complexity = (top[mbx].complexity[x + j] & 0xFF) + (leftC & 0xFF);
-                        boolean n = readCoefficients(block16, p, plane, complexity, segment[sindex].uvdc, segment[sindex].uvac);
-
-                        if (block16[0] != 0 || n) {
-                            mb.nonZeroDct = true;
-                            Vp8Transform.idct4x4(block16);
-                        }
-
-                        System.arraycopy(block16, 0, blocks, off, 16);
+                        int end = readCoefficients(blocks, off, p, plane, complexity, segment[sindex].uvdc, segment[sindex].uvac);
+                        boolean n = end > 0;
+                        nonZeroUv |= Vp8Transform.kind(end, blocks[off] != 0) << (2 * (i - 16));
 
                         leftC = (byte) (n ? 1 : 0);
                         top[mbx].complexity[x + j] = (byte) (n ? 1 : 0);
@@ -609,12 +1168,16 @@ final class Vp8Decoder {
                 }
             }
 
-            return blocks;
+            mb.nonZeroY = nonZeroY;
+            mb.nonZeroUv = nonZeroUv;
+            mb.nonZeroDct = (nonZeroY | nonZeroUv) != 0;
         }
 
-        private void intraPredictLuma(int mbx, int mby, MacroBlock mb, int[] resdata) {
+
+        private void intraPredictLuma(int mbx, int mby, MacroBlock mb, int[] resdata, int resOff, Strip strip) {
             int stride = Vp8Prediction.LUMA_STRIDE;
-            byte[] ws = Vp8Prediction.createBorderLuma(mbx, mby, mbWidth, topBorderY, leftBorderY);
+            byte[] ws = lumaWs;
+            Vp8Prediction.createBorderLuma(ws, mbx, mby, mbWidth, topBorderY, leftBorderY);
 
             switch (mb.lumaMode) {
                 case Vp8Common.V_PRED:
@@ -630,20 +1193,17 @@ final class Vp8Decoder {
                     Vp8Prediction.predictDcpred(ws, 16, stride, mby != 0, mbx != 0);
                     break;
                 case Vp8Common.B_PRED:
-                    Vp8Prediction.predict4x4(ws, stride, mb.bpred, resdata);
+                    Vp8Prediction.predict4x4(ws, stride, mb.bpred, resdata, resOff, mb.nonZeroY);
                     break;
                 default:
                     throw new IllegalStateException("Unexpected luma mode");
             }
 
-            if (mb.lumaMode != Vp8Common.B_PRED) {
-                for (int y = 0; y < 4; y++) {
-                    for (int x = 0; x < 4; x++) {
-                        int i = x + y * 4;
-                        int y0 = 1 + y * 4;
-                        int x0 = 1 + x * 4;
-                        Vp8Prediction.addResidue(ws, resdata, i * 16, y0, x0, stride);
-                    }
+            int nonZero = mb.nonZeroY;
+            if (mb.lumaMode != Vp8Common.B_PRED && nonZero != 0) {
+                for (int i = 0; i < 16; i++) {
+                    int pos = (1 + (i >> 2) * 4) * stride + 1 + (i & 3) * 4;
+                    Vp8Transform.addInverseTransform((nonZero >>> (2 * i)) & 3, resdata, resOff + i * 16, ws, pos, stride);
                 }
             }
 
@@ -656,16 +1216,18 @@ final class Vp8Decoder {
 
             int lumaW = mbWidth * 16;
             for (int y = 0; y < 16; y++) {
-                int dst = (mby * 16 + y) * lumaW + mbx * 16;
+                int dst = (FILTER_EXTRA_Y + y) * lumaW + mbx * 16;
                 int src = (1 + y) * stride + 1;
-                System.arraycopy(ws, src, frame.ybuf, dst, 16);
+                System.arraycopy(ws, src, strip.y, dst, 16);
             }
         }
 
-        private void intraPredictChroma(int mbx, int mby, MacroBlock mb, int[] resdata) {
+        private void intraPredictChroma(int mbx, int mby, MacroBlock mb, int[] resdata, int resOff, Strip strip) {
             int stride = Vp8Prediction.CHROMA_STRIDE;
-            byte[] uws = Vp8Prediction.createBorderChroma(mbx, mby, topBorderU, leftBorderU);
-            byte[] vws = Vp8Prediction.createBorderChroma(mbx, mby, topBorderV, leftBorderV);
+            byte[] uws = uWs;
+            byte[] vws = vWs;
+            Vp8Prediction.createBorderChroma(uws, mbx, mby, topBorderU, leftBorderU);
+            Vp8Prediction.createBorderChroma(vws, mbx, mby, topBorderV, leftBorderV);
 
             switch (mb.chromaMode) {
                 case Vp8Common.DC_PRED:
@@ -688,14 +1250,14 @@ final class Vp8Decoder {
                     throw new IllegalStateException("Unexpected chroma mode");
             }
 
-            for (int y = 0; y < 2; y++) {
-                for (int x = 0; x < 2; x++) {
-                    int i = x + y * 2;
-                    int y0 = 1 + y * 4;
-                    int x0 = 1 + x * 4;
-
-                    Vp8Prediction.addResidue(uws, resdata, 16 * 16 + i * 16, y0, x0, stride);
-                    Vp8Prediction.addResidue(vws, resdata, 20 * 16 + i * 16, y0, x0, stride);
+            int nonZero = mb.nonZeroUv;
+            if (nonZero != 0) {
+                for (int i = 0; i < 4; i++) {
+                    int pos = (1 + (i >> 1) * 4) * stride + 1 + (i & 1) * 4;
+                    Vp8Transform.addInverseTransform(
+                            (nonZero >>> (2 * i)) & 3, resdata, resOff + (16 + i) * 16, uws, pos, stride);
+                    Vp8Transform.addInverseTransform(
+                            (nonZero >>> (2 * i + 8)) & 3, resdata, resOff + (20 + i) * 16, vws, pos, stride);
                 }
             }
 
@@ -704,10 +1266,10 @@ final class Vp8Decoder {
 
             int chromaW = mbWidth * 8;
             for (int y = 0; y < 8; y++) {
-                int dst = (mby * 8 + y) * chromaW + mbx * 8;
+                int dst = (FILTER_EXTRA_UV + y) * chromaW + mbx * 8;
                 int src = (1 + y) * stride + 1;
-                System.arraycopy(uws, src, frame.ubuf, dst, 8);
-                System.arraycopy(vws, src, frame.vbuf, dst, 8);
+                System.arraycopy(uws, src, strip.u, dst, 8);
+                System.arraycopy(vws, src, strip.v, dst, 8);
             }
         }
 
@@ -720,129 +1282,108 @@ final class Vp8Decoder {
             System.arraycopy(chromaBlock, 8 * stride + 1, topBorder, mbx * 8, 8);
         }
 
-        private void loopFilter(int mbx, int mby, MacroBlock mb) {
+        private void loopFilter(int mbx, int mby, MacroBlock mb, Strip strip) {
             int lumaW = mbWidth * 16;
             int chromaW = mbWidth * 8;
+            byte[] ybuf = strip.y;
+            byte[] ubuf = strip.u;
+            byte[] vbuf = strip.v;
 
-            int[] params = calculateFilterParameters(mb);
-            int filterLevel = params[0];
-            int interiorLimit = params[1];
-            int hevThreshold = params[2];
-
-            if (filterLevel <= 0) return;
-
-            int mbEdgeLimit = (filterLevel + 2) * 2 + interiorLimit;
-            int subBEdgeLimit = (filterLevel * 2) + interiorLimit;
+            FilterParams params = filterParams[mb.segmentId][mb.lumaMode == Vp8Common.B_PRED ? 1 : 0];
+            if (params.level == 0) return;
+            int interiorLimit = params.interiorLimit;
+            int hevThreshold = params.hevThreshold;
+            int mbEdgeLimit = params.mbEdgeLimit;
+            int subBEdgeLimit = params.subEdgeLimit;
 
             boolean doSubblockFiltering = mb.lumaMode == Vp8Common.B_PRED || (!mb.coeffsSkipped && mb.nonZeroDct);
 
-            if (mbx > 0) {
-                if (frame.filterType) {
-                    for (int y = 0; y < 16; y++) {
-                        int y0 = mby * 16 + y;
-                        int x0 = mbx * 16;
-                        int off = y0 * lumaW + x0 - 4;
-                        Vp8LoopFilter.simpleSegmentHorizontal(mbEdgeLimit, frame.ybuf, off);
-                    }
-                } else {
-                    for (int y = 0; y < 16; y++) {
-                        int y0 = mby * 16 + y;
-                        int x0 = mbx * 16;
-                        int off = y0 * lumaW + x0 - 4;
-                        Vp8LoopFilter.macroblockFilterHorizontal(hevThreshold, interiorLimit, mbEdgeLimit, frame.ybuf, off);
+            // Top-left pixel of the macroblock in each plane: the q side of its left and top edges.
+            int yOff = FILTER_EXTRA_Y * lumaW + mbx * 16;
+            int uvOff = FILTER_EXTRA_UV * chromaW + mbx * 8;
+
+            if (frame.filterType) {
+                if (mbx > 0) {
+                    Vp8LoopFilter.simpleEdgeHorizontal(mbEdgeLimit, ybuf, yOff, lumaW, 16);
+                }
+                if (doSubblockFiltering) {
+                    for (int x = 4; x < 16; x += 4) {
+                        Vp8LoopFilter.simpleEdgeHorizontal(subBEdgeLimit, ybuf, yOff + x, lumaW, 16);
                     }
-                    for (int y = 0; y < 8; y++) {
-                        int y0 = mby * 8 + y;
-                        int x0 = mbx * 8;
-                        int off = y0 * chromaW + x0 - 4;
-                        Vp8LoopFilter.macroblockFilterHorizontal(hevThreshold, interiorLimit, mbEdgeLimit, frame.ubuf, off);
-                        Vp8LoopFilter.macroblockFilterHorizontal(hevThreshold, interiorLimit, mbEdgeLimit, frame.vbuf, off);
+                }
+                if (mby > 0) {
+                    Vp8LoopFilter.simpleEdgeVertical(mbEdgeLimit, ybuf, yOff, lumaW, 16);
+                }
+                if (doSubblockFiltering) {
+                    for (int y = 4; y < 16; y += 4) {
+                        Vp8LoopFilter.simpleEdgeVertical(subBEdgeLimit, ybuf, yOff + y * lumaW, lumaW, 16);
                     }
                 }
+                return;
             }
 
+            if (mbx > 0) {
+                Vp8LoopFilter.macroblockEdgeHorizontal(hevThreshold, interiorLimit, mbEdgeLimit, ybuf, yOff, lumaW, 16);
+                Vp8LoopFilter.macroblockEdgeUvHorizontal(
+                        hevThreshold, interiorLimit, mbEdgeLimit, ubuf, vbuf, uvOff, chromaW);
+            }
             if (doSubblockFiltering) {
-                if (frame.filterType) {
-                    for (int x = 4; x < 15; x += 4) {
-                        for (int y = 0; y < 16; y++) {
-                            int y0 = mby * 16 + y;
-                            int x0 = mbx * 16 + x;
-                            int off = y0 * lumaW + x0 - 4;
-                            Vp8LoopFilter.simpleSegmentHorizontal(subBEdgeLimit, frame.ybuf, off);
-                        }
-                    }
-                } else {
-                    for (int x = 4; x < 13; x += 4) {
-                        for (int y = 0; y < 16; y++) {
-                            int y0 = mby * 16 + y;
-                            int x0 = mbx * 16 + x;
-                            int off = y0 * lumaW + x0 - 4;
-                            Vp8LoopFilter.subblockFilterHorizontal(hevThreshold, interiorLimit, subBEdgeLimit, frame.ybuf, off);
-                        }
-                    }
-                    for (int y = 0; y < 8; y++) {
-                        int y0 = mby * 8 + y;
-                        int x0 = mbx * 8 + 4;
-                        int off = y0 * chromaW + x0 - 4;
-                        Vp8LoopFilter.subblockFilterHorizontal(hevThreshold, interiorLimit, subBEdgeLimit, frame.ubuf, off);
-                        Vp8LoopFilter.subblockFilterHorizontal(hevThreshold, interiorLimit, subBEdgeLimit, frame.vbuf, off);
-                    }
+                for (int x = 4; x < 16; x += 4) {
+                    Vp8LoopFilter.subblockEdgeHorizontal(
+                            hevThreshold, interiorLimit, subBEdgeLimit, ybuf, yOff + x, lumaW, 16);
                 }
+                Vp8LoopFilter.subblockEdgeUvHorizontal(
+                        hevThreshold, interiorLimit, subBEdgeLimit, ubuf, vbuf, uvOff + 4, chromaW);
             }
-
             if (mby > 0) {
-                if (frame.filterType) {
-                    for (int x = 0; x < 16; x++) {
-                        int y0 = mby * 16;
-                        int x0 = mbx * 16 + x;
-                        Vp8LoopFilter.simpleSegmentVertical(mbEdgeLimit, frame.ybuf, y0 * lumaW + x0, lumaW);
-                    }
-                } else {
-                    for (int x = 0; x < 16; x++) {
-                        int y0 = mby * 16;
-                        int x0 = mbx * 16 + x;
-                        Vp8LoopFilter.macroblockFilterVertical(hevThreshold, interiorLimit, mbEdgeLimit, frame.ybuf, y0 * lumaW + x0, lumaW);
-                    }
-                    for (int x = 0; x < 8; x++) {
-                        int y0 = mby * 8;
-                        int x0 = mbx * 8 + x;
-                        Vp8LoopFilter.macroblockFilterVertical(hevThreshold, interiorLimit, mbEdgeLimit, frame.ubuf, y0 * chromaW + x0, chromaW);
-                        Vp8LoopFilter.macroblockFilterVertical(hevThreshold, interiorLimit, mbEdgeLimit, frame.vbuf, y0 * chromaW + x0, chromaW);
-                    }
+                Vp8LoopFilter.macroblockEdgeVertical(hevThreshold, interiorLimit, mbEdgeLimit, ybuf, yOff, lumaW, 16);
+                Vp8LoopFilter.macroblockEdgeUvVertical(
+                        hevThreshold, interiorLimit, mbEdgeLimit, ubuf, vbuf, uvOff, chromaW);
+            }
+            if (doSubblockFiltering) {
+                for (int y = 4; y < 16; y += 4) {
+                    Vp8LoopFilter.subblockEdgeVertical(
+                            hevThreshold, interiorLimit, subBEdgeLimit, ybuf, yOff + y * lumaW, lumaW, 16);
                 }
+                Vp8LoopFilter.subblockEdgeUvVertical(
+                        hevThreshold, interiorLimit, subBEdgeLimit, ubuf, vbuf, uvOff + 4 * chromaW, chromaW);
             }
+        }
 
-            if (doSubblockFiltering) {
-                if (frame.filterType) {
-                    for (int y = 4; y < 15; y += 4) {
-                        for (int x = 0; x < 16; x++) {
-                            int y0 = mby * 16 + y;
-                            int x0 = mbx * 16 + x;
-                            Vp8LoopFilter.simpleSegmentVertical(subBEdgeLimit, frame.ybuf, y0 * lumaW + x0, lumaW);
-                        }
-                    }
-                } else {
-                    for (int y = 4; y < 13; y += 4) {
-                        for (int x = 0; x < 16; x++) {
-                            int y0 = mby * 16 + y;
-                            int x0 = mbx * 16 + x;
-                            Vp8LoopFilter.subblockFilterVertical(hevThreshold, interiorLimit, subBEdgeLimit, frame.ybuf, y0 * lumaW + x0, lumaW);
-                        }
-                    }
-                    for (int x = 0; x < 8; x++) {
-                        int y0 = mby * 8 + 4;
-                        int x0 = mbx * 8 + x;
-                        Vp8LoopFilter.subblockFilterVertical(hevThreshold, interiorLimit, subBEdgeLimit, frame.ubuf, y0 * chromaW + x0, chromaW);
-                        Vp8LoopFilter.subblockFilterVertical(hevThreshold, interiorLimit, subBEdgeLimit, frame.vbuf, y0 * chromaW + x0, chromaW);
+        /**
+         * Fills {@link #filterParams} from the frame header. The filter strength of a macroblock depends only on
+         * its segment and on whether it is B_PRED, so the loop filter looks it up instead of recomputing it.
+         */
+        private void computeFilterParameters() {
+            loopFilterEnabled = false;
+            for (int s = 0; s < Vp8Common.MAX_SEGMENTS; s++) {
+                for (int bpred = 0; bpred < 2; bpred++) {
+                    FilterParams params = filterParams[s][bpred];
+                    int filterLevel = filterLevel(segment[s], bpred == 1);
+                    int interiorLimit = filterLevel;
+                    if (frame.sharpnessLevel > 0) {
+                        interiorLimit >>= (frame.sharpnessLevel > 4) ? 2 : 1;
+                        int cap = 9 - frame.sharpnessLevel;
+                        if (interiorLimit > cap) interiorLimit = cap;
                     }
+                    if (interiorLimit == 0) interiorLimit = 1;
+
+                    params.level = filterLevel;
+                    params.interiorLimit = interiorLimit;
+                    params.hevThreshold = (filterLevel >= 40) ? 2 : (filterLevel >= 15 ? 1 : 0);
+                    params.mbEdgeLimit = (filterLevel + 2) * 2 + interiorLimit;
+                    params.subEdgeLimit = (filterLevel * 2) + interiorLimit;
+                    loopFilterEnabled |= filterLevel > 0;
                 }
             }
         }
 
-        private int[] calculateFilterParameters(MacroBlock mb) {
-            Segment seg = segment[mb.segmentId];
+        /** Loop filter level of the macroblocks of segment {@code seg}, with the B_PRED mode delta if asked. */
+        private int filterLevel(Segment seg, boolean bpred) {
             int filterLevel = frame.filterLevel;
-            if (filterLevel == 0) return new int[] {0, 0, 0};
+            if (filterLevel == 0) {
+                return 0;
+            }
 
             if (segmentsEnabled) {
                 if (seg.deltaValues) {
@@ -857,24 +1398,14 @@ final class Vp8Decoder {
 
             if (loopFilterAdjustmentsEnabled) {
                 filterLevel += refDelta[0];
-                if (mb.lumaMode == Vp8Common.B_PRED) {
+                if (bpred) {
                     filterLevel += modeDelta[0];
                 }
             }
 
             if (filterLevel < 0) filterLevel = 0;
             if (filterLevel > 63) filterLevel = 63;
-
-            int interiorLimit = filterLevel;
-            if (frame.sharpnessLevel > 0) {
-                interiorLimit >>= (frame.sharpnessLevel > 4) ? 2 : 1;
-                int cap = 9 - frame.sharpnessLevel;
-                if (interiorLimit > cap) interiorLimit = cap;
-            }
-            if (interiorLimit == 0) interiorLimit = 1;
-
-            int hevThreshold = (filterLevel >= 40) ? 2 : (filterLevel >= 15 ? 1 : 0);
-            return new int[] {filterLevel, interiorLimit, hevThreshold};
+            return filterLevel;
         }
     }
 }
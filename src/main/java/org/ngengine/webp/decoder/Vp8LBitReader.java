@@ -1,27 +1,94 @@
 package org.ngengine.webp.decoder;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /** Little-endian bit reader used by VP8L lossless decoding. */
 final class Vp8LBitReader {
-    private final byte[] data;
-    private final int end;
+    private ByteBuffer data;
+    private int end;
     private int pos;
+    /** Set once a read failed because the input ended. */
+    private boolean ranOut;
 
     private long buffer;
     /** Number of currently buffered bits in {@link #buffer}. */
     int nbits;
 
-    Vp8LBitReader(byte[] data, int off, int len) {
-        this.data = data;
+    /** Reads the bits of {@code data[off, off + len)}, using absolute indexes. */
+    Vp8LBitReader(ByteBuffer data, int off, int len) {
+        this.data = data.order() == ByteOrder.LITTLE_ENDIAN ? data : data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
         this.pos = off;
         this.end = off + len;
         this.buffer = 0;
         this.nbits = 0;
     }
 
-    /** Pulls additional bytes into the little-endian bit buffer. */
-    void fill() throws WebPDecodeException {
+    /**
+     * Makes the bytes up to {@code data[off + len]} readable while keeping the read position, after the reader was
+     * created for a prefix of them; {@code data} may be a new copy of the same input. Restore a saved
+     * {@link Position} first if a read has {@link #ranOut()}.
+     */
+    void extend(ByteBuffer data, int off, int len) {
+        if (off + len < end) {
+            throw new IllegalArgumentException("Input cannot shrink");
+        }
+        this.data = data.order() == ByteOrder.LITTLE_ENDIAN ? data : data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.end = off + len;
+    }
+
+    /**
+     * Returns {@code true} once a read failed for lack of input. On input that is still arriving this means more
+     * bytes are needed, not that the bitstream is corrupt.
+     */
+    boolean ranOut() {
+        return ranOut;
+    }
+
+    /** Copies the current read position into {@code p}. */
+    void save(Position p) {
+        p.pos = pos;
+        p.buffer = buffer;
+        p.nbits = nbits;
+        p.ranOut = ranOut;
+    }
+
+    /** Rewinds to a position saved from this reader. */
+    void restore(Position p) {
+        pos = p.pos;
+        buffer = p.buffer;
+        nbits = p.nbits;
+        ranOut = p.ranOut;
+    }
+
+    /** Saved read position of a {@link Vp8LBitReader}. */
+    static final class Position {
+        private int pos;
+        private long buffer;
+        private int nbits;
+        private boolean ranOut;
+    }
+
+    /**
+     * Pulls additional bytes into the little-endian bit buffer, topping it up to at least 57 bits while input
+     * remains.
+     *
+     * <p>Away from the end of the input this is a single 8-byte load. Bits of a partially taken byte land above
+     * {@link #nbits}; they are the stream's own next bits, so the next refill ORs the same values over them.
+     */
+    void fill() {
+        if (nbits > 56) {
+            return;
+        }
+        if (pos <= end - 8) {
+            buffer |= data.getLong(pos) << nbits;
+            int bytes = (64 - nbits) >>> 3;
+            pos += bytes;
+            nbits += bytes << 3;
+            return;
+        }
         while (nbits <= 56 && pos < end) {
-            buffer |= ((long) data[pos] & 0xFFL) << nbits;
+            buffer |= ((long) data.get(pos) & 0xFFL) << nbits;
             nbits += 8;
             pos++;
         }
@@ -40,25 +107,28 @@ final class Vp8LBitReader {
     /** Consumes {@code num} bits from the bit buffer. */
     void consume(int num) throws WebPDecodeException {
         if (nbits < num) {
+            ranOut = true;
             throw new WebPDecodeException("Corrupt bitstream");
         }
         buffer >>>= num;
         nbits -= num;
     }
 
-    /** Reads an unsigned value composed of {@code num} least-significant buffered bits. */
+    /** Reads an unsigned value composed of the next {@code num} bits, {@code 0 <= num <= 32}. */
     int readBits(int num) throws WebPDecodeException {
         if (num < 0 || num > 32) {
             throw new WebPDecodeException("Invalid bit count");
         }
         if (nbits < num) {
             fill();
+            if (nbits < num) {
+                ranOut = true;
+                throw new WebPDecodeException("Corrupt bitstream");
+            }
         }
-        if (nbits < num) {
-            throw new WebPDecodeException("Corrupt bitstream");
-        }
-        int v = (int) peek(num);
-        consume(num);
+        int v = (int) (buffer & ((1L << num) - 1));
+        buffer >>>= num;
+        nbits -= num;
         return v;
     }
 }
@@ -1,7 +1,9 @@
 package org.ngengine.webp.decoder;
 
 import java.nio.ByteBuffer;
-import java.util.function.IntFunction;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 
 /** VP8L (lossless) decoder. */
 final class Vp8LDecoder {
@@ -44,30 +46,103 @@ final class Vp8LDecoder {
     private static final int HUFFMAN_CODES_PER_META_CODE = 5;
     private static final int[] ALPHABET_SIZE = {256 + 24, 256, 256, 256, 40};
 
+    /** Receives decoded rows of packed {@code 0xAARRGGBB} pixels, top to bottom. */
+    interface RowSink {
+        /** Takes row {@code y}, {@code argb[off, off + width)}; the array is only valid during the call. */
+        void putRow(int y, int[] argb, int off, int width);
+    }
+
     /**
-     * Decode VP8L bitstream into RGBA.
+     * Decodes a VP8L bitstream and hands the image to {@code out} one row at a time. Rows are transformed and
+     * passed on as soon as entropy decoding has completed them, while the rows below are still being decoded.
      *
      * @param implicitDimensions if true, the VP8L signature/header are not present (ALPH chunk payload)
      */
-    static void decodeToRgba(
-            byte[] webp,
+    static void decode(
+            ByteBuffer webp,
             int off,
             int len,
             int width,
             int height,
             boolean implicitDimensions,
-            ByteBuffer outRgba,
-            IntFunction<ByteBuffer> rgbaAllocator
+            RowSink out
+    ) throws WebPDecodeException {
+        Vp8LBitReader br = new Vp8LBitReader(webp, off, len);
+        MainImage image = readHeaders(br, width, height, implicitDimensions, out);
+        decodeImageData(br, image.width, height, image.info, image.argb, image.rows, null);
+    }
+
+    /**
+     * Decodes a VP8L bitstream whose bytes are still arriving, handing rows to a sink as they are completed.
+     *
+     * <p>Until the transforms and Huffman codes of the main image have arrived, each call starts over at the
+     * beginning of the bitstream. From then on the decoder keeps a checkpoint at the start of the last row it handed
+     * on: when the data runs out in the middle of a row, the bit reader, color cache and pixel position are rolled
+     * back to it, and the next call continues from there.
+     */
+    static final class Incremental {
+        private final int width;
+        private final int height;
+        private final RowSink out;
+        private final Checkpoint checkpoint = new Checkpoint();
+        private Vp8LBitReader br;
+        private MainImage image;
+
+        Incremental(int width, int height, RowSink out) {
+            this.width = width;
+            this.height = height;
+            this.out = out;
+        }
+
+        /**
+         * Decodes as far as the first {@code available} bytes of the bitstream at {@code webp[off, off + len)}
+         * allow, and returns how many rows have been handed on so far. {@code webp} may be a new, larger copy of the
+         * input on each call.
+         *
+         * @throws WebPDecodeException if the bitstream is invalid, or ends early once all of it has arrived
+         */
+        int decode(ByteBuffer webp, int off, int len, int available) throws WebPDecodeException {
+            if (image == null) {
+                Vp8LBitReader reader = new Vp8LBitReader(webp, off, available);
+                try {
+                    image = readHeaders(reader, width, height, false, out);
+                } catch (WebPDecodeException e) {
+                    if (available < len && reader.ranOut()) return 0;
+                    throw e;
+                }
+                br = reader;
+                checkpoint.save(0, br, image.info.cache);
+            } else if (image.rows.completedRows() == height) {
+                return height;
+            } else {
+                br.extend(webp, off, available);
+            }
+
+            try {
+                decodeImageData(br, image.width, height, image.info, image.argb, image.rows, checkpoint);
+            } catch (WebPDecodeException e) {
+                if (available == len || !br.ranOut()) throw e;
+                checkpoint.restore(br, image.info.cache);
+            }
+            return image.rows.completedRows();
+        }
+    }
+
+    /**
+     * Reads the VP8L header, the transforms and the Huffman codes of the main image, leaving {@code br} at its first
+     * pixel.
+     */
+    private static MainImage readHeaders(
+            Vp8LBitReader br,
+            int width,
+            int height,
+            boolean implicitDimensions,
+            RowSink out
     ) throws WebPDecodeException {
         if (width <= 0 || height <= 0) {
             throw new WebPDecodeException("Invalid dimensions");
         }
-        int required = width * height * 4;
-        if (outRgba.remaining() < required) {
-            throw new WebPDecodeException("Output buffer too small");
-        }
 
-        Vp8LBitReader br = new Vp8LBitReader(webp, off, len);
 
         if (!implicitDimensions) {
             int signature = br.readBits(8);
@@ -88,6 +163,7 @@ final class Vp8LDecoder {
             }
         }
 
+        Vp8LHuffmanTree.Scratch scratch = new Vp8LHuffmanTree.Scratch();
         Transform[] transforms = new Transform[4];
         int[] order = new int[4];
         int orderLen = 0;
@@ -109,14 +185,8 @@ final class Vp8LDecoder {
                     int sizeBits = br.readBits(3) + 2;
                     int blockXsize = Vp8LTransforms.subsampleSize(transformedWidth, sizeBits);
                     int blockYsize = Vp8LTransforms.subsampleSize(height, sizeBits);
-                    int size = blockXsize * blockYsize * 4;
-                    ByteBuffer predictorData = rgbaAllocator.apply(size);
-                    if (predictorData == null || predictorData.capacity() < size) {
-                        throw new WebPDecodeException("RGBA allocator returned too-small buffer");
-                    }
-                    predictorData.clear();
-                    predictorData.limit(size);
-                    decodeImageStream(br, blockXsize, blockYsize, false, predictorData, size, rgbaAllocator);
+                    int[] predictorData = new int[blockXsize * blockYsize];
+                    decodeImageStream(br, blockXsize, blockYsize, predictorData, scratch);
                     transforms[transformType] = new PredictorTransform(sizeBits, predictorData);
                     break;
                 }
@@ -125,14 +195,8 @@ final class Vp8LDecoder {
                     int sizeBits = br.readBits(3) + 2;
                     int blockXsize = Vp8LTransforms.subsampleSize(transformedWidth, sizeBits);
                     int blockYsize = Vp8LTransforms.subsampleSize(height, sizeBits);
-                    int size = blockXsize * blockYsize * 4;
-                    ByteBuffer transformData = rgbaAllocator.apply(size);
-                    if (transformData == null || transformData.capacity() < size) {
-                        throw new WebPDecodeException("RGBA allocator returned too-small buffer");
-                    }
-                    transformData.clear();
-                    transformData.limit(size);
-                    decodeImageStream(br, blockXsize, blockYsize, false, transformData, size, rgbaAllocator);
+                    int[] transformData = new int[blockXsize * blockYsize];
+                    decodeImageStream(br, blockXsize, blockYsize, transformData, scratch);
                     transforms[transformType] = new ColorTransform(sizeBits, transformData);
                     break;
                 }
@@ -142,28 +206,14 @@ final class Vp8LDecoder {
                 case 3:
                 {
                     int tableSize = br.readBits(8) + 1;
-                    int size = tableSize * 4;
-                    ByteBuffer colorMap = rgbaAllocator.apply(size);
-                    if (colorMap == null || colorMap.capacity() < size) {
-                        throw new WebPDecodeException("RGBA allocator returned too-small buffer");
-                    }
-                    colorMap.clear();
-                    colorMap.limit(size);
-                    decodeImageStream(br, tableSize, 1, false, colorMap, size, rgbaAllocator);
-
-                    int bits;
-                    if (tableSize <= 2) {
-                        bits = 3;
-                    } else if (tableSize <= 4) {
-                        bits = 2;
-                    } else if (tableSize <= 16) {
-                        bits = 1;
-                    } else {
-                        bits = 0;
-                    }
+                    int[] colorMap = new int[tableSize];
+                    decodeImageStream(br, tableSize, 1, colorMap, scratch);
+
+                    int bits = Vp8LTransforms.colorIndexBits(tableSize);
                     transformedWidth = Vp8LTransforms.subsampleSize(transformedWidth, bits);
                     adjustColorMap(colorMap);
-                    transforms[transformType] = new ColorIndexingTransform(tableSize, colorMap);
+                    transforms[transformType] = new ColorIndexingTransform(
+                            bits, Vp8LTransforms.expansionTable(tableSize, colorMap, bits));
                     break;
                 }
                 default:
@@ -171,49 +221,35 @@ final class Vp8LDecoder {
             }
         }
 
-        int transformedSize = transformedWidth * height * 4;
-        decodeImageStream(br, transformedWidth, height, true, outRgba, transformedSize, rgbaAllocator);
-
-        int imageSize = transformedSize;
-        int curWidth = transformedWidth;
-        for (int i = orderLen - 1; i >= 0; i--) {
-            Transform t = transforms[order[i]];
-            if (t instanceof PredictorTransform) {
-                PredictorTransform pt = (PredictorTransform) t;
-                Vp8LTransforms.applyPredictorTransform(outRgba, curWidth, height, pt.sizeBits, pt.data);
-            } else if (t instanceof ColorTransform) {
-                ColorTransform ct = (ColorTransform) t;
-                Vp8LTransforms.applyColorTransform(outRgba, curWidth, height, ct.sizeBits, ct.data);
-            } else if (t instanceof SubtractGreenTransform) {
-                Vp8LTransforms.applySubtractGreenTransform(outRgba, imageSize);
-            } else if (t instanceof ColorIndexingTransform) {
-                ColorIndexingTransform cit = (ColorIndexingTransform) t;
-                curWidth = width;
-                imageSize = width * height * 4;
-                Vp8LTransforms.applyColorIndexingTransform(outRgba, curWidth, height, cit.tableSize, cit.tableData);
-            }
+        Transform[] inverse = new Transform[orderLen];
+        for (int i = 0; i < orderLen; i++) {
+            inverse[i] = transforms[order[orderLen - 1 - i]];
         }
+        Integer cacheBits = readColorCache(br);
+        ColorCache cache = cacheBits != null ? new ColorCache(cacheBits) : null;
+        HuffmanInfo info = readHuffmanCodes(br, true, transformedWidth, height, cache, scratch);
+        RowTransformer rows = new RowTransformer(inverse, width, transformedWidth, out);
+        return new MainImage(transformedWidth, info, new int[transformedWidth * height], rows);
     }
 
+    /** Decodes an entropy-coded sub-image (transform data, palette or entropy image) into {@code data}. */
     private static void decodeImageStream(
             Vp8LBitReader br,
             int width,
             int height,
-            boolean isArgbImg,
-            ByteBuffer data,
-            int dataSize,
-            IntFunction<ByteBuffer> rgbaAllocator
+            int[] data,
+            Vp8LHuffmanTree.Scratch scratch
     ) throws WebPDecodeException {
         Integer cacheBits = readColorCache(br);
         ColorCache cache = cacheBits != null ? new ColorCache(cacheBits) : null;
 
-        HuffmanInfo info = readHuffmanCodes(br, isArgbImg, width, height, cache, rgbaAllocator);
-        decodeImageData(br, width, height, info, data, dataSize);
+        HuffmanInfo info = readHuffmanCodes(br, false, width, height, cache, scratch);
+        decodeImageData(br, width, height, info, data, null, null);
     }
 
-    private static void adjustColorMap(ByteBuffer colorMap) {
-        for (int i = 4; i < colorMap.limit(); i++) {
-            colorMap.put(i, (byte) (colorMap.get(i) + colorMap.get(i - 4)));
+    private static void adjustColorMap(int[] colorMap) {
+        for (int i = 1; i < colorMap.length; i++) {
+            colorMap[i] = Vp8LTransforms.addPixels(colorMap[i], colorMap[i - 1]);
         }
     }
 
@@ -234,7 +270,7 @@ final class Vp8LDecoder {
             int xsize,
             int ysize,
             ColorCache cache,
-            IntFunction<ByteBuffer> rgbaAllocator
+            Vp8LHuffmanTree.Scratch scratch
     ) throws WebPDecodeException {
         int numHuffGroups = 1;
 
@@ -248,20 +284,11 @@ final class Vp8LDecoder {
             huffmanXsize = Vp8LTransforms.subsampleSize(xsize, huffmanBits);
             huffmanYsize = Vp8LTransforms.subsampleSize(ysize, huffmanBits);
 
-            int tmpSize = huffmanXsize * huffmanYsize * 4;
-            ByteBuffer tmp = rgbaAllocator.apply(tmpSize);
-            if (tmp == null || tmp.capacity() < tmpSize) {
-                throw new WebPDecodeException("RGBA allocator returned too-small buffer");
-            }
-            tmp.clear();
-            tmp.limit(tmpSize);
-            decodeImageStream(br, huffmanXsize, huffmanYsize, false, tmp, tmpSize, rgbaAllocator);
-
             entropyImage = new int[huffmanXsize * huffmanYsize];
+            decodeImageStream(br, huffmanXsize, huffmanYsize, entropyImage, scratch);
             for (int i = 0; i < entropyImage.length; i++) {
-                int r = tmp.get(i * 4) & 0xFF;
-                int g = tmp.get(i * 4 + 1) & 0xFF;
-                int meta = (r << 8) | g;
+                // The meta code is stored in the red and green channels.
+                int meta = (entropyImage[i] >> 8) & 0xFFFF;
                 entropyImage[i] = meta;
                 if (meta >= numHuffGroups) {
                     numHuffGroups = meta + 1;
@@ -269,22 +296,31 @@ final class Vp8LDecoder {
             }
         }
 
-        Vp8LHuffmanTree[][] groups = new Vp8LHuffmanTree[numHuffGroups][HUFFMAN_CODES_PER_META_CODE];
+        // Identical codes come back as the same tree instance, so groups made of the same five trees can share
+        // one HTreeGroup and its packed table; the trees themselves compare by identity.
+        HTreeGroup[] groups = new HTreeGroup[numHuffGroups];
+        HashMap<List<Vp8LHuffmanTree>, HTreeGroup> distinctGroups = new HashMap<>();
         for (int i = 0; i < numHuffGroups; i++) {
+            Vp8LHuffmanTree[] trees = new Vp8LHuffmanTree[HUFFMAN_CODES_PER_META_CODE];
             for (int j = 0; j < HUFFMAN_CODES_PER_META_CODE; j++) {
                 int alphabetSize = ALPHABET_SIZE[j];
                 if (j == 0 && cache != null) {
                     alphabetSize += 1 << cache.bits;
                 }
-                groups[i][j] = readHuffmanCode(br, alphabetSize);
+                trees[j] = readHuffmanCode(br, alphabetSize, scratch);
             }
+            groups[i] = distinctGroups.computeIfAbsent(Arrays.asList(trees), k -> new HTreeGroup(trees));
         }
 
         int mask = huffmanBits == 0 ? 0xFFFF : (1 << huffmanBits) - 1;
         return new HuffmanInfo(huffmanXsize, entropyImage, huffmanBits, mask, cache, groups);
     }
 
-    private static Vp8LHuffmanTree readHuffmanCode(Vp8LBitReader br, int alphabetSize) throws WebPDecodeException {
+    private static Vp8LHuffmanTree readHuffmanCode(
+            Vp8LBitReader br,
+            int alphabetSize,
+            Vp8LHuffmanTree.Scratch scratch
+    ) throws WebPDecodeException {
         boolean simple = br.readBits(1) == 1;
 
         if (simple) {
@@ -295,32 +331,34 @@ final class Vp8LDecoder {
                 throw new WebPDecodeException("Corrupt bitstream");
             }
             if (numSymbols == 1) {
-                return Vp8LHuffmanTree.buildSingleNode(zeroSymbol);
+                return scratch.sharedSimple(zeroSymbol, -1);
             }
 
             int oneSymbol = br.readBits(8);
             if (oneSymbol >= alphabetSize) {
                 throw new WebPDecodeException("Corrupt bitstream");
             }
-            return Vp8LHuffmanTree.buildTwoNode(zeroSymbol, oneSymbol);
+            return scratch.sharedSimple(zeroSymbol, oneSymbol);
         }
 
-        int[] codeLengthCodeLengths = new int[CODE_LENGTH_CODES];
+        int[] codeLengthCodeLengths = scratch.codeLengthCodeLengths;
+        Arrays.fill(codeLengthCodeLengths, 0);
         int numCodeLengths = 4 + br.readBits(4);
         for (int i = 0; i < numCodeLengths; i++) {
             codeLengthCodeLengths[CODE_LENGTH_CODE_ORDER[i]] = br.readBits(3);
         }
 
-        int[] newCodeLengths = readHuffmanCodeLengths(br, codeLengthCodeLengths, alphabetSize);
-        return Vp8LHuffmanTree.buildImplicit(newCodeLengths);
+        int[] newCodeLengths = readHuffmanCodeLengths(br, codeLengthCodeLengths, alphabetSize, scratch);
+        return scratch.shared(newCodeLengths, alphabetSize);
     }
 
     private static int[] readHuffmanCodeLengths(
             Vp8LBitReader br,
             int[] codeLengthCodeLengths,
-            int numSymbols
+            int numSymbols,
+            Vp8LHuffmanTree.Scratch scratch
     ) throws WebPDecodeException {
-        Vp8LHuffmanTree table = Vp8LHuffmanTree.buildImplicit(codeLengthCodeLengths);
+        Vp8LHuffmanTree table = scratch.shared(codeLengthCodeLengths, CODE_LENGTH_CODES);
 
         int maxSymbol;
         if (br.readBits(1) == 1) {
@@ -334,7 +372,7 @@ final class Vp8LDecoder {
             maxSymbol = numSymbols;
         }
 
-        int[] codeLengths = new int[numSymbols];
+        int[] codeLengths = scratch.codeLengths(numSymbols);
         int prevCodeLen = 8;
 
         int symbol = 0;
@@ -384,24 +422,28 @@ final class Vp8LDecoder {
         return codeLengths;
     }
 
+    /**
+     * Decodes the pixels of an entropy-coded image into {@code data}, passing completed rows to {@code rows} if not
+     * null. With a {@code checkpoint}, decoding starts at its pixel, and each time rows are passed on the checkpoint
+     * moves to the current position.
+     */
     private static void decodeImageData(
             Vp8LBitReader br,
             int width,
             int height,
             HuffmanInfo info,
-            ByteBuffer data,
-            int dataSize
+            int[] data,
+            RowTransformer rows,
+            Checkpoint checkpoint
     ) throws WebPDecodeException {
         int numValues = width * height;
-        if (dataSize < numValues * 4) {
-            throw new WebPDecodeException("Output buffer too small");
-        }
+        int index = checkpoint != null ? checkpoint.index : 0;
+        // Every row boundary is also a block boundary, so rows are handed on from the block switch below.
+        int nextRowEnd = rows != null ? (index / width + 1) * width : Integer.MAX_VALUE;
 
-        int huffIndex = info.getHuffIndex(0, 0);
-        Vp8LHuffmanTree[] tree = info.groups[huffIndex];
+        HTreeGroup group = info.groups[info.getHuffIndex(0, 0)];
 
-        int index = 0;
-        int nextBlockStart = 0;
+        int nextBlockStart = index;
 
         while (index < numValues) {
             br.fill();
@@ -409,65 +451,78 @@ final class Vp8LDecoder {
             if (index >= nextBlockStart) {
                 int x = index % width;
                 int y = index / width;
+                if (index >= nextRowEnd) {
+                    rows.flush(data, y);
+                    nextRowEnd = (y + 1) * width;
+                    if (checkpoint != null) {
+                        checkpoint.save(index, br, info.cache);
+                    }
+                }
                 nextBlockStart = Math.min((x | info.mask), width - 1) + y * width + 1;
 
-                huffIndex = info.getHuffIndex(x, y);
-                tree = info.groups[huffIndex];
-
-                if (tree[0].isSingleNode() && tree[1].isSingleNode() && tree[2].isSingleNode() && tree[3].isSingleNode()) {
-                    int code = tree[GREEN].readSymbol(br);
-                    if (code < 256) {
-                        int n = (info.bits == 0) ? numValues : (nextBlockStart - index);
-
-                        byte red = (byte) tree[RED].readSymbol(br);
-                        byte green = (byte) code;
-                        byte blue = (byte) tree[BLUE].readSymbol(br);
-                        byte alpha = (byte) tree[ALPHA].readSymbol(br);
-
-                        for (int i = 0; i < n; i++) {
-                            int p = (index + i) * 4;
-                            data.put(p, red);
-                            data.put(p + 1, green);
-                            data.put(p + 2, blue);
-                            data.put(p + 3, alpha);
-                        }
+                group = info.groups[info.getHuffIndex(x, y)];
 
-                        if (info.cache != null) {
-                            info.cache.insert(red, green, blue, alpha);
-                        }
+                if (group.isTrivialCode && group.greenSymbol < 256) {
+                    // Every pixel of the block is the same literal and takes no bits.
+                    int n = (info.bits == 0) ? numValues - index : (nextBlockStart - index);
+                    int argb = group.literalArb | (group.greenSymbol << 8);
+
+                    Arrays.fill(data, index, index + n, argb);
 
-                        index += n;
-                        continue;
+                    if (info.cache != null) {
+                        info.cache.insert(argb);
                     }
+
+                    index += n;
+                    continue;
                 }
             }
 
-            int code = tree[GREEN].readSymbol(br);
+            int code;
+            if (group.packedTable != null) {
+                int p = ((int) br.peekFull() & HTreeGroup.PACKED_MASK) << 1;
+                int bits = group.packedTable[p];
+                if (bits < HTreeGroup.NON_LITERAL) {
+                    br.consume(bits);
+                    int argb = group.packedTable[p + 1];
+                    data[index] = argb;
+                    if (info.cache != null) {
+                        info.cache.insert(argb);
+                    }
+                    index++;
+                    continue;
+                }
+                br.consume(bits - HTreeGroup.NON_LITERAL);
+                code = group.packedTable[p + 1];
+            } else {
+                code = group.green.readSymbol(br);
+            }
 
             if (code < 256) {
-                byte green = (byte) code;
-                byte red = (byte) tree[RED].readSymbol(br);
-                byte blue = (byte) tree[BLUE].readSymbol(br);
-                if (br.nbits < 15) {
-                    br.fill();
+                int argb;
+                if (group.isTrivialLiteral) {
+                    argb = group.literalArb | (code << 8);
+                } else {
+                    int red = group.red.readSymbol(br);
+                    int blue = group.blue.readSymbol(br);
+                    if (br.nbits < 15) {
+                        br.fill();
+                    }
+                    int alpha = group.alpha.readSymbol(br);
+                    argb = (alpha << 24) | (red << 16) | (code << 8) | blue;
                 }
-                byte alpha = (byte) tree[ALPHA].readSymbol(br);
 
-                int p = index * 4;
-                data.put(p, red);
-                data.put(p + 1, green);
-                data.put(p + 2, blue);
-                data.put(p + 3, alpha);
+                data[index] = argb;
 
                 if (info.cache != null) {
-                    info.cache.insert(red, green, blue, alpha);
+                    info.cache.insert(argb);
                 }
                 index++;
             } else if (code < 256 + 24) {
                 int lengthSymbol = code - 256;
                 int length = getCopyDistance(br, lengthSymbol);
 
-                int distSymbol = tree[DIST].readSymbol(br);
+                int distSymbol = group.dist.readSymbol(br);
                 int distCode = getCopyDistance(br, distSymbol);
                 int dist = planeCodeToDistance(width, distCode);
 
@@ -475,15 +530,13 @@ final class Vp8LDecoder {
                     throw new WebPDecodeException("Corrupt bitstream");
                 }
 
-                for (int i = 0; i < length * 4; i++) {
-                    int dst = index * 4 + i;
-                    data.put(dst, data.get(dst - dist * 4));
-                }
+                copyBlock(data, index, dist, length);
 
                 if (info.cache != null) {
-                    for (int i = 0; i < length; i++) {
-                        int p = (index + i) * 4;
-                        info.cache.insert(data.get(p), data.get(p + 1), data.get(p + 2), data.get(p + 3));
+                    // The copy repeats with period dist, so its last dist pixels hold the last occurrence of
+                    // every color in it, in order; inserting just those leaves the cache in the same state.
+                    for (int i = index + length - Math.min(dist, length); i < index + length; i++) {
+                        info.cache.insert(data[i]);
                     }
                 }
 
@@ -493,23 +546,47 @@ final class Vp8LDecoder {
                     throw new WebPDecodeException("Corrupt bitstream");
                 }
                 int ccIndex = code - 280;
-                info.cache.lookupInto(ccIndex, data, index * 4);
+                data[index] = info.cache.lookup(ccIndex);
                 index++;
 
                 if (index < nextBlockStart) {
-                    int[] peek = tree[GREEN].peekSymbol(br);
-                    if (peek != null) {
-                        int bits = peek[0];
-                        int sym = peek[1];
+                    int peek = group.green.peekSymbol(br);
+                    if (peek >= 0) {
+                        int sym = peek & 0xFFF;
                         if (sym >= 280) {
-                            br.consume(bits);
-                            info.cache.lookupInto(sym - 280, data, index * 4);
+                            br.consume(peek >>> 12);
+                            data[index] = info.cache.lookup(sym - 280);
                             index++;
                         }
                     }
                 }
             }
         }
+        if (rows != null) {
+            rows.flush(data, height);
+        }
+    }
+
+    /**
+     * Copies {@code length} pixels from {@code dist} pixels back to {@code data[index]}. When the ranges overlap the
+     * copy reads pixels it has just written, i.e. it repeats the last {@code dist} pixels.
+     */
+    private static void copyBlock(int[] data, int index, int dist, int length) {
+        int src = index - dist;
+        if (dist >= length) {
+            System.arraycopy(data, src, data, index, length);
+        } else if (dist == 1) {
+            Arrays.fill(data, index, index + length, data[src]);
+        } else {
+            // Copy one period, then keep doubling the periodic run already written.
+            System.arraycopy(data, src, data, index, dist);
+            int copied = dist;
+            while (copied < length) {
+                int n = Math.min(copied, length - copied);
+                System.arraycopy(data, index, data, index + copied, n);
+                copied += n;
+            }
+        }
     }
 
     private static int getCopyDistance(Vp8LBitReader br, int prefixCode) throws WebPDecodeException {
@@ -544,10 +621,10 @@ final class Vp8LDecoder {
     private static final class PredictorTransform implements Transform {
         /** Predictor block size as log2 shift. */
         final int sizeBits;
-        /** Packed per-block predictor metadata image. */
-        final ByteBuffer data;
+        /** Per-block predictor metadata image. */
+        final int[] data;
 
-        PredictorTransform(int sizeBits, ByteBuffer data) {
+        PredictorTransform(int sizeBits, int[] data) {
             this.sizeBits = sizeBits;
             this.data = data;
         }
@@ -557,10 +634,10 @@ final class Vp8LDecoder {
     private static final class ColorTransform implements Transform {
         /** Color transform block size as log2 shift. */
         final int sizeBits;
-        /** Packed per-block color transform metadata image. */
-        final ByteBuffer data;
+        /** Per-block color transform metadata image. */
+        final int[] data;
 
-        ColorTransform(int sizeBits, ByteBuffer data) {
+        ColorTransform(int sizeBits, int[] data) {
             this.sizeBits = sizeBits;
             this.data = data;
         }
@@ -569,16 +646,124 @@ final class Vp8LDecoder {
     /** Marker transform for subtract-green postprocessing. */
     private static final class SubtractGreenTransform implements Transform {}
 
-    /** Color-indexing transform lookup table metadata. */
+    /** Color-indexing transform, ready to expand packed palette indexes. */
     private static final class ColorIndexingTransform implements Transform {
-        /** Number of entries in the color table. */
-        final int tableSize;
-        /** RGBA table data (4 bytes per entry). */
-        final ByteBuffer tableData;
+        /** Log2 of the number of indexes packed into one pixel. */
+        final int bits;
+        /** Palette expansion table, see {@link Vp8LTransforms#expansionTable}. */
+        final int[] lut;
+
+        ColorIndexingTransform(int bits, int[] lut) {
+            this.bits = bits;
+            this.lut = lut;
+        }
+    }
+
+    /**
+     * Applies the inverse transforms to rows of the entropy-coded image as they are completed, and hands the results
+     * on. Each row goes through all transforms while it is still in cache, instead of one sweep over the whole image
+     * per transform.
+     *
+     * <p>The decoded rows themselves stay untouched, since backward references copy from them. Each row is copied to
+     * {@code row[width, 2 * width)} first; the predictor reads the row above as it was right after prediction, before
+     * later transforms changed it, so that copy is kept just in front.
+     */
+    private static final class RowTransformer {
+        /** Transforms in the order their inverses are applied. */
+        private final Transform[] inverse;
+        private final int width;
+        private final int transformedWidth;
+        private final RowSink out;
+        private final int[] row;
+        private final int[] packedRow;
+        private int nextRow;
+
+        RowTransformer(Transform[] inverse, int width, int transformedWidth, RowSink out) {
+            this.inverse = inverse;
+            this.width = width;
+            this.transformedWidth = transformedWidth;
+            this.out = out;
+            this.row = inverse.length > 0 ? new int[2 * width] : null;
+            this.packedRow = inverse.length > 0 ? new int[transformedWidth] : null;
+        }
+
+        /** Returns the number of rows emitted so far. */
+        int completedRows() {
+            return nextRow;
+        }
+
+        /** Transforms and emits all rows before {@code endRow} that have not been emitted yet. */
+        void flush(int[] argb, int endRow) {
+            for (int y = nextRow; y < endRow; y++) {
+                if (row == null) {
+                    out.putRow(y, argb, y * width, width);
+                    continue;
+                }
+                int curWidth = transformedWidth;
+                System.arraycopy(argb, y * curWidth, row, width, curWidth);
+                for (Transform t : inverse) {
+                    if (t instanceof PredictorTransform) {
+                        PredictorTransform pt = (PredictorTransform) t;
+                        Vp8LTransforms.applyPredictorRow(row, width, curWidth, y, pt.sizeBits, pt.data);
+                        System.arraycopy(row, width, row, width - curWidth, curWidth);
+                    } else if (t instanceof ColorTransform) {
+                        ColorTransform ct = (ColorTransform) t;
+                        Vp8LTransforms.applyColorTransformRow(row, width, curWidth, y, ct.sizeBits, ct.data);
+                    } else if (t instanceof SubtractGreenTransform) {
+                        Vp8LTransforms.applySubtractGreenRow(row, width, curWidth);
+                    } else if (t instanceof ColorIndexingTransform) {
+                        ColorIndexingTransform cit = (ColorIndexingTransform) t;
+                        Vp8LTransforms.applyColorIndexingRow(row, width, row, width, width, cit.bits, cit.lut,
+                                packedRow);
+                        curWidth = width;
+                    }
+                }
+                out.putRow(y, row, width, width);
+            }
+            nextRow = Math.max(nextRow, endRow);
+        }
+    }
 
-        ColorIndexingTransform(int tableSize, ByteBuffer tableData) {
-            this.tableSize = tableSize;
-            this.tableData = tableData;
+    /** The main image, positioned at its first pixel, and where its rows go. */
+    private static final class MainImage {
+        /** Width of the entropy-coded image, less than the image width when palette indexes are packed. */
+        final int width;
+        final HuffmanInfo info;
+        /** Entropy-decoded pixels, {@code width} per row. */
+        final int[] argb;
+        final RowTransformer rows;
+
+        MainImage(int width, HuffmanInfo info, int[] argb, RowTransformer rows) {
+            this.width = width;
+            this.info = info;
+            this.argb = argb;
+            this.rows = rows;
+        }
+    }
+
+    /** Where an incremental decode of the main image resumes: the next pixel, the bit reader and the color cache. */
+    private static final class Checkpoint {
+        int index;
+        final Vp8LBitReader.Position reader = new Vp8LBitReader.Position();
+        /** Copy of the color cache table; empty without a cache. */
+        int[] cache = new int[0];
+
+        void save(int index, Vp8LBitReader br, ColorCache colorCache) {
+            this.index = index;
+            br.save(reader);
+            if (colorCache != null) {
+                if (cache.length != colorCache.table.length) {
+                    cache = new int[colorCache.table.length];
+                }
+                System.arraycopy(colorCache.table, 0, cache, 0, cache.length);
+            }
+        }
+
+        void restore(Vp8LBitReader br, ColorCache colorCache) {
+            br.restore(reader);
+            if (colorCache != null) {
+                System.arraycopy(cache, 0, colorCache.table, 0, cache.length);
+            }
         }
     }
 
@@ -594,9 +779,9 @@ final class Vp8LDecoder {
         /** Optional color cache; null when disabled. */
         final ColorCache cache;
         /** Huffman tree groups for literal/length/distance channels. */
-        final Vp8LHuffmanTree[][] groups;
+        final HTreeGroup[] groups;
 
-        HuffmanInfo(int xsize, int[] image, int bits, int mask, ColorCache cache, Vp8LHuffmanTree[][] groups) {
+        HuffmanInfo(int xsize, int[] image, int bits, int mask, ColorCache cache, HTreeGroup[] groups) {
             this.xsize = xsize;
             this.image = image;
             this.bits = bits;
@@ -615,36 +800,102 @@ final class Vp8LDecoder {
         }
     }
 
+    /**
+     * The five Huffman codes of one meta code, plus shortcuts for decoding literals: which trees are trivial (a
+     * single symbol that takes no bits), and a packed table that decodes a whole literal pixel in one lookup when
+     * the green, red, blue and alpha codewords together are short.
+     */
+    private static final class HTreeGroup {
+        /** Bits indexing {@link #packedTable}; a group gets the table when all four literal codes fit in them. */
+        static final int PACKED_BITS = 8;
+        static final int PACKED_MASK = (1 << PACKED_BITS) - 1;
+        /** Added to the bit count of packed entries that hold a green symbol of 256 or more, not a pixel. */
+        static final int NON_LITERAL = 0x100;
+
+        final Vp8LHuffmanTree green;
+        final Vp8LHuffmanTree red;
+        final Vp8LHuffmanTree blue;
+        final Vp8LHuffmanTree alpha;
+        final Vp8LHuffmanTree dist;
+
+        /** Red, blue and alpha each have a single symbol, so a literal is {@code literalArb | green << 8}. */
+        final boolean isTrivialLiteral;
+        /** Green is a single symbol too, so every pixel is decoded without reading bits. */
+        final boolean isTrivialCode;
+        /** Red, blue and alpha of a trivial literal, in place; 0 otherwise. */
+        final int literalArb;
+        /** The green symbol when {@link #isTrivialCode} is set. */
+        final int greenSymbol;
+        /**
+         * Pairs of {@code (bits, value)} indexed by the next {@link #PACKED_BITS} bits: either a whole literal pixel
+         * and the bits of its four codewords, or a green symbol with its length plus {@link #NON_LITERAL}.
+         * {@code null} if the codes are too long or the group is trivial.
+         */
+        final int[] packedTable;
+
+        HTreeGroup(Vp8LHuffmanTree[] trees) {
+            green = trees[GREEN];
+            red = trees[RED];
+            blue = trees[BLUE];
+            alpha = trees[ALPHA];
+            dist = trees[DIST];
+
+            isTrivialLiteral = red.isSingleNode() && blue.isSingleNode() && alpha.isSingleNode();
+            isTrivialCode = isTrivialLiteral && green.isSingleNode();
+            literalArb = isTrivialLiteral
+                    ? (alpha.lookup(0) << 24) | (red.lookup(0) << 16) | blue.lookup(0)
+                    : 0;
+            greenSymbol = isTrivialCode ? green.lookup(0) : 0;
+
+            int maxBits = green.maxCodeLength() + red.maxCodeLength() + blue.maxCodeLength()
+                    + alpha.maxCodeLength();
+            packedTable = !isTrivialCode && maxBits <= PACKED_BITS ? buildPackedTable() : null;
+        }
+
+        private int[] buildPackedTable() {
+            int[] table = new int[2 << PACKED_BITS];
+            for (int code = 0; code <= PACKED_MASK; code++) {
+                int g = green.lookup(code);
+                int gBits = g >>> 12;
+                int symbol = g & 0xFFF;
+                if (symbol >= 256) {
+                    table[code << 1] = gBits + NON_LITERAL;
+                    table[(code << 1) + 1] = symbol;
+                    continue;
+                }
+                int bits = code >>> gBits;
+                int r = red.lookup(bits);
+                bits >>>= r >>> 12;
+                int b = blue.lookup(bits);
+                bits >>>= b >>> 12;
+                int a = alpha.lookup(bits);
+                table[code << 1] = gBits + (r >>> 12) + (b >>> 12) + (a >>> 12);
+                table[(code << 1) + 1] = ((a & 0xFF) << 24) | ((r & 0xFF) << 16) | (symbol << 8) | (b & 0xFF);
+            }
+            return table;
+        }
+    }
+
     /** VP8L color cache keyed by hashed ARGB values. */
     private static final class ColorCache {
         /** Number of hash bits. */
         final int bits;
-        /** Packed RGBA cache table. */
-        final byte[] table;
+        /** ARGB cache table. */
+        final int[] table;
 
         ColorCache(int bits) {
             this.bits = bits;
-            this.table = new byte[(1 << bits) * 4];
+            this.table = new int[1 << bits];
         }
 
         /** Inserts an ARGB pixel into the cache at its hashed slot. */
-        void insert(byte r, byte g, byte b, byte a) {
-            int color = ((r & 0xFF) << 16) | ((g & 0xFF) << 8) | (b & 0xFF) | ((a & 0xFF) << 24);
-            int index = (0x1e35a7bd * color) >>> (32 - bits);
-            int off = index * 4;
-            table[off] = r;
-            table[off + 1] = g;
-            table[off + 2] = b;
-            table[off + 3] = a;
-        }
-
-        /** Writes a cached pixel into {@code out} at byte offset {@code outOff}. */
-        void lookupInto(int index, ByteBuffer out, int outOff) {
-            int off = index * 4;
-            out.put(outOff, table[off]);
-            out.put(outOff + 1, table[off + 1]);
-            out.put(outOff + 2, table[off + 2]);
-            out.put(outOff + 3, table[off + 3]);
+        void insert(int argb) {
+            table[(0x1e35a7bd * argb) >>> (32 - bits)] = argb;
+        }
+
+        /** Returns the cached ARGB pixel at {@code index}. */
+        int lookup(int index) {
+            return table[index];
         }
     }
 }
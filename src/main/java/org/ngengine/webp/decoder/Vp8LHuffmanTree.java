@@ -1,11 +1,13 @@
 package org.ngengine.webp.decoder;
 
 import java.util.Arrays;
+import java.util.HashMap;
 
 /** Huffman tree used in VP8L lossless decoding. */
 final class Vp8LHuffmanTree {
     private static final int MAX_ALLOWED_CODE_LENGTH = 15;
     private static final int MAX_TABLE_BITS = 10;
+    private static final int[] NO_SECONDARY = new int[0];
 
     private final boolean single;
     private final int singleSymbol;
@@ -13,6 +15,8 @@ final class Vp8LHuffmanTree {
     private final int tableMask;
     private final int[] primaryTable;
     private final int[] secondaryTable;
+    /** Longest codeword in bits; 0 for a single-node tree. */
+    private final int maxCodeLength;
 
     private Vp8LHuffmanTree(int symbol) {
         this.single = true;
@@ -20,14 +24,16 @@ final class Vp8LHuffmanTree {
         this.tableMask = 0;
         this.primaryTable = null;
         this.secondaryTable = null;
+        this.maxCodeLength = 0;
     }
 
-    private Vp8LHuffmanTree(int tableMask, int[] primaryTable, int[] secondaryTable) {
+    private Vp8LHuffmanTree(int tableMask, int[] primaryTable, int[] secondaryTable, int maxCodeLength) {
         this.single = false;
         this.singleSymbol = 0;
         this.tableMask = tableMask;
         this.primaryTable = primaryTable;
         this.secondaryTable = secondaryTable;
+        this.maxCodeLength = maxCodeLength;
     }
 
     /** Creates a degenerate tree that always returns {@code symbol}. */
@@ -37,7 +43,7 @@ final class Vp8LHuffmanTree {
 
     /** Creates a two-symbol tree with one-bit codewords for zero/one branches. */
     static Vp8LHuffmanTree buildTwoNode(int zero, int one) {
-        return new Vp8LHuffmanTree(0x1, new int[] { (1 << 12) | zero, (1 << 12) | one }, new int[0]);
+        return new Vp8LHuffmanTree(0x1, new int[] { (1 << 12) | zero, (1 << 12) | one }, NO_SECONDARY, 1);
     }
 
     /** Returns whether this instance is a degenerate single-symbol Huffman tree. */
@@ -45,23 +51,50 @@ final class Vp8LHuffmanTree {
         return single;
     }
 
+    /** Returns the length in bits of the longest codeword; 0 for a single-node tree. */
+    int maxCodeLength() {
+        return maxCodeLength;
+    }
+
+    /**
+     * Returns the symbol whose codeword is a prefix of the low bits of {@code bits}, packed as
+     * {@code (length << 12) | symbol}. Only valid when {@link #maxCodeLength()} is at most 10.
+     */
+    int lookup(int bits) {
+        if (single) {
+            return singleSymbol;
+        }
+        return primaryTable[bits & tableMask];
+    }
+
     /** Builds canonical Huffman decode tables from implicit code lengths. */
     static Vp8LHuffmanTree buildImplicit(int[] codeLengths) throws WebPDecodeException {
-        int[] histogram = new int[MAX_ALLOWED_CODE_LENGTH + 1];
-        int numSymbols = 0;
-        for (int len : codeLengths) {
+        return buildImplicit(codeLengths, codeLengths.length, new Scratch());
+    }
+
+    /**
+     * Builds canonical Huffman decode tables from the first {@code numSymbols} entries of {@code codeLengths}. All
+     * working arrays come from {@code scratch}; only the tables kept by the tree are allocated.
+     */
+    static Vp8LHuffmanTree buildImplicit(int[] codeLengths, int numSymbols, Scratch scratch)
+            throws WebPDecodeException {
+        int[] histogram = scratch.histogram;
+        Arrays.fill(histogram, 0);
+        int numCodes = 0;
+        for (int i = 0; i < numSymbols; i++) {
+            int len = codeLengths[i];
             if (len < 0 || len > MAX_ALLOWED_CODE_LENGTH) {
                 throw new WebPDecodeException("Invalid Huffman code length");
             }
             histogram[len]++;
-            if (len != 0) numSymbols++;
+            if (len != 0) numCodes++;
         }
 
-        if (numSymbols == 0) {
+        if (numCodes == 0) {
             throw new WebPDecodeException("Invalid Huffman code");
-        } else if (numSymbols == 1) {
+        } else if (numCodes == 1) {
             int sym = -1;
-            for (int i = 0; i < codeLengths.length; i++) {
+            for (int i = 0; i < numSymbols; i++) {
                 if (codeLengths[i] != 0) {
                     sym = i;
                     break;
@@ -75,11 +108,13 @@ final class Vp8LHuffmanTree {
             maxLength--;
         }
 
-        int[] offsets = new int[16];
+        // Start of each code length's run in sortedSymbols; advanced as the symbols are placed.
+        int[] nextIndex = scratch.offsets;
         int codespaceUsed = 0;
-        offsets[1] = histogram[0];
+        nextIndex[0] = 0;
+        nextIndex[1] = histogram[0];
         for (int i = 1; i < maxLength; i++) {
-            offsets[i + 1] = offsets[i] + histogram[i];
+            nextIndex[i + 1] = nextIndex[i] + histogram[i];
             codespaceUsed = (codespaceUsed << 1) + histogram[i];
         }
         codespaceUsed = (codespaceUsed << 1) + histogram[maxLength];
@@ -92,9 +127,8 @@ final class Vp8LHuffmanTree {
         int tableMask = tableSize - 1;
         int[] primary = new int[tableSize];
 
-        int[] nextIndex = Arrays.copyOf(offsets, offsets.length);
-        int[] sortedSymbols = new int[codeLengths.length];
-        for (int symbol = 0; symbol < codeLengths.length; symbol++) {
+        int[] sortedSymbols = scratch.sortedSymbols(numSymbols);
+        for (int symbol = 0; symbol < numSymbols; symbol++) {
             int len = codeLengths[symbol];
             sortedSymbols[nextIndex[len]] = symbol;
             nextIndex[len]++;
@@ -118,8 +152,11 @@ final class Vp8LHuffmanTree {
             }
         }
 
-        int[] secondary = new int[0];
+        int[] secondary = NO_SECONDARY;
         if (maxLength > primaryTableBits) {
+            // Subtables are laid out in scratch space and copied out once their total size is known.
+            int[] buf = scratch.secondary;
+            int used = 0;
             int subtableStart = 0;
             int subtablePrefix = ~0;
             for (int length = primaryTableBits + 1; length <= maxLength; length++) {
@@ -127,30 +164,34 @@ final class Vp8LHuffmanTree {
                 for (int j = 0; j < histogram[length]; j++) {
                     if ( (codeword & primaryTableMask) != subtablePrefix) {
                         subtablePrefix = codeword & primaryTableMask;
-                        subtableStart = secondary.length;
+                        subtableStart = used;
                         primary[subtablePrefix] = (length << 12) | subtableStart;
-                        secondary = Arrays.copyOf(secondary, subtableStart + subtableSize);
+                        used = subtableStart + subtableSize;
+                        buf = scratch.secondary(used);
+                        Arrays.fill(buf, subtableStart, used, 0);
                     }
 
                     int symbol = sortedSymbols[idx++];
-                    secondary[subtableStart + (codeword >> primaryTableBits)] = (symbol << 4) | length;
+                    buf[subtableStart + (codeword >> primaryTableBits)] = (symbol << 4) | length;
                     codeword = nextCodeword(codeword, 1 << length);
                 }
 
                 if (length < maxLength && (codeword & primaryTableMask) == subtablePrefix) {
-                    int oldLen = secondary.length;
-                    secondary = Arrays.copyOf(secondary, oldLen + (oldLen - subtableStart));
-                    System.arraycopy(secondary, subtableStart, secondary, oldLen, oldLen - subtableStart);
+                    int oldLen = used;
+                    used = oldLen + (oldLen - subtableStart);
+                    buf = scratch.secondary(used);
+                    System.arraycopy(buf, subtableStart, buf, oldLen, oldLen - subtableStart);
                     primary[subtablePrefix] = ((length + 1) << 12) | subtableStart;
                 }
             }
-        }
 
-        if (secondary.length > 4096) {
-            throw new WebPDecodeException("Invalid Huffman code");
+            if (used > 4096) {
+                throw new WebPDecodeException("Invalid Huffman code");
+            }
+            secondary = Arrays.copyOf(buf, used);
         }
 
-        return new Vp8LHuffmanTree(tableMask, primary, secondary);
+        return new Vp8LHuffmanTree(tableMask, primary, secondary, maxLength);
     }
 
     private static int nextCodeword(int codeword, int tableSize) {
@@ -184,17 +225,108 @@ final class Vp8LHuffmanTree {
         return secondaryEntry >>> 4;
     }
 
-    /** Returns {bits, symbol} if readable with primary table only, else null. */
-    int[] peekSymbol(Vp8LBitReader br) {
+    /**
+     * Returns the next symbol packed as {@code (length << 12) | symbol} without consuming it, or -1 if its codeword
+     * is longer than the primary table resolves.
+     */
+    int peekSymbol(Vp8LBitReader br) {
         if (single) {
-            return new int[] {0, singleSymbol};
+            return singleSymbol;
         }
-        int v = (int) br.peekFull() & 0xFFFF;
-        int entry = primaryTable[v & tableMask];
-        int len = entry >>> 12;
-        if (len <= MAX_TABLE_BITS) {
-            return new int[] {len, entry & 0xFFF};
+        int entry = primaryTable[(int) br.peekFull() & tableMask];
+        return (entry >>> 12) <= MAX_TABLE_BITS ? entry : -1;
+    }
+
+    /**
+     * Working arrays for {@link #buildImplicit(int[], int, Scratch)}, reused across the trees of one image, and the
+     * trees built so far, keyed by their code so identical codes share one instance.
+     */
+    static final class Scratch {
+        private final HashMap<CodeKey, Vp8LHuffmanTree> trees = new HashMap<>();
+
+        final int[] histogram = new int[MAX_ALLOWED_CODE_LENGTH + 1];
+        final int[] offsets = new int[MAX_ALLOWED_CODE_LENGTH + 1];
+        private int[] sortedSymbols = new int[0];
+        private int[] secondary = new int[0];
+        private int[] codeLengths = new int[0];
+        /** Code lengths of the code-length code, in symbol order. */
+        final int[] codeLengthCodeLengths = new int[19];
+
+        int[] sortedSymbols(int size) {
+            if (sortedSymbols.length < size) {
+                sortedSymbols = new int[size];
+            }
+            return sortedSymbols;
+        }
+
+        /** Returns the secondary-table buffer grown to at least {@code size}, keeping its contents. */
+        int[] secondary(int size) {
+            if (secondary.length < size) {
+                secondary = Arrays.copyOf(secondary, Math.max(size, secondary.length * 2));
+            }
+            return secondary;
+        }
+
+        /**
+         * Returns the tree for the first {@code numSymbols} entries of {@code codeLengths}, building it only if no
+         * earlier code of this image had the same lengths.
+         */
+        Vp8LHuffmanTree shared(int[] codeLengths, int numSymbols) throws WebPDecodeException {
+            Vp8LHuffmanTree tree = trees.get(new CodeKey(codeLengths, numSymbols));
+            if (tree == null) {
+                tree = buildImplicit(codeLengths, numSymbols, this);
+                trees.put(new CodeKey(Arrays.copyOf(codeLengths, numSymbols), numSymbols), tree);
+            }
+            return tree;
+        }
+
+        /** Returns the tree of a simple code with one symbol ({@code one < 0}) or two, sharing identical ones. */
+        Vp8LHuffmanTree sharedSimple(int zero, int one) {
+            // Code lengths are never negative, so these keys cannot match a length vector.
+            int[] key = one < 0 ? new int[] {-1, zero} : new int[] {-2, zero, one};
+            return trees.computeIfAbsent(new CodeKey(key, key.length),
+                    k -> one < 0 ? buildSingleNode(zero) : buildTwoNode(zero, one));
+        }
+
+        /** Returns a code-length array whose first {@code size} entries are zero. */
+        int[] codeLengths(int size) {
+            if (codeLengths.length < size) {
+                codeLengths = new int[size];
+            } else {
+                Arrays.fill(codeLengths, 0, size, 0);
+            }
+            return codeLengths;
+        }
+    }
+
+    /** Hash key over the first {@code length} values of an array. */
+    private static final class CodeKey {
+        private final int[] values;
+        private final int length;
+        private final int hash;
+
+        CodeKey(int[] values, int length) {
+            this.values = values;
+            this.length = length;
+            int h = length;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + values[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CodeKey)) {
+                return false;
+            }
+            CodeKey other = (CodeKey) o;
+            return hash == other.hash && Arrays.equals(values, 0, length, other.values, 0, other.length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
-        return null;
     }
 }
@@ -1,192 +1,166 @@
 package org.ngengine.webp.decoder;
 
-/** VP8 loop filter (ported from Rust src/loop_filter.rs). */
+/**
+ * VP8 loop filter (ported from Rust src/loop_filter.rs).
+ *
+ * <p>The {@code *Edge*} kernels filter a whole edge per call, {@code point} being the first pixel on its right or
+ * lower side. {@code Horizontal} kernels filter across a vertical edge and {@code Vertical} ones across a horizontal
+ * edge. {@code Vp8LoopFilterTest} keeps the per-pixel functions of the straight port as their reference.
+ */
 final class Vp8LoopFilter {
     private Vp8LoopFilter() {}
 
-    private static int c(int val) {
-        if (val < -128) return -128;
-        if (val > 127) return 127;
-        return val;
-    }
-
-    private static int u2s(byte val) {
-        return (val & 0xFF) - 128;
+    /** Simple filter across {@code count} rows of a vertical edge. */
+    static void simpleEdgeHorizontal(int edgeLimit, byte[] px, int point, int stride, int count) {
+        simpleEdge(edgeLimit, px, point, 1, stride, count);
     }
 
-    private static byte s2u(int val) {
-        return (byte) (c(val) + 128);
-    }
-
-    private static int diff(byte[] p, int off, int i, int j) {
-        int x = p[off + i] & 0xFF;
-        int y = p[off + j] & 0xFF;
-        return Math.abs(x - y);
-    }
-
-    private static int commonAdjustVertical(boolean useOuterTaps, byte[] pixels, int point, int stride) {
-        int p1 = u2s(pixels[point - 2 * stride]);
-        int p0 = u2s(pixels[point - stride]);
-        int q0 = u2s(pixels[point]);
-        int q1 = u2s(pixels[point + stride]);
-
-        int outer = useOuterTaps ? c(p1 - q1) : 0;
-        int a = c(outer + 3 * (q0 - p0));
-
-        int b = c(a + 3) >> 3;
-        a = c(a + 4) >> 3;
-
-        pixels[point] = s2u(q0 - a);
-        pixels[point - stride] = s2u(p0 + b);
-
-        return a;
-    }
-
-    private static int commonAdjustHorizontal(boolean useOuterTaps, byte[] pixels, int off) {
-        int p1 = u2s(pixels[off + 2]);
-        int p0 = u2s(pixels[off + 3]);
-        int q0 = u2s(pixels[off + 4]);
-        int q1 = u2s(pixels[off + 5]);
-
-        int outer = useOuterTaps ? c(p1 - q1) : 0;
-        int a = c(outer + 3 * (q0 - p0));
-
-        int b = c(a + 3) >> 3;
-        a = c(a + 4) >> 3;
-
-        pixels[off + 4] = s2u(q0 - a);
-        pixels[off + 3] = s2u(p0 + b);
-        return a;
+    /** Simple filter across {@code count} columns of a horizontal edge. */
+    static void simpleEdgeVertical(int edgeLimit, byte[] px, int point, int stride, int count) {
+        simpleEdge(edgeLimit, px, point, stride, 1, count);
     }
 
-    private static boolean simpleThresholdVertical(int filterLimit, byte[] pixels, int point, int stride) {
-        return Math.abs((pixels[point - stride] & 0xFF) - (pixels[point] & 0xFF)) * 2
-                + Math.abs((pixels[point - 2 * stride] & 0xFF) - (pixels[point + stride] & 0xFF)) / 2
-                <= filterLimit;
+    /** Normal filter across {@code count} rows of a vertical macroblock edge. */
+    static void macroblockEdgeHorizontal(int hevThreshold, int interiorLimit, int edgeLimit, byte[] px, int point,
+                                         int stride, int count) {
+        normalEdge(true, hevThreshold, interiorLimit, edgeLimit, px, point, 1, stride, count);
     }
 
-    private static boolean simpleThresholdHorizontal(int filterLimit, byte[] pixels, int off) {
-        return diff(pixels, off, 3, 4) * 2 + diff(pixels, off, 2, 5) / 2 <= filterLimit;
+    /** Normal filter across {@code count} columns of a horizontal macroblock edge. */
+    static void macroblockEdgeVertical(int hevThreshold, int interiorLimit, int edgeLimit, byte[] px, int point,
+                                       int stride, int count) {
+        normalEdge(true, hevThreshold, interiorLimit, edgeLimit, px, point, stride, 1, count);
     }
 
-    private static boolean shouldFilterVertical(int interiorLimit, int edgeLimit, byte[] pixels, int point, int stride) {
-        return simpleThresholdVertical(edgeLimit, pixels, point, stride)
-                && Math.abs((pixels[point - 4 * stride] & 0xFF) - (pixels[point - 3 * stride] & 0xFF)) <= interiorLimit
-                && Math.abs((pixels[point - 3 * stride] & 0xFF) - (pixels[point - 2 * stride] & 0xFF)) <= interiorLimit
-                && Math.abs((pixels[point - 2 * stride] & 0xFF) - (pixels[point - stride] & 0xFF)) <= interiorLimit
-                && Math.abs((pixels[point + 3 * stride] & 0xFF) - (pixels[point + 2 * stride] & 0xFF)) <= interiorLimit
-                && Math.abs((pixels[point + 2 * stride] & 0xFF) - (pixels[point + stride] & 0xFF)) <= interiorLimit
-                && Math.abs((pixels[point + stride] & 0xFF) - (pixels[point] & 0xFF)) <= interiorLimit;
+    /** {@link #macroblockEdgeHorizontal} over the same 8 rows of both chroma planes. */
+    static void macroblockEdgeUvHorizontal(int hevThreshold, int interiorLimit, int edgeLimit, byte[] u, byte[] v,
+                                           int point, int stride) {
+        normalEdge(true, hevThreshold, interiorLimit, edgeLimit, u, point, 1, stride, 8);
+        normalEdge(true, hevThreshold, interiorLimit, edgeLimit, v, point, 1, stride, 8);
     }
 
-    private static boolean shouldFilterHorizontal(int interiorLimit, int edgeLimit, byte[] pixels, int off) {
-        return simpleThresholdHorizontal(edgeLimit, pixels, off)
-                && diff(pixels, off, 0, 1) <= interiorLimit
-                && diff(pixels, off, 1, 2) <= interiorLimit
-                && diff(pixels, off, 2, 3) <= interiorLimit
-                && diff(pixels, off, 7, 6) <= interiorLimit
-                && diff(pixels, off, 6, 5) <= interiorLimit
-                && diff(pixels, off, 5, 4) <= interiorLimit;
+    /** {@link #macroblockEdgeVertical} over the same 8 columns of both chroma planes. */
+    static void macroblockEdgeUvVertical(int hevThreshold, int interiorLimit, int edgeLimit, byte[] u, byte[] v,
+                                         int point, int stride) {
+        normalEdge(true, hevThreshold, interiorLimit, edgeLimit, u, point, stride, 1, 8);
+        normalEdge(true, hevThreshold, interiorLimit, edgeLimit, v, point, stride, 1, 8);
     }
 
-    private static boolean highEdgeVarianceVertical(int threshold, byte[] pixels, int point, int stride) {
-        return Math.abs((pixels[point - 2 * stride] & 0xFF) - (pixels[point - stride] & 0xFF)) > threshold
-                || Math.abs((pixels[point + stride] & 0xFF) - (pixels[point] & 0xFF)) > threshold;
+    /** Normal filter across {@code count} rows of a vertical edge between subblocks. */
+    static void subblockEdgeHorizontal(int hevThreshold, int interiorLimit, int edgeLimit, byte[] px, int point,
+                                       int stride, int count) {
+        normalEdge(false, hevThreshold, interiorLimit, edgeLimit, px, point, 1, stride, count);
     }
 
-    private static boolean highEdgeVarianceHorizontal(int threshold, byte[] pixels, int off) {
-        return diff(pixels, off, 2, 3) > threshold || diff(pixels, off, 5, 4) > threshold;
+    /** Normal filter across {@code count} columns of a horizontal edge between subblocks. */
+    static void subblockEdgeVertical(int hevThreshold, int interiorLimit, int edgeLimit, byte[] px, int point,
+                                     int stride, int count) {
+        normalEdge(false, hevThreshold, interiorLimit, edgeLimit, px, point, stride, 1, count);
     }
 
-    static void simpleSegmentVertical(int edgeLimit, byte[] pixels, int point, int stride) {
-        if (simpleThresholdVertical(edgeLimit, pixels, point, stride)) {
-            commonAdjustVertical(true, pixels, point, stride);
-        }
+    /** {@link #subblockEdgeHorizontal} over the same 8 rows of both chroma planes. */
+    static void subblockEdgeUvHorizontal(int hevThreshold, int interiorLimit, int edgeLimit, byte[] u, byte[] v,
+                                         int point, int stride) {
+        normalEdge(false, hevThreshold, interiorLimit, edgeLimit, u, point, 1, stride, 8);
+        normalEdge(false, hevThreshold, interiorLimit, edgeLimit, v, point, 1, stride, 8);
     }
 
-    static void simpleSegmentHorizontal(int edgeLimit, byte[] pixels, int off) {
-        if (simpleThresholdHorizontal(edgeLimit, pixels, off)) {
-            commonAdjustHorizontal(true, pixels, off);
-        }
+    /** {@link #subblockEdgeVertical} over the same 8 columns of both chroma planes. */
+    static void subblockEdgeUvVertical(int hevThreshold, int interiorLimit, int edgeLimit, byte[] u, byte[] v,
+                                       int point, int stride) {
+        normalEdge(false, hevThreshold, interiorLimit, edgeLimit, u, point, stride, 1, 8);
+        normalEdge(false, hevThreshold, interiorLimit, edgeLimit, v, point, stride, 1, 8);
     }
 
-    static void subblockFilterVertical(int hevThreshold, int interiorLimit, int edgeLimit, byte[] pixels, int point, int stride) {
-        if (shouldFilterVertical(interiorLimit, edgeLimit, pixels, point, stride)) {
-            boolean hv = highEdgeVarianceVertical(hevThreshold, pixels, point, stride);
-            int a = (commonAdjustVertical(hv, pixels, point, stride) + 1) >> 1;
-            if (!hv) {
-                pixels[point + stride] = s2u(u2s(pixels[point + stride]) - a);
-                pixels[point - 2 * stride] = s2u(u2s(pixels[point - 2 * stride]) + a);
+    /**
+     * {@code step} crosses the edge and {@code next} moves along it. The edge threshold
+     * {@code 2 * |p0 - q0| + |p1 - q1| / 2 <= edgeLimit} is tested as {@code 4 * |p0 - q0| + |p1 - q1| <= thresh2}
+     * with {@code thresh2 = 2 * edgeLimit + 1}, which is equivalent and needs no division.
+     */
+    private static void simpleEdge(int edgeLimit, byte[] px, int point, int step, int next, int count) {
+        int thresh2 = 2 * edgeLimit + 1;
+        for (int i = 0; i < count; i++, point += next) {
+            int p1 = px[point - 2 * step] & 0xFF;
+            int p0 = px[point - step] & 0xFF;
+            int q0 = px[point] & 0xFF;
+            int q1 = px[point + step] & 0xFF;
+            if (4 * Math.abs(p0 - q0) + Math.abs(p1 - q1) <= thresh2) {
+                adjust(c(p1 - q1) + 3 * (q0 - p0), px, point, step, p0, q0);
             }
         }
     }
 
-    static void subblockFilterHorizontal(int hevThreshold, int interiorLimit, int edgeLimit, byte[] pixels, int off) {
-        if (shouldFilterHorizontal(interiorLimit, edgeLimit, pixels, off)) {
-            boolean hv = highEdgeVarianceHorizontal(hevThreshold, pixels, off);
-            int a = (commonAdjustHorizontal(hv, pixels, off) + 1) >> 1;
-            if (!hv) {
-                pixels[off + 5] = s2u(u2s(pixels[off + 5]) - a);
-                pixels[off + 2] = s2u(u2s(pixels[off + 2]) + a);
+    /** Normal filter with the taps {@code step} apart; see {@link #simpleEdge}. */
+    private static void normalEdge(boolean macroblock, int hevThreshold, int interiorLimit, int edgeLimit, byte[] px,
+                                   int point, int step, int next, int count) {
+        int thresh2 = 2 * edgeLimit + 1;
+        for (int i = 0; i < count; i++, point += next) {
+            int p3 = px[point - 4 * step] & 0xFF;
+            int p2 = px[point - 3 * step] & 0xFF;
+            int p1 = px[point - 2 * step] & 0xFF;
+            int p0 = px[point - step] & 0xFF;
+            int q0 = px[point] & 0xFF;
+            int q1 = px[point + step] & 0xFF;
+            int q2 = px[point + 2 * step] & 0xFF;
+            int q3 = px[point + 3 * step] & 0xFF;
+            if (!needsFilter(thresh2, interiorLimit, p3, p2, p1, p0, q0, q1, q2, q3)) {
+                continue;
             }
-        }
-    }
-
-    static void macroblockFilterVertical(int hevThreshold, int interiorLimit, int edgeLimit, byte[] pixels, int point, int stride) {
-        if (shouldFilterVertical(interiorLimit, edgeLimit, pixels, point, stride)) {
-            if (!highEdgeVarianceVertical(hevThreshold, pixels, point, stride)) {
-                int p2 = u2s(pixels[point - 3 * stride]);
-                int p1 = u2s(pixels[point - 2 * stride]);
-                int p0 = u2s(pixels[point - stride]);
-                int q0 = u2s(pixels[point]);
-                int q1 = u2s(pixels[point + stride]);
-                int q2 = u2s(pixels[point + 2 * stride]);
-
-                int w = c(c(p1 - q1) + 3 * (q0 - p0));
-
-                int a = c((27 * w + 63) >> 7);
-                pixels[point] = s2u(q0 - a);
-                pixels[point - stride] = s2u(p0 + a);
-
-                a = c((18 * w + 63) >> 7);
-                pixels[point + stride] = s2u(q1 - a);
-                pixels[point - 2 * stride] = s2u(p1 + a);
-
-                a = c((9 * w + 63) >> 7);
-                pixels[point + 2 * stride] = s2u(q2 - a);
-                pixels[point - 3 * stride] = s2u(p2 + a);
+            if (Math.abs(p1 - p0) > hevThreshold || Math.abs(q1 - q0) > hevThreshold) {
+                adjust(c(p1 - q1) + 3 * (q0 - p0), px, point, step, p0, q0);
+            } else if (macroblock) {
+                adjustSixTaps(c(c(p1 - q1) + 3 * (q0 - p0)), px, point, step, p2, p1, p0, q0, q1, q2);
             } else {
-                commonAdjustVertical(true, pixels, point, stride);
+                int a = (adjust(3 * (q0 - p0), px, point, step, p0, q0) + 1) >> 1;
+                px[point + step] = clip255(q1 - a);
+                px[point - 2 * step] = clip255(p1 + a);
             }
         }
     }
 
-    static void macroblockFilterHorizontal(int hevThreshold, int interiorLimit, int edgeLimit, byte[] pixels, int off) {
-        if (shouldFilterHorizontal(interiorLimit, edgeLimit, pixels, off)) {
-            if (!highEdgeVarianceHorizontal(hevThreshold, pixels, off)) {
-                int p2 = u2s(pixels[off + 1]);
-                int p1 = u2s(pixels[off + 2]);
-                int p0 = u2s(pixels[off + 3]);
-                int q0 = u2s(pixels[off + 4]);
-                int q1 = u2s(pixels[off + 5]);
-                int q2 = u2s(pixels[off + 6]);
-
-                int w = c(c(p1 - q1) + 3 * (q0 - p0));
-
-                int a = c((27 * w + 63) >> 7);
-                pixels[off + 4] = s2u(q0 - a);
-                pixels[off + 3] = s2u(p0 + a);
+    /** Edge and interior thresholds of the normal filter, with {@code thresh2} as in {@link #simpleEdge}. */
+    private static boolean needsFilter(int thresh2, int interiorLimit, int p3, int p2, int p1, int p0, int q0, int q1,
+                                       int q2, int q3) {
+        return 4 * Math.abs(p0 - q0) + Math.abs(p1 - q1) <= thresh2
+                && Math.abs(p3 - p2) <= interiorLimit
+                && Math.abs(p2 - p1) <= interiorLimit
+                && Math.abs(p1 - p0) <= interiorLimit
+                && Math.abs(q3 - q2) <= interiorLimit
+                && Math.abs(q2 - q1) <= interiorLimit
+                && Math.abs(q1 - q0) <= interiorLimit;
+    }
+
+    /** Macroblock edge filter without high edge variance: moves p2..q2 by 9/128, 18/128 and 27/128 of {@code w}. */
+    private static void adjustSixTaps(int w, byte[] px, int point, int step, int p2, int p1, int p0, int q0, int q1,
+                                      int q2) {
+        int a = c((27 * w + 63) >> 7);
+        px[point] = clip255(q0 - a);
+        px[point - step] = clip255(p0 + a);
+        a = c((18 * w + 63) >> 7);
+        px[point + step] = clip255(q1 - a);
+        px[point - 2 * step] = clip255(p1 + a);
+        a = c((9 * w + 63) >> 7);
+        px[point + 2 * step] = clip255(q2 - a);
+        px[point - 3 * step] = clip255(p2 + a);
+    }
+
+    /** Moves p0 and q0 towards each other by filter value {@code w}; returns the amount q0 moved. */
+    private static int adjust(int w, byte[] px, int point, int step, int p0, int q0) {
+        w = c(w);
+        int a = c(w + 4) >> 3;
+        int b = c(w + 3) >> 3;
+        px[point] = clip255(q0 - a);
+        px[point - step] = clip255(p0 + b);
+        return a;
+    }
 
-                a = c((18 * w + 63) >> 7);
-                pixels[off + 5] = s2u(q1 - a);
-                pixels[off + 2] = s2u(p1 + a);
+    private static byte clip255(int v) {
+        return (byte) (v < 0 ? 0 : (v > 255 ? 255 : v));
+    }
 
-                a = c((9 * w + 63) >> 7);
-                pixels[off + 6] = s2u(q2 - a);
-                pixels[off + 1] = s2u(p2 + a);
-            } else {
-                commonAdjustHorizontal(true, pixels, off);
-            }
-        }
+    private static int c(int val) {
+        if (val < -128) return -128;
+        if (val > 127) return 127;
+        return val;
     }
 }
@@ -10,9 +10,12 @@ final class Vp8Prediction {
 
     private Vp8Prediction() {}
 
-    static byte[] createBorderLuma(int mbx, int mby, int mbw, byte[] top, byte[] left) {
+    /**
+     * Fills the border of the {@link #LUMA_BLOCK_SIZE} workspace {@code ws}. Interior pixels are left as they are;
+     * every prediction mode overwrites them before reading.
+     */
+    static void createBorderLuma(byte[] ws, int mbx, int mby, int mbw, byte[] top, byte[] left) {
         int stride = LUMA_STRIDE;
-        byte[] ws = new byte[LUMA_BLOCK_SIZE];
 
         // above (A)
         int aboveOff = 1;
@@ -47,12 +50,11 @@ final class Vp8Prediction {
 
         // top-left (P)
         ws[0] = (byte) (mby == 0 ? 127 : (mbx == 0 ? 129 : (left[0] & 0xFF)));
-        return ws;
     }
 
-    static byte[] createBorderChroma(int mbx, int mby, byte[] top, byte[] left) {
+    /** Fills the border of the {@link #CHROMA_BLOCK_SIZE} workspace {@code chroma}. */
+    static void createBorderChroma(byte[] chroma, int mbx, int mby, byte[] top, byte[] left) {
         int stride = CHROMA_STRIDE;
-        byte[] chroma = new byte[CHROMA_BLOCK_SIZE];
 
         // above
         if (mby == 0) {
@@ -70,25 +72,6 @@ final class Vp8Prediction {
         }
 
         chroma[0] = (byte) (mby == 0 ? 127 : (mbx == 0 ? 129 : (left[0] & 0xFF)));
-        return chroma;
-    }
-
-    static void addResidue(byte[] pblock, int[] rblock, int y0, int x0, int stride) {
-        addResidue(pblock, rblock, 0, y0, x0, stride);
-    }
-
-    static void addResidue(byte[] pblock, int[] rblock, int rOff, int y0, int x0, int stride) {
-        int pos = y0 * stride + x0;
-        int k = rOff;
-        for (int y = 0; y < 4; y++) {
-            for (int x = 0; x < 4; x++) {
-                int v = rblock[k++] + (pblock[pos + x] & 0xFF);
-                if (v < 0) v = 0;
-                else if (v > 255) v = 255;
-                pblock[pos + x] = (byte) v;
-            }
-            pos += stride;
-        }
     }
 
     private static int avg3(int left, int cur, int right) {
@@ -99,7 +82,12 @@ final class Vp8Prediction {
         return (cur + right + 1) >> 1;
     }
 
-    static void predict4x4(byte[] ws, int stride, byte[] modes, int[] resdata) {
+    /**
+     * Predicts the 16 subblocks of a B_PRED macroblock in raster order, each from its already reconstructed
+     * neighbours, and adds the inverse transform of its coefficients; {@code nonZero} holds the
+     * {@link Vp8Transform} block kinds, 2 bits per subblock.
+     */
+    static void predict4x4(byte[] ws, int stride, byte[] modes, int[] resdata, int resOff, int nonZero) {
         for (int sby = 0; sby < 4; sby++) {
             for (int sbx = 0; sbx < 4; sbx++) {
                 int i = sbx + sby * 4;
@@ -142,7 +130,8 @@ final class Vp8Prediction {
                         throw new IllegalArgumentException("Invalid intra mode: " + mode);
                 }
 
-                addResidue(ws, resdata, i * 16, y0, x0, stride);
+                Vp8Transform.addInverseTransform(
+                        (nonZero >>> (2 * i)) & 3, resdata, resOff + i * 16, ws, y0 * stride + x0, stride);
             }
         }
     }
@@ -215,105 +204,94 @@ final class Vp8Prediction {
         return a[(y0 - 1) * stride + x0 - 1] & 0xFF;
     }
 
-    private static void topPixels(byte[] a, int x0, int y0, int stride, int[] out8) {
-        int pos = (y0 - 1) * stride + x0;
-        for (int i = 0; i < 8; i++) out8[i] = a[pos + i] & 0xFF;
-    }
-
-    private static void leftPixels(byte[] a, int x0, int y0, int stride, int[] out4) {
-        out4[0] = a[y0 * stride + x0 - 1] & 0xFF;
-        out4[1] = a[(y0 + 1) * stride + x0 - 1] & 0xFF;
-        out4[2] = a[(y0 + 2) * stride + x0 - 1] & 0xFF;
-        out4[3] = a[(y0 + 3) * stride + x0 - 1] & 0xFF;
-    }
-
-    private static void edgePixels(byte[] a, int x0, int y0, int stride, int[] out9) {
-        int pos = (y0 - 1) * stride + x0 - 1;
-        out9[0] = a[pos + 4 * stride] & 0xFF;
-        out9[1] = a[pos + 3 * stride] & 0xFF;
-        out9[2] = a[pos + 2 * stride] & 0xFF;
-        out9[3] = a[pos + stride] & 0xFF;
-        for (int i = 0; i < 5; i++) out9[4 + i] = a[pos + i] & 0xFF;
-    }
-
     static void predictBvepred(byte[] a, int x0, int y0, int stride) {
         int p = topleftPixel(a, x0, y0, stride);
-        int[] t = new int[8];
-        topPixels(a, x0, y0, stride, t);
-        int[] avg = new int[] {
-                avg3(p, t[0], t[1]),
-                avg3(t[0], t[1], t[2]),
-                avg3(t[1], t[2], t[3]),
-                avg3(t[2], t[3], t[4]),
-        };
+        int top = (y0 - 1) * stride + x0;
+        int t0 = a[top] & 0xFF, t1 = a[top + 1] & 0xFF, t2 = a[top + 2] & 0xFF;
+        int t3 = a[top + 3] & 0xFF, t4 = a[top + 4] & 0xFF;
+        byte v0 = (byte) avg3(p, t0, t1);
+        byte v1 = (byte) avg3(t0, t1, t2);
+        byte v2 = (byte) avg3(t1, t2, t3);
+        byte v3 = (byte) avg3(t2, t3, t4);
         int pos = y0 * stride + x0;
         for (int y = 0; y < 4; y++) {
-            for (int x = 0; x < 4; x++) a[pos + x] = (byte) avg[x];
+            a[pos] = v0;
+            a[pos + 1] = v1;
+            a[pos + 2] = v2;
+            a[pos + 3] = v3;
             pos += stride;
         }
     }
 
     static void predictBhepred(byte[] a, int x0, int y0, int stride) {
         int p = topleftPixel(a, x0, y0, stride);
-        int[] l = new int[4];
-        leftPixels(a, x0, y0, stride, l);
-        int[] avgs = new int[] {
-                avg3(p, l[0], l[1]),
-                avg3(l[0], l[1], l[2]),
-                avg3(l[1], l[2], l[3]),
-                avg3(l[2], l[3], l[3]),
-        };
-        int pos = y0 * stride + x0;
-        for (int y = 0; y < 4; y++) {
-            int v = avgs[y];
-            for (int x = 0; x < 4; x++) a[pos + x] = (byte) v;
-            pos += stride;
-        }
+        int l0 = a[y0 * stride + x0 - 1] & 0xFF;
+        int l1 = a[(y0 + 1) * stride + x0 - 1] & 0xFF;
+        int l2 = a[(y0 + 2) * stride + x0 - 1] & 0xFF;
+        int l3 = a[(y0 + 3) * stride + x0 - 1] & 0xFF;
+        fillRow(a, y0 * stride + x0, (byte) avg3(p, l0, l1));
+        fillRow(a, (y0 + 1) * stride + x0, (byte) avg3(l0, l1, l2));
+        fillRow(a, (y0 + 2) * stride + x0, (byte) avg3(l1, l2, l3));
+        fillRow(a, (y0 + 3) * stride + x0, (byte) avg3(l2, l3, l3));
+    }
+
+    private static void fillRow(byte[] a, int pos, byte v) {
+        a[pos] = v;
+        a[pos + 1] = v;
+        a[pos + 2] = v;
+        a[pos + 3] = v;
     }
 
     static void predictBldpred(byte[] a, int x0, int y0, int stride) {
-        int[] t = new int[8];
-        topPixels(a, x0, y0, stride, t);
-        int[] avgs = new int[] {
-                avg3(t[0], t[1], t[2]),
-                avg3(t[1], t[2], t[3]),
-                avg3(t[2], t[3], t[4]),
-                avg3(t[3], t[4], t[5]),
-                avg3(t[4], t[5], t[6]),
-                avg3(t[5], t[6], t[7]),
-                avg3(t[6], t[7], t[7]),
-        };
+        int top = (y0 - 1) * stride + x0;
+        int t0 = a[top] & 0xFF, t1 = a[top + 1] & 0xFF, t2 = a[top + 2] & 0xFF, t3 = a[top + 3] & 0xFF;
+        int t4 = a[top + 4] & 0xFF, t5 = a[top + 5] & 0xFF, t6 = a[top + 6] & 0xFF, t7 = a[top + 7] & 0xFF;
+        byte v0 = (byte) avg3(t0, t1, t2);
+        byte v1 = (byte) avg3(t1, t2, t3);
+        byte v2 = (byte) avg3(t2, t3, t4);
+        byte v3 = (byte) avg3(t3, t4, t5);
+        byte v4 = (byte) avg3(t4, t5, t6);
+        byte v5 = (byte) avg3(t5, t6, t7);
+        byte v6 = (byte) avg3(t6, t7, t7);
         int pos = y0 * stride + x0;
-        for (int i = 0; i < 4; i++) {
-            for (int x = 0; x < 4; x++) a[pos + x] = (byte) avgs[i + x];
-            pos += stride;
-        }
+        setRow(a, pos, v0, v1, v2, v3);
+        setRow(a, pos + stride, v1, v2, v3, v4);
+        setRow(a, pos + 2 * stride, v2, v3, v4, v5);
+        setRow(a, pos + 3 * stride, v3, v4, v5, v6);
+    }
+
+    private static void setRow(byte[] a, int pos, byte v0, byte v1, byte v2, byte v3) {
+        a[pos] = v0;
+        a[pos + 1] = v1;
+        a[pos + 2] = v2;
+        a[pos + 3] = v3;
     }
 
     static void predictBrdpred(byte[] a, int x0, int y0, int stride) {
-        int[] e = new int[9];
-        edgePixels(a, x0, y0, stride, e);
-        int[] avgs = new int[] {
-                avg3(e[0], e[1], e[2]),
-                avg3(e[1], e[2], e[3]),
-                avg3(e[2], e[3], e[4]),
-                avg3(e[3], e[4], e[5]),
-                avg3(e[4], e[5], e[6]),
-                avg3(e[5], e[6], e[7]),
-                avg3(e[6], e[7], e[8]),
-        };
-        int pos = y0 * stride + x0;
-        for (int i = 0; i < 4; i++) {
-            int start = 3 - i;
-            for (int x = 0; x < 4; x++) a[pos + x] = (byte) avgs[start + x];
-            pos += stride;
-        }
+        int pos = (y0 - 1) * stride + x0 - 1;
+        int e0 = a[pos + 4 * stride] & 0xFF, e1 = a[pos + 3 * stride] & 0xFF;
+        int e2 = a[pos + 2 * stride] & 0xFF, e3 = a[pos + stride] & 0xFF;
+        int e4 = a[pos] & 0xFF, e5 = a[pos + 1] & 0xFF, e6 = a[pos + 2] & 0xFF;
+        int e7 = a[pos + 3] & 0xFF, e8 = a[pos + 4] & 0xFF;
+        byte v0 = (byte) avg3(e0, e1, e2);
+        byte v1 = (byte) avg3(e1, e2, e3);
+        byte v2 = (byte) avg3(e2, e3, e4);
+        byte v3 = (byte) avg3(e3, e4, e5);
+        byte v4 = (byte) avg3(e4, e5, e6);
+        byte v5 = (byte) avg3(e5, e6, e7);
+        byte v6 = (byte) avg3(e6, e7, e8);
+        int row = y0 * stride + x0;
+        setRow(a, row, v3, v4, v5, v6);
+        setRow(a, row + stride, v2, v3, v4, v5);
+        setRow(a, row + 2 * stride, v1, v2, v3, v4);
+        setRow(a, row + 3 * stride, v0, v1, v2, v3);
     }
 
     static void predictBvrpred(byte[] a, int x0, int y0, int stride) {
-        int[] e = new int[9];
-        edgePixels(a, x0, y0, stride, e);
-        int e1 = e[1], e2 = e[2], e3 = e[3], e4 = e[4], e5 = e[5], e6 = e[6], e7 = e[7], e8 = e[8];
+        int pos = (y0 - 1) * stride + x0 - 1;
+        int e1 = a[pos + 3 * stride] & 0xFF, e2 = a[pos + 2 * stride] & 0xFF, e3 = a[pos + stride] & 0xFF;
+        int e4 = a[pos] & 0xFF, e5 = a[pos + 1] & 0xFF, e6 = a[pos + 2] & 0xFF;
+        int e7 = a[pos + 3] & 0xFF, e8 = a[pos + 4] & 0xFF;
 
         a[(y0 + 3) * stride + x0] = (byte) avg3(e1, e2, e3);
         a[(y0 + 2) * stride + x0] = (byte) avg3(e2, e3, e4);
@@ -334,9 +312,9 @@ final class Vp8Prediction {
     }
 
     static void predictBvlpred(byte[] a, int x0, int y0, int stride) {
-        int[] t = new int[8];
-        topPixels(a, x0, y0, stride, t);
-        int a0=t[0],a1=t[1],a2=t[2],a3=t[3],a4=t[4],a5=t[5],a6=t[6],a7=t[7];
+        int top = (y0 - 1) * stride + x0;
+        int a0 = a[top] & 0xFF, a1 = a[top + 1] & 0xFF, a2 = a[top + 2] & 0xFF, a3 = a[top + 3] & 0xFF;
+        int a4 = a[top + 4] & 0xFF, a5 = a[top + 5] & 0xFF, a6 = a[top + 6] & 0xFF, a7 = a[top + 7] & 0xFF;
 
         a[y0 * stride + x0] = (byte) avg2(a0, a1);
         a[(y0 + 1) * stride + x0] = (byte) avg3(a0, a1, a2);
@@ -357,9 +335,10 @@ final class Vp8Prediction {
     }
 
     static void predictBhdpred(byte[] a, int x0, int y0, int stride) {
-        int[] e = new int[9];
-        edgePixels(a, x0, y0, stride, e);
-        int e0=e[0],e1=e[1],e2=e[2],e3=e[3],e4=e[4],e5=e[5],e6=e[6],e7=e[7];
+        int pos = (y0 - 1) * stride + x0 - 1;
+        int e0 = a[pos + 4 * stride] & 0xFF, e1 = a[pos + 3 * stride] & 0xFF;
+        int e2 = a[pos + 2 * stride] & 0xFF, e3 = a[pos + stride] & 0xFF;
+        int e4 = a[pos] & 0xFF, e5 = a[pos + 1] & 0xFF, e6 = a[pos + 2] & 0xFF, e7 = a[pos + 3] & 0xFF;
 
         a[(y0 + 3) * stride + x0] = (byte) avg2(e0, e1);
         a[(y0 + 3) * stride + x0 + 1] = (byte) avg3(e0, e1, e2);
@@ -380,9 +359,10 @@ final class Vp8Prediction {
     }
 
     static void predictBhupred(byte[] a, int x0, int y0, int stride) {
-        int[] l = new int[4];
-        leftPixels(a, x0, y0, stride, l);
-        int l0=l[0],l1=l[1],l2=l[2],l3=l[3];
+        int l0 = a[y0 * stride + x0 - 1] & 0xFF;
+        int l1 = a[(y0 + 1) * stride + x0 - 1] & 0xFF;
+        int l2 = a[(y0 + 2) * stride + x0 - 1] & 0xFF;
+        int l3 = a[(y0 + 3) * stride + x0 - 1] & 0xFF;
 
         a[y0 * stride + x0] = (byte) avg2(l0, l1);
         a[y0 * stride + x0 + 1] = (byte) avg3(l0, l1, l2);
@@ -1,12 +1,30 @@
 package org.ngengine.webp.decoder;
 
+import java.nio.ByteBuffer;
+
 /** Minimal little-endian byte reader for VP8/WebP payloads. */
 final class Vp8Reader {
-    private final byte[] data;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private ByteBuffer data;
     private int pos;
+    private int limit;
+
+    /** Creates an empty reader; call {@link #reset(ByteBuffer, int, int)} before reading. */
+    Vp8Reader() {
+        this.data = EMPTY;
+    }
 
-    Vp8Reader(byte[] data, int off, int len) throws WebPDecodeException {
-        if (off < 0 || len < 0 || off + len > data.length) {
+    Vp8Reader(ByteBuffer data, int off, int len) throws WebPDecodeException {
+        reset(data, off, len);
+    }
+
+    /**
+     * Re-targets this reader at {@code data[off, off + len)}. Indexes are absolute and the buffer's position is
+     * ignored, so the bytes are read in place from heap, direct or mapped buffers alike.
+     */
+    void reset(ByteBuffer data, int off, int len) throws WebPDecodeException {
+        if (off < 0 || len < 0 || len > data.limit() - off) {
             throw new WebPDecodeException("Invalid VP8 buffer bounds");
         }
         this.data = data;
@@ -15,9 +33,12 @@ final class Vp8Reader {
         this.limit = off + len;
     }
 
-    private final int limit;
+    /** Returns the backing buffer; positions reported by this reader index into it. */
+    ByteBuffer data() {
+        return data;
+    }
 
-    /** Returns current read position relative to the backing byte array. */
+    /** Returns current read position relative to the backing buffer. */
     int position() {
         return pos;
     }
@@ -32,7 +53,7 @@ final class Vp8Reader {
         if (pos >= limit) {
             throw new WebPDecodeException("Unexpected EOF");
         }
-        return data[pos++] & 0xFF;
+        return data.get(pos++) & 0xFF;
     }
 
     /** Reads an unsigned 16-bit little-endian value. */
@@ -50,28 +71,9 @@ final class Vp8Reader {
         return b0 | (b1 << 8) | (b2 << 16);
     }
 
-    /** Copies exactly {@code len} bytes into {@code out}. */
-    void readFully(byte[] out, int off, int len) throws WebPDecodeException {
-        if (len < 0 || off < 0 || off + len > out.length) {
-            throw new WebPDecodeException("Invalid output slice");
-        }
-        if (pos + len > limit) {
-            throw new WebPDecodeException("Unexpected EOF");
-        }
-        System.arraycopy(data, pos, out, off, len);
-        pos += len;
-    }
-
-    /** Reads and returns a new byte array of length {@code len}. */
-    byte[] readBytes(int len) throws WebPDecodeException {
-        byte[] out = new byte[len];
-        readFully(out, 0, len);
-        return out;
-    }
-
     /** Advances the read position by {@code len} bytes. */
     void skip(int len) throws WebPDecodeException {
-        if (pos + len > limit) {
+        if (len > limit - pos) {
             throw new WebPDecodeException("Unexpected EOF");
         }
         pos += len;
@@ -5,46 +5,116 @@ final class Vp8Transform {
     private static final long CONST1 = 20091L;
     private static final long CONST2 = 35468L;
 
+    /** Block kinds chosen by {@link #kind}: nothing to add, DC only, DC plus coefficients 1 and 4, all 16. */
+    static final int KIND_NONE = 0;
+    static final int KIND_DC = 1;
+    static final int KIND_AC3 = 2;
+    static final int KIND_FULL = 3;
+
     private Vp8Transform() {}
 
-    static void idct4x4(int[] block) {
-        // block length must be >= 16
-        for (int i = 0; i < 4; i++) {
-            long a1 = (long) block[i] + (long) block[8 + i];
-            long b1 = (long) block[i] - (long) block[8 + i];
+    /**
+     * Picks the cheapest inverse transform for a block whose coefficients past zigzag position {@code end} are all
+     * zero. Positions 1 and 2 in zigzag order are coefficients 1 and 4, the ones {@link #KIND_AC3} handles.
+     */
+    static int kind(int end, boolean dcNonZero) {
+        if (end > 3) return KIND_FULL;
+        if (end > 1) return KIND_AC3;
+        return dcNonZero ? KIND_DC : KIND_NONE;
+    }
 
-            long t1 = ((long) block[4 + i] * CONST2) >> 16;
-            long t2 = (long) block[12 + i] + (((long) block[12 + i] * CONST1) >> 16);
-            long c1 = t1 - t2;
+    /**
+     * Inverse transforms the block at {@code in[inOff]} and adds it, clamped to 0..255, to the 4x4 pixels at
+     * {@code dst[pos]}. Output matches the reference inverse DCT followed by a clamped add; {@code KIND_FULL} uses
+     * {@code in} as scratch.
+     */
+    static void addInverseTransform(int kind, int[] in, int inOff, byte[] dst, int pos, int stride) {
+        switch (kind) {
+            case KIND_FULL:
+                addIdct(in, inOff, dst, pos, stride);
+                break;
+            case KIND_AC3:
+                addIdctAc3(in, inOff, dst, pos, stride);
+                break;
+            case KIND_DC:
+                addIdctDc(in, inOff, dst, pos, stride);
+                break;
+            default:
+                break;
+        }
+    }
 
-            t1 = (long) block[4 + i] + (((long) block[4 + i] * CONST1) >> 16);
-            t2 = ((long) block[12 + i] * CONST2) >> 16;
-            long d1 = t1 + t2;
+    /** Full inverse DCT plus add; the vertical pass is written back into {@code in}. */
+    static void addIdct(int[] in, int inOff, byte[] dst, int pos, int stride) {
+        for (int i = inOff; i < inOff + 4; i++) {
+            int a = in[i] + in[i + 8];
+            int b = in[i] - in[i + 8];
+            int c = mul2(in[i + 4]) - mul1(in[i + 12]);
+            int d = mul1(in[i + 4]) + mul2(in[i + 12]);
+            in[i] = a + d;
+            in[i + 4] = b + c;
+            in[i + 8] = b - c;
+            in[i + 12] = a - d;
+        }
+        for (int k = inOff; k < inOff + 16; k += 4) {
+            int dc = in[k] + 4;
+            int a = dc + in[k + 2];
+            int b = dc - in[k + 2];
+            int c = mul2(in[k + 1]) - mul1(in[k + 3]);
+            int d = mul1(in[k + 1]) + mul2(in[k + 3]);
+            addClamped(dst, pos, (a + d) >> 3);
+            addClamped(dst, pos + 1, (b + c) >> 3);
+            addClamped(dst, pos + 2, (b - c) >> 3);
+            addClamped(dst, pos + 3, (a - d) >> 3);
+            pos += stride;
+        }
+    }
 
-            block[i] = (int) (a1 + d1);
-            block[4 + i] = (int) (b1 + c1);
-            block[12 + i] = (int) (a1 - d1);
-            block[8 + i] = (int) (b1 - c1);
+    /** Inverse DCT plus add for a block whose only non-zero coefficients are 0, 1 and 4. */
+    static void addIdctAc3(int[] in, int inOff, byte[] dst, int pos, int stride) {
+        int a = in[inOff] + 4;
+        int c4 = mul2(in[inOff + 4]);
+        int d4 = mul1(in[inOff + 4]);
+        int c1 = mul2(in[inOff + 1]);
+        int d1 = mul1(in[inOff + 1]);
+        addRow(dst, pos, a + d4, d1, c1);
+        addRow(dst, pos + stride, a + c4, d1, c1);
+        addRow(dst, pos + 2 * stride, a - c4, d1, c1);
+        addRow(dst, pos + 3 * stride, a - d4, d1, c1);
+    }
+
+    /** Inverse DCT plus add for a block whose only non-zero coefficient is the DC. */
+    static void addIdctDc(int[] in, int inOff, byte[] dst, int pos, int stride) {
+        int dc = (in[inOff] + 4) >> 3;
+        for (int y = 0; y < 4; y++) {
+            addClamped(dst, pos, dc);
+            addClamped(dst, pos + 1, dc);
+            addClamped(dst, pos + 2, dc);
+            addClamped(dst, pos + 3, dc);
+            pos += stride;
         }
+    }
 
-        for (int i = 0; i < 4; i++) {
-            int base = 4 * i;
-            long a1 = (long) block[base] + (long) block[base + 2];
-            long b1 = (long) block[base] - (long) block[base + 2];
+    private static void addRow(byte[] dst, int pos, int dc, int d, int c) {
+        addClamped(dst, pos, (dc + d) >> 3);
+        addClamped(dst, pos + 1, (dc + c) >> 3);
+        addClamped(dst, pos + 2, (dc - c) >> 3);
+        addClamped(dst, pos + 3, (dc - d) >> 3);
+    }
 
-            long t1 = ((long) block[base + 1] * CONST2) >> 16;
-            long t2 = (long) block[base + 3] + (((long) block[base + 3] * CONST1) >> 16);
-            long c1 = t1 - t2;
+    private static void addClamped(byte[] dst, int pos, int v) {
+        v += dst[pos] & 0xFF;
+        dst[pos] = (byte) (v < 0 ? 0 : (v > 255 ? 255 : v));
+    }
 
-            t1 = (long) block[base + 1] + (((long) block[base + 1] * CONST1) >> 16);
-            t2 = ((long) block[base + 3] * CONST2) >> 16;
-            long d1 = t1 + t2;
+    /** {@code x * sqrt(2) * cos(pi/8)} in 16-bit fixed point, using long math like the reference transform. */
+    private static int mul1(int x) {
+        return x + (int) ((x * CONST1) >> 16);
+    }
 
-            block[base] = (int) ((a1 + d1 + 4) >> 3);
-            block[base + 3] = (int) ((a1 - d1 + 4) >> 3);
-            block[base + 1] = (int) ((b1 + c1 + 4) >> 3);
-            block[base + 2] = (int) ((b1 - c1 + 4) >> 3);
-        }
+    /** {@code x * sqrt(2) * sin(pi/8)} in 16-bit fixed point. */
+    private static int mul2(int x) {
+        return (int) ((x * CONST2) >> 16);
     }
 
     static void iwht4x4(int[] block) {
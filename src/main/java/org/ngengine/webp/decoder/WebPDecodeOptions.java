@@ -0,0 +1,113 @@
+package org.ngengine.webp.decoder;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Optional decode settings.
+ *
+ * <p>Instances are immutable; the {@code with*} methods return modified copies, starting from {@link #DEFAULT}:
+ * {@code WebPDecodeOptions.DEFAULT.withThreads(3)}.
+ */
+public final class WebPDecodeOptions {
+    /** Single-threaded decoding to {@link WebPPixelFormat#RGBA}. */
+    public static final WebPDecodeOptions DEFAULT = new WebPDecodeOptions(1, null, WebPPixelFormat.RGBA);
+
+    private final int threads;
+    private final Executor executor;
+    private final WebPPixelFormat pixelFormat;
+
+    private WebPDecodeOptions(int threads, Executor executor, WebPPixelFormat pixelFormat) {
+        this.threads = threads;
+        this.executor = executor;
+        this.pixelFormat = pixelFormat;
+    }
+
+    /**
+     * Returns options that decode lossy images with up to {@code threads} threads, including the calling one.
+     *
+     * <p>Macroblock rows then flow through a parse, reconstruct+filter and color-convert pipeline, so more than 3
+     * threads currently brings no further gain. The output is bit-identical to a single-threaded decode. Lossless
+     * images and lossy images only a few macroblock rows tall are always decoded on the calling thread.
+     *
+     * @param threads total thread count, at least 1
+     * @return a copy of these options with the thread count replaced
+     */
+    public WebPDecodeOptions withThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1: " + threads);
+        }
+        return new WebPDecodeOptions(threads, executor, pixelFormat);
+    }
+
+    /**
+     * Returns options that run the extra pipeline stages on {@code executor} instead of the decoder's shared pool
+     * of daemon threads.
+     *
+     * <p>Stages wait on each other. A stage the executor has not started by the time the decoding thread would
+     * have to wait for it is run on the decoding thread instead, so a caller-runs, saturated or rejecting executor
+     * only costs parallelism. Interrupting the decoding thread fails the decode with a {@link WebPDecodeException}.
+     *
+     * @param executor runs up to {@code threads - 1} tasks per decode
+     * @return a copy of these options with the executor replaced
+     */
+    public WebPDecodeOptions withExecutor(Executor executor) {
+        return new WebPDecodeOptions(threads, Objects.requireNonNull(executor, "executor"), pixelFormat);
+    }
+
+    /**
+     * Returns options that make the decoders write pixels in {@code pixelFormat} instead of RGBA. The conversion
+     * happens as each row is produced, so it costs no extra pass over the image.
+     *
+     * <p>Applies to the {@code ByteBuffer} outputs: {@link DecodedWebP#rgba} and
+     * {@link WebPDecoder#decodeInto(ByteBuffer, ByteBuffer, int, int, WebPDecoderContext, WebPDecodeOptions)}.
+     *
+     * @param pixelFormat byte layout of the output pixels
+     * @return a copy of these options with the pixel format replaced
+     */
+    public WebPDecodeOptions withPixelFormat(WebPPixelFormat pixelFormat) {
+        return new WebPDecodeOptions(threads, executor, Objects.requireNonNull(pixelFormat, "pixelFormat"));
+    }
+
+    /**
+     * Returns the total number of threads a lossy decode may use.
+     *
+     * @return the thread count, at least 1
+     */
+    public int threads() {
+        return threads;
+    }
+
+    /**
+     * Returns the executor for the extra threads.
+     *
+     * @return the executor, or {@code null} for the decoder's shared pool
+     */
+    public Executor executor() {
+        return executor;
+    }
+
+    /**
+     * Returns the layout of the decoded pixels.
+     *
+     * @return the output pixel format, {@link WebPPixelFormat#RGBA} by default
+     */
+    public WebPPixelFormat pixelFormat() {
+        return pixelFormat;
+    }
+
+    Executor executorOrShared() {
+        return executor != null ? executor : SharedPool.INSTANCE;
+    }
+
+    /** Lazily started pool of daemon threads; idle threads exit after a minute. */
+    private static final class SharedPool {
+        static final ExecutorService INSTANCE = Executors.newCachedThreadPool(task -> {
+            Thread t = new Thread(task, "webp-decoder");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
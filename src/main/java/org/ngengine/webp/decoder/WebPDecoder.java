@@ -24,15 +24,130 @@ public final class WebPDecoder {
      * Decodes a WebP still image from complete file bytes.
      *
      * @param webpBytes full WebP file bytes
-     * @param rgbaAllocator Allocator used for the output RGBA buffer (and internal temporary RGBA buffers).
+     * @param rgbaAllocator Allocator used for the output pixel buffer.
      *                      The returned buffer may be direct; code must not assume array-backed buffers.
      * @return decoded image in RGBA8888 format
      * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails
      */
     public static DecodedWebP decode(byte[] webpBytes, IntFunction<ByteBuffer> rgbaAllocator) throws WebPDecodeException {
+        return decode(webpBytes, rgbaAllocator, new WebPDecoderContext());
+    }
+
+    /**
+     * Decodes a WebP still image from complete file bytes, reusing the working buffers held by {@code context}.
+     *
+     * @param webpBytes full WebP file bytes
+     * @param context reusable decoder state; must not be used by other threads during the call
+     * @return decoded image in RGBA8888 format
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails
+     */
+    public static DecodedWebP decode(byte[] webpBytes, WebPDecoderContext context) throws WebPDecodeException {
+        return decode(webpBytes, ByteBuffer::allocate, context);
+    }
+
+    /**
+     * Decodes a WebP still image from complete file bytes, reusing the working buffers held by {@code context}.
+     *
+     * @param webpBytes full WebP file bytes
+     * @param rgbaAllocator Allocator used for the output pixel buffer.
+     *                      The returned buffer may be direct; code must not assume array-backed buffers.
+     * @param context reusable decoder state; must not be used by other threads during the call
+     * @return decoded image in RGBA8888 format
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails
+     */
+    public static DecodedWebP decode(
+            byte[] webpBytes,
+            IntFunction<ByteBuffer> rgbaAllocator,
+            WebPDecoderContext context
+    ) throws WebPDecodeException {
+        return decode(webpBytes, rgbaAllocator, context, WebPDecodeOptions.DEFAULT);
+    }
+
+    /**
+     * Decodes a WebP still image from complete file bytes with the given options, e.g. to decode large lossy images
+     * on several threads.
+     *
+     * @param webpBytes full WebP file bytes
+     * @param options decode settings
+     * @return decoded image in the pixel format of {@code options}, RGBA8888 by default
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails
+     */
+    public static DecodedWebP decode(byte[] webpBytes, WebPDecodeOptions options) throws WebPDecodeException {
+        return decode(webpBytes, ByteBuffer::allocate, new WebPDecoderContext(), options);
+    }
+
+    /**
+     * Decodes a WebP still image from complete file bytes with the given options, reusing the working buffers held
+     * by {@code context}.
+     *
+     * @param webpBytes full WebP file bytes
+     * @param rgbaAllocator Allocator used for the output pixel buffer.
+     *                      The returned buffer may be direct; code must not assume array-backed buffers.
+     * @param context reusable decoder state; must not be used by other threads during the call
+     * @param options decode settings
+     * @return decoded image in the pixel format of {@code options}, RGBA8888 by default
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails
+     */
+    public static DecodedWebP decode(
+            byte[] webpBytes,
+            IntFunction<ByteBuffer> rgbaAllocator,
+            WebPDecoderContext context,
+            WebPDecodeOptions options
+    ) throws WebPDecodeException {
+        return decode(ByteBuffer.wrap(webpBytes), rgbaAllocator, context, options);
+    }
+
+    /**
+     * Decodes a WebP still image held in {@code src} between its position and limit.
+     *
+     * <p>The bytes are read in place: {@code src} may be a heap, direct or memory-mapped buffer, or a slice of a
+     * larger one, and is not copied. Its position, limit and byte order are left unchanged.
+     *
+     * @param src complete WebP file bytes
+     * @return decoded image in RGBA8888 format
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails
+     */
+    public static DecodedWebP decode(ByteBuffer src) throws WebPDecodeException {
+        return decode(src, ByteBuffer::allocate, new WebPDecoderContext(), WebPDecodeOptions.DEFAULT);
+    }
+
+    /**
+     * Decodes a WebP still image held in {@code src} between its position and limit, reading it in place.
+     *
+     * @param src complete WebP file bytes; position, limit and byte order are left unchanged
+     * @param rgbaAllocator Allocator used for the output pixel buffer.
+     *                      The returned buffer may be direct; code must not assume array-backed buffers.
+     * @return decoded image in RGBA8888 format
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails
+     */
+    public static DecodedWebP decode(ByteBuffer src, IntFunction<ByteBuffer> rgbaAllocator) throws WebPDecodeException {
+        return decode(src, rgbaAllocator, new WebPDecoderContext(), WebPDecodeOptions.DEFAULT);
+    }
+
+    /**
+     * Decodes a WebP still image held in {@code src} between its position and limit, reading it in place and
+     * reusing the working buffers held by {@code context}.
+     *
+     * @param src complete WebP file bytes; position, limit and byte order are left unchanged
+     * @param rgbaAllocator Allocator used for the output pixel buffer.
+     *                      The returned buffer may be direct; code must not assume array-backed buffers.
+     * @param context reusable decoder state; must not be used by other threads during the call
+     * @param options decode settings
+     * @return decoded image in the pixel format of {@code options}, RGBA8888 by default
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails
+     */
+    public static DecodedWebP decode(
+            ByteBuffer src,
+            IntFunction<ByteBuffer> rgbaAllocator,
+            WebPDecoderContext context,
+            WebPDecodeOptions options
+    ) throws WebPDecodeException {
+        Objects.requireNonNull(src, "src");
         Objects.requireNonNull(rgbaAllocator, "rgbaAllocator");
+        Objects.requireNonNull(context, "context");
+        Objects.requireNonNull(options, "options");
         try {
-            return WebPRiffDecoder.decode(webpBytes, rgbaAllocator);
+            return WebPRiffDecoder.decode(src, rgbaAllocator, context, options);
         } catch (IOException e) {
             throw new WebPDecodeException("IO error while decoding", e);
         } catch (RuntimeException e) {
@@ -40,4 +155,214 @@ public final class WebPDecoder {
             throw new WebPDecodeException("Invalid or corrupt WebP", e);
         }
     }
+
+    /**
+     * Decodes a WebP still image straight into a region of {@code dst}, e.g. a texture atlas or a pooled staging
+     * buffer.
+     *
+     * <p>Pixel {@code (x, y)} is written as RGBA8888 at {@code dst[offset + y * rowStrideBytes + x * 4]}, using
+     * absolute indexes, so the limit of {@code dst} must be at least
+     * {@code offset + (height - 1) * rowStrideBytes + width * 4}; {@link #probe(byte[])} gives the size up front.
+     * Bytes outside the image rectangle are not touched, and the position, limit and byte order of {@code dst} are
+     * left unchanged. If decoding fails, part of the region may already have been written.
+     *
+     * @param webpBytes complete WebP file bytes
+     * @param dst destination buffer, which may be direct
+     * @param offset index in {@code dst} of the top-left pixel
+     * @param rowStrideBytes distance in bytes between the starts of consecutive rows, at least {@code width * 4}
+     * @return the header information of the decoded image, including its size
+     * @throws IllegalArgumentException if {@code offset} is negative, {@code dst} is read-only, or the stride is
+     *                                  smaller than a row of the image
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails, or if the image
+     *                             does not fit below the limit of {@code dst}
+     * @see #decodeInto(ByteBuffer, ByteBuffer, int, int, WebPDecoderContext, WebPDecodeOptions)
+     */
+    public static WebPInfo decodeInto(byte[] webpBytes, ByteBuffer dst, int offset, int rowStrideBytes)
+            throws WebPDecodeException {
+        return decodeInto(ByteBuffer.wrap(webpBytes), dst, offset, rowStrideBytes, new WebPDecoderContext(),
+                WebPDecodeOptions.DEFAULT);
+    }
+
+    /**
+     * Decodes a WebP still image held in {@code src} between its position and limit straight into a region of
+     * {@code dst}.
+     *
+     * <p>Pixel {@code (x, y)} is written as RGBA8888 at {@code dst[offset + y * rowStrideBytes + x * 4]}, using
+     * absolute indexes, so the limit of {@code dst} must be at least
+     * {@code offset + (height - 1) * rowStrideBytes + width * 4}; {@link #probe(ByteBuffer)} gives the size up
+     * front. Bytes outside the image rectangle are not touched, and the position, limit and byte order of both
+     * buffers are left unchanged. If decoding fails, part of the region may already have been written.
+     *
+     * @param src complete WebP file bytes
+     * @param dst destination buffer, which may be direct
+     * @param offset index in {@code dst} of the top-left pixel
+     * @param rowStrideBytes distance in bytes between the starts of consecutive rows, at least {@code width * 4}
+     * @return the header information of the decoded image, including its size
+     * @throws IllegalArgumentException if {@code offset} is negative, {@code dst} is read-only, or the stride is
+     *                                  smaller than a row of the image
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails, or if the image
+     *                             does not fit below the limit of {@code dst}
+     * @see #decodeInto(ByteBuffer, ByteBuffer, int, int, WebPDecoderContext, WebPDecodeOptions)
+     */
+    public static WebPInfo decodeInto(ByteBuffer src, ByteBuffer dst, int offset, int rowStrideBytes)
+            throws WebPDecodeException {
+        return decodeInto(src, dst, offset, rowStrideBytes, new WebPDecoderContext(), WebPDecodeOptions.DEFAULT);
+    }
+
+    /**
+     * Decodes a WebP still image held in {@code src} between its position and limit straight into a region of
+     * {@code dst}, reusing the working buffers held by {@code context}.
+     *
+     * <p>Pixel {@code (x, y)} is written in the pixel format of {@code options}, RGBA8888 by default, at
+     * {@code dst[offset + y * rowStrideBytes + x * bytesPerPixel]}, using absolute indexes. Bytes outside the image
+     * rectangle, including the padding between rows, are not touched.
+     * The position, limit and byte order of both buffers are left unchanged. If decoding fails, part of the region
+     * may already have been written.
+     *
+     * @param src complete WebP file bytes
+     * @param dst destination buffer, which may be direct
+     * @param offset index in {@code dst} of the top-left pixel
+     * @param rowStrideBytes distance in bytes between the starts of consecutive rows, at least one image row
+     * @param context reusable decoder state; must not be used by other threads during the call
+     * @param options decode settings
+     * @return the header information of the decoded image, including its size
+     * @throws IllegalArgumentException if {@code offset} is negative, {@code dst} is read-only, or the stride is
+     *                                  smaller than a row of the image
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails, or if the image
+     *                             does not fit below the limit of {@code dst}
+     */
+    public static WebPInfo decodeInto(
+            ByteBuffer src,
+            ByteBuffer dst,
+            int offset,
+            int rowStrideBytes,
+            WebPDecoderContext context,
+            WebPDecodeOptions options
+    ) throws WebPDecodeException {
+        Objects.requireNonNull(src, "src");
+        Objects.requireNonNull(dst, "dst");
+        Objects.requireNonNull(context, "context");
+        Objects.requireNonNull(options, "options");
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must be >= 0: " + offset);
+        }
+        if (dst.isReadOnly()) {
+            throw new IllegalArgumentException("dst is read-only");
+        }
+        WebPInfo info = probe(src);
+        int rowBytes = info.width * options.pixelFormat().bytesPerPixel();
+        if (rowStrideBytes < rowBytes) {
+            throw new IllegalArgumentException("rowStrideBytes " + rowStrideBytes + " is less than the "
+                    + rowBytes + "-byte rows of a " + info.width + "x" + info.height + " image");
+        }
+        try {
+            return WebPRiffDecoder.decodeInto(src, dst, offset, rowStrideBytes, context, options);
+        } catch (RuntimeException e) {
+            throw new WebPDecodeException("Invalid or corrupt WebP", e);
+        }
+    }
+
+    /**
+     * Decodes a WebP still image into packed {@code 0xAARRGGBB} ints, the layout of
+     * {@code BufferedImage.TYPE_INT_ARGB}. Pixel {@code (x, y)} is stored at
+     * {@code dst[offset + y * rowStridePixels + x]}; other elements are not touched.
+     *
+     * <pre>{@code
+     * WebPInfo info = WebPDecoder.probe(webp);
+     * BufferedImage img = new BufferedImage(info.width, info.height, BufferedImage.TYPE_INT_ARGB);
+     * int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+     * WebPDecoder.decodeInto(webp, pixels, 0, info.width);
+     * }</pre>
+     *
+     * @param webpBytes complete WebP file bytes
+     * @param dst destination array, with room for {@code offset + (height - 1) * rowStridePixels + width} elements
+     * @param offset index in {@code dst} of the top-left pixel
+     * @param rowStridePixels distance in elements between the starts of consecutive rows, at least the width
+     * @return the header information of the decoded image, including its size
+     * @throws IllegalArgumentException if {@code offset} is negative or the stride is smaller than the image width
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails, or if the image
+     *                             does not fit into {@code dst}
+     * @see #decodeInto(ByteBuffer, int[], int, int, WebPDecoderContext, WebPDecodeOptions)
+     */
+    public static WebPInfo decodeInto(byte[] webpBytes, int[] dst, int offset, int rowStridePixels)
+            throws WebPDecodeException {
+        return decodeInto(ByteBuffer.wrap(webpBytes), dst, offset, rowStridePixels, new WebPDecoderContext(),
+                WebPDecodeOptions.DEFAULT);
+    }
+
+    /**
+     * Decodes a WebP still image held in {@code src} between its position and limit into packed
+     * {@code 0xAARRGGBB} ints, reusing the working buffers held by {@code context}. The pixel format of
+     * {@code options} does not apply; the colors are never premultiplied.
+     *
+     * @param src complete WebP file bytes
+     * @param dst destination array
+     * @param offset index in {@code dst} of the top-left pixel
+     * @param rowStridePixels distance in elements between the starts of consecutive rows, at least the width
+     * @param context reusable decoder state; must not be used by other threads during the call
+     * @param options decode settings
+     * @return the header information of the decoded image, including its size
+     * @throws IllegalArgumentException if {@code offset} is negative or the stride is smaller than the image width
+     * @throws WebPDecodeException if the input is invalid, unsupported, truncated, or decode fails, or if the image
+     *                             does not fit into {@code dst}
+     * @see #decodeInto(byte[], int[], int, int)
+     */
+    public static WebPInfo decodeInto(
+            ByteBuffer src,
+            int[] dst,
+            int offset,
+            int rowStridePixels,
+            WebPDecoderContext context,
+            WebPDecodeOptions options
+    ) throws WebPDecodeException {
+        Objects.requireNonNull(src, "src");
+        Objects.requireNonNull(dst, "dst");
+        Objects.requireNonNull(context, "context");
+        Objects.requireNonNull(options, "options");
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must be >= 0: " + offset);
+        }
+        WebPInfo info = probe(src);
+        if (rowStridePixels < info.width) {
+            throw new IllegalArgumentException("rowStridePixels " + rowStridePixels + " is less than the width of a "
+                    + info.width + "x" + info.height + " image");
+        }
+        try {
+            return WebPRiffDecoder.decodeInto(src, dst, offset, rowStridePixels, context, options);
+        } catch (RuntimeException e) {
+            throw new WebPDecodeException("Invalid or corrupt WebP", e);
+        }
+    }
+
+    /**
+     * Reads the size, format, alpha and animation flags and chunk locations of a WebP file without decoding pixels.
+     *
+     * <p>Only the RIFF chunk headers and the VP8/VP8L frame header are read. Animated files are reported rather
+     * than rejected, so the result tells whether {@link #decode(byte[])} can handle the file.
+     *
+     * @param webpBytes WebP file bytes; a prefix ending after the VP8/VP8L frame header is enough
+     * @return header information
+     * @throws WebPDecodeException if the headers are invalid or truncated
+     */
+    public static WebPInfo probe(byte[] webpBytes) throws WebPDecodeException {
+        return probe(ByteBuffer.wrap(webpBytes));
+    }
+
+    /**
+     * Reads the headers of the WebP file held in {@code src} between its position and limit, without decoding
+     * pixels. Offsets in the result are relative to the position; {@code src} itself is left unchanged.
+     *
+     * @param src WebP file bytes; a prefix ending after the VP8/VP8L frame header is enough
+     * @return header information
+     * @throws WebPDecodeException if the headers are invalid or truncated
+     * @see #probe(byte[])
+     */
+    public static WebPInfo probe(ByteBuffer src) throws WebPDecodeException {
+        Objects.requireNonNull(src, "src");
+        try {
+            return WebPRiffDecoder.probe(src);
+        } catch (RuntimeException e) {
+            throw new WebPDecodeException("Invalid or corrupt WebP", e);
+        }
+    }
 }
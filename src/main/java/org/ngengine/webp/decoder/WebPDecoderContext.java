@@ -0,0 +1,30 @@
+package org.ngengine.webp.decoder;
+
+/**
+ * Reusable decoder state for decoding many images in sequence.
+ *
+ * <p>A context keeps the VP8 probability tables, arithmetic decoders and frame-sized working buffers between
+ * decodes. Each decode resets that state, and buffers are only reallocated when an image needs more room than
+ * any previous one. Output buffers still come from the caller's allocator.
+ *
+ * <p>Contexts are not thread-safe. Use one per thread, for example
+ * {@code ThreadLocal.withInitial(WebPDecoderContext::new)}.
+ */
+public final class WebPDecoderContext {
+    private Vp8Decoder.Decoder vp8;
+
+    /** Creates an empty context; working buffers are allocated on first use. */
+    public WebPDecoderContext() {}
+
+    /** Drops all retained working buffers, e.g. after an unusually large image. The context stays usable. */
+    public void clear() {
+        vp8 = null;
+    }
+
+    Vp8Decoder.Decoder vp8() {
+        if (vp8 == null) {
+            vp8 = new Vp8Decoder.Decoder();
+        }
+        return vp8;
+    }
+}
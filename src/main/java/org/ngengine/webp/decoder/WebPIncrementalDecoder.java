@@ -0,0 +1,240 @@
+package org.ngengine.webp.decoder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Decodes a WebP still image while its bytes are still arriving.
+ *
+ * <p>Feed the file in pieces of any size with {@link #feed(ByteBuffer)}. The RIFF headers are parsed as soon as
+ * they are complete. From then on {@link #width()}, {@link #height()} and {@link #rgba()} are available, and the
+ * first {@link #completedRows()} rows of {@link #rgba()} hold final pixels. Lossy images are decoded macroblock row
+ * by macroblock row and lossless images pixel row by pixel row, as their data arrives.
+ *
+ * <p>Instances are not thread-safe and decode a single image.
+ */
+public final class WebPIncrementalDecoder {
+    /** Decoding progress. */
+    public enum Status {
+        /** The image size and format are not known yet. */
+        HEADERS,
+        /** The output buffer exists and rows are being completed. */
+        DECODING,
+        /** The whole image is decoded; trailing input is ignored. */
+        DONE
+    }
+
+    private final IntFunction<ByteBuffer> rgbaAllocator;
+    private final WebPDecoderContext context;
+
+    private byte[] data = new byte[4096];
+    /** Little-endian view of {@link #data}, replaced whenever the array grows. */
+    private ByteBuffer view = wrap(data);
+    private int size;
+    private Status status = Status.HEADERS;
+    private boolean failed;
+
+    private int width;
+    private int height;
+    private boolean hasAlpha;
+    private int alphOff;
+    private int alphLen;
+    private int imageOff;
+    private int imageLen;
+    private boolean lossless;
+
+    private ByteBuffer rgba;
+    private PixelWriter writer;
+    private int completedRows;
+    private boolean vp8Started;
+    private Vp8LDecoder.Incremental vp8l;
+    private AlphaChunkDecoder.AlphaPlane alpha;
+
+    /** Creates a decoder that allocates its output with {@link ByteBuffer#allocate}. */
+    public WebPIncrementalDecoder() {
+        this(ByteBuffer::allocate, new WebPDecoderContext());
+    }
+
+    /**
+     * Creates a decoder with a custom output allocator and reusable decoder state.
+     *
+     * @param rgbaAllocator Allocator used for the output RGBA buffer.
+     *                      The returned buffer may be direct; code must not assume array-backed buffers.
+     * @param context reusable decoder state; must not be used elsewhere until this decoder is done with it
+     */
+    public WebPIncrementalDecoder(IntFunction<ByteBuffer> rgbaAllocator, WebPDecoderContext context) {
+        this.rgbaAllocator = Objects.requireNonNull(rgbaAllocator, "rgbaAllocator");
+        this.context = Objects.requireNonNull(context, "context");
+    }
+
+    /**
+     * Appends the remaining bytes of {@code chunk} to the input and decodes as far as they allow. The chunk is
+     * consumed completely and may be reused by the caller afterwards.
+     *
+     * @param chunk the next bytes of the file, between its position and limit
+     * @return the status after decoding
+     * @throws WebPDecodeException if the input is invalid or unsupported; the decoder cannot be fed any more
+     * @throws IllegalStateException if an earlier call failed
+     */
+    public Status feed(ByteBuffer chunk) throws WebPDecodeException {
+        if (failed) {
+            throw new IllegalStateException("Decoder failed on earlier input");
+        }
+        if (status == Status.DONE) {
+            chunk.position(chunk.limit());
+            return status;
+        }
+        append(chunk);
+        try {
+            advance();
+        } catch (WebPDecodeException e) {
+            failed = true;
+            throw e;
+        } catch (RuntimeException e) {
+            failed = true;
+            throw new WebPDecodeException("Invalid or corrupt WebP", e);
+        }
+        return status;
+    }
+
+    /**
+     * Returns the current decoding status.
+     *
+     * @return the status after the last {@link #feed(ByteBuffer)}
+     */
+    public Status status() {
+        return status;
+    }
+
+    /**
+     * Returns the image width.
+     *
+     * @return the width in pixels, or 0 while the status is {@link Status#HEADERS}
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Returns the image height.
+     *
+     * @return the height in pixels, or 0 while the status is {@link Status#HEADERS}
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Returns whether the image has an alpha channel.
+     *
+     * @return whether the file declares transparency; {@code false} while the status is {@link Status#HEADERS}
+     */
+    public boolean hasAlpha() {
+        return hasAlpha;
+    }
+
+    /**
+     * Returns how many rows, counted from the top, of {@link #rgba()} hold their final pixels.
+     *
+     * @return the number of completed rows, between 0 and {@link #height()}
+     */
+    public int completedRows() {
+        return completedRows;
+    }
+
+    /**
+     * Returns the RGBA8888 output buffer (position 0, limit {@code width * height * 4}), or {@code null} while the
+     * status is {@link Status#HEADERS}. Rows past {@link #completedRows()} are undefined.
+     *
+     * @return the output buffer, or {@code null}
+     */
+    public ByteBuffer rgba() {
+        return rgba;
+    }
+
+    /**
+     * Returns the decoded image.
+     *
+     * @return the image, backed by {@link #rgba()}
+     * @throws IllegalStateException if the status is not {@link Status#DONE}
+     */
+    public DecodedWebP result() {
+        if (status != Status.DONE) {
+            throw new IllegalStateException("Image not fully decoded: " + status);
+        }
+        return new DecodedWebP(width, height, hasAlpha, rgba);
+    }
+
+    private void append(ByteBuffer chunk) {
+        int n = chunk.remaining();
+        if (n > data.length - size) {
+            data = Arrays.copyOf(data, Math.max(size + n, data.length * 2));
+            view = wrap(data);
+        }
+        chunk.get(data, size, n);
+        size += n;
+    }
+
+    private void advance() throws WebPDecodeException {
+        if (status == Status.HEADERS) {
+            if (!parseHeaders()) return;
+            int rgbaSize = width * height * 4;
+            rgba = rgbaAllocator.apply(rgbaSize);
+            if (rgba == null || rgba.capacity() < rgbaSize) {
+                throw new WebPDecodeException("RGBA allocator returned too-small buffer");
+            }
+            rgba.clear();
+            rgba.limit(rgbaSize);
+            writer = PixelWriter.of(rgba, WebPPixelFormat.RGBA, 0, width * 4);
+            status = Status.DECODING;
+        }
+
+        int available = Math.min(size - imageOff, imageLen);
+        if (lossless) {
+            if (vp8l == null) {
+                vp8l = new Vp8LDecoder.Incremental(width, height, writer::putRow);
+            }
+            completedRows = vp8l.decode(view, imageOff, imageLen, available);
+        } else {
+            Vp8Decoder.Decoder vp8 = context.vp8();
+            if (!vp8Started) {
+                vp8Started = vp8.beginIncremental(view, imageOff, imageLen, available, width, height);
+                if (!vp8Started) return;
+                if (hasAlpha) {
+                    alpha = AlphaChunkDecoder.decode(view, alphOff, alphLen, width, height);
+                }
+            } else {
+                vp8.moreData(view, available);
+            }
+            completedRows = vp8.decodeAvailableRows(writer, alpha);
+        }
+        if (completedRows == height) {
+            status = Status.DONE;
+        }
+    }
+
+    /** Reads the RIFF headers once they are complete; returns {@code false} while more bytes are needed. */
+    private boolean parseHeaders() throws WebPDecodeException {
+        WebPInfo info = WebPRiffDecoder.parseArriving(ByteBuffer.wrap(data, 0, size).order(ByteOrder.LITTLE_ENDIAN));
+        if (info == null) return false;
+        if (info.animated) {
+            throw new WebPDecodeException("Animated WebP not supported in this Java port");
+        }
+        width = info.width;
+        height = info.height;
+        hasAlpha = info.hasAlpha;
+        lossless = info.format == WebPInfo.Format.LOSSLESS;
+        imageOff = info.imageOffset;
+        imageLen = info.imageLength;
+        alphOff = info.alphaOffset;
+        alphLen = info.alphaLength;
+        return true;
+    }
+
+    private static ByteBuffer wrap(byte[] data) {
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,88 @@
+package org.ngengine.webp.decoder;
+
+/**
+ * Container-level facts about a WebP file, read from its headers without decoding any pixels.
+ *
+ * @see WebPDecoder#probe(byte[])
+ */
+public final class WebPInfo {
+    /** Compression used by the image data. */
+    public enum Format {
+        /** VP8 lossy data, possibly with an ALPH chunk. */
+        LOSSY,
+        /** VP8L lossless data. */
+        LOSSLESS,
+        /** Animated file; each frame may be lossy or lossless. */
+        MIXED
+    }
+
+    /** Canvas width in pixels. */
+    public final int width;
+    /** Canvas height in pixels. */
+    public final int height;
+    /** True when the file declares transparency (VP8X alpha flag or VP8L alpha hint). */
+    public final boolean hasAlpha;
+    /** True for animated files, which this decoder cannot decode. */
+    public final boolean animated;
+    /** Compression of the image data. */
+    public final Format format;
+    /** True when the file uses the extended format, i.e. starts with a VP8X chunk. */
+    public final boolean extended;
+
+    /** Offset of the VP8 or VP8L chunk payload from the start of the file, or -1 for animated files. */
+    public final int imageOffset;
+    /** Size in bytes of the VP8 or VP8L chunk payload, or -1 for animated files. */
+    public final int imageLength;
+    /** Offset of the ALPH chunk payload from the start of the file, or -1 if there is none. */
+    public final int alphaOffset;
+    /** Size in bytes of the ALPH chunk payload, or -1 if there is none. */
+    public final int alphaLength;
+
+    WebPInfo(
+            int width,
+            int height,
+            boolean hasAlpha,
+            boolean animated,
+            Format format,
+            boolean extended,
+            int imageOffset,
+            int imageLength,
+            int alphaOffset,
+            int alphaLength
+    ) {
+        this.width = width;
+        this.height = height;
+        this.hasAlpha = hasAlpha;
+        this.animated = animated;
+        this.format = format;
+        this.extended = extended;
+        this.imageOffset = imageOffset;
+        this.imageLength = imageLength;
+        this.alphaOffset = alphaOffset;
+        this.alphaLength = alphaLength;
+    }
+
+    /**
+     * Returns the size of the tightly-packed RGBA8888 buffer a decode of this image needs.
+     *
+     * @return {@code width * height * 4}, in bytes
+     */
+    public long rgbaSize() {
+        return outputSize(WebPPixelFormat.RGBA);
+    }
+
+    /**
+     * Returns the size of the tightly-packed buffer a decode of this image to {@code format} needs.
+     *
+     * @param format output pixel format
+     * @return {@code width * height * format.bytesPerPixel()}, in bytes
+     */
+    public long outputSize(WebPPixelFormat format) {
+        return (long) width * height * format.bytesPerPixel();
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " " + format + (hasAlpha ? " alpha" : "") + (animated ? " animated" : "");
+    }
+}
@@ -0,0 +1,37 @@
+package org.ngengine.webp.decoder;
+
+/**
+ * Byte layout of decoded pixels, selected with {@link WebPDecodeOptions#withPixelFormat}.
+ *
+ * <p>Names list the channels in memory order, one byte each. For packed {@code int[]} ARGB output, as used by
+ * {@code BufferedImage.TYPE_INT_ARGB}, see {@link WebPDecoder#decodeInto(byte[], int[], int, int)}.
+ */
+public enum WebPPixelFormat {
+    /** R, G, B, A. The default. */
+    RGBA(4),
+    /** B, G, R, A; matches little-endian {@code int} ARGB and many GPU upload paths. */
+    BGRA(4),
+    /** A, R, G, B. */
+    ARGB(4),
+    /** R, G, B; alpha is dropped. */
+    RGB(3),
+    /** R, G, B, A with the color channels multiplied by alpha (rounded). */
+    RGBA_PREMULTIPLIED(4),
+    /** B, G, R, A with the color channels multiplied by alpha (rounded). */
+    BGRA_PREMULTIPLIED(4);
+
+    private final int bytesPerPixel;
+
+    WebPPixelFormat(int bytesPerPixel) {
+        this.bytesPerPixel = bytesPerPixel;
+    }
+
+    /**
+     * Returns the number of bytes one pixel takes.
+     *
+     * @return 3 for {@link #RGB}, 4 for the other formats
+     */
+    public int bytesPerPixel() {
+        return bytesPerPixel;
+    }
+}
@@ -14,22 +14,172 @@ final class WebPRiffDecoder {
     }
 
     static DecodedWebP decode(byte[] bytes, IntFunction<ByteBuffer> rgbaAllocator) throws IOException, WebPDecodeException {
-        if (bytes.length < 12) {
+        return decode(bytes, rgbaAllocator, new WebPDecoderContext());
+    }
+
+    static DecodedWebP decode(
+            byte[] bytes,
+            IntFunction<ByteBuffer> rgbaAllocator,
+            WebPDecoderContext context
+    ) throws IOException, WebPDecodeException {
+        return decode(bytes, rgbaAllocator, context, WebPDecodeOptions.DEFAULT);
+    }
+
+    static DecodedWebP decode(
+            byte[] bytes,
+            IntFunction<ByteBuffer> rgbaAllocator,
+            WebPDecoderContext context,
+            WebPDecodeOptions options
+    ) throws IOException, WebPDecodeException {
+        return decode(ByteBuffer.wrap(bytes), rgbaAllocator, context, options);
+    }
+
+    /**
+     * Decodes the file held in {@code src} between its position and limit. The bytes are read in place, so
+     * {@code src} may be a direct or memory-mapped buffer or a slice of one; its position is left unchanged.
+     */
+    static DecodedWebP decode(
+            ByteBuffer src,
+            IntFunction<ByteBuffer> rgbaAllocator,
+            WebPDecoderContext context,
+            WebPDecodeOptions options
+    ) throws IOException, WebPDecodeException {
+        // All readers below use absolute indexes relative to src.position().
+        ByteBuffer bytes = src.slice().order(ByteOrder.LITTLE_ENDIAN);
+        WebPInfo info = parseStill(bytes);
+
+        WebPPixelFormat format = options.pixelFormat();
+        int rowBytes = info.width * format.bytesPerPixel();
+        int size = rowBytes * info.height;
+        ByteBuffer pixels = rgbaAllocator.apply(size);
+        if (pixels == null || pixels.capacity() < size) {
+            throw new WebPDecodeException("RGBA allocator returned too-small buffer");
+        }
+        pixels.clear();
+        pixels.limit(size);
+
+        PixelWriter out = PixelWriter.of(pixels, format, 0, rowBytes);
+        decode(bytes, info, out, context, options);
+        return new DecodedWebP(info.width, info.height, info.hasAlpha, pixels, format);
+    }
+
+    /**
+     * Decodes the file held in {@code src} between its position and limit into {@code dst}, in the pixel format
+     * of {@code options}. Row {@code y} is written at {@code dst[offset + y * stride]}; bytes between rows and
+     * around the image are left untouched. The caller checks that {@code stride} holds a row.
+     */
+    static WebPInfo decodeInto(
+            ByteBuffer src,
+            ByteBuffer dst,
+            int offset,
+            int stride,
+            WebPDecoderContext context,
+            WebPDecodeOptions options
+    ) throws WebPDecodeException {
+        ByteBuffer bytes = src.slice().order(ByteOrder.LITTLE_ENDIAN);
+        WebPInfo info = parseStill(bytes);
+        WebPPixelFormat format = options.pixelFormat();
+        int rowBytes = info.width * format.bytesPerPixel();
+        if ((long) offset + (long) (info.height - 1) * stride + rowBytes > dst.limit()) {
+            throw new WebPDecodeException("Destination too small for " + info.width + "x" + info.height + " image");
+        }
+
+        decode(bytes, info, PixelWriter.of(dst, format, offset, stride), context, options);
+        return info;
+    }
+
+    /**
+     * Decodes the file held in {@code src} between its position and limit into {@code dst} as packed ARGB ints,
+     * row {@code y} starting at {@code dst[offset + y * stride]}. The caller checks that {@code stride} holds a row.
+     */
+    static WebPInfo decodeInto(
+            ByteBuffer src,
+            int[] dst,
+            int offset,
+            int stride,
+            WebPDecoderContext context,
+            WebPDecodeOptions options
+    ) throws WebPDecodeException {
+        ByteBuffer bytes = src.slice().order(ByteOrder.LITTLE_ENDIAN);
+        WebPInfo info = parseStill(bytes);
+        if ((long) offset + (long) (info.height - 1) * stride + info.width > dst.length) {
+            throw new WebPDecodeException("Destination too small for " + info.width + "x" + info.height + " image");
+        }
+
+        decode(bytes, info, PixelWriter.of(dst, offset, stride), context, options);
+        return info;
+    }
+
+    private static WebPInfo parseStill(ByteBuffer bytes) throws WebPDecodeException {
+        WebPInfo info = parse(bytes, true, false);
+        if (info.animated) {
+            throw new WebPDecodeException("Animated WebP not supported in this Java port");
+        }
+        return info;
+    }
+
+    /** Decodes the parsed image and hands its rows to {@code out}. */
+    private static void decode(
+            ByteBuffer bytes,
+            WebPInfo info,
+            PixelWriter out,
+            WebPDecoderContext context,
+            WebPDecodeOptions options
+    ) throws WebPDecodeException {
+        int width = info.width;
+        int height = info.height;
+
+        if (info.format == WebPInfo.Format.LOSSLESS) {
+            Vp8LDecoder.decode(bytes, info.imageOffset, info.imageLength, width, height, false, out::putRow);
+            return;
+        }
+
+        // VP8 lossy; the alpha plane is merged into the rows as they are converted.
+        AlphaChunkDecoder.AlphaPlane alpha = null;
+        if (info.hasAlpha) {
+            alpha = AlphaChunkDecoder.decode(bytes, info.alphaOffset, info.alphaLength, width, height);
+        }
+        Vp8Decoder.decode(bytes, info.imageOffset, info.imageLength, width, height, out, alpha, context.vp8(),
+                options);
+    }
+
+    /**
+     * Reads the headers of the file held in {@code src} between its position and limit; the input may end anywhere
+     * after the VP8/VP8L frame header.
+     */
+    static WebPInfo probe(ByteBuffer src) throws WebPDecodeException {
+        return parse(src.slice().order(ByteOrder.LITTLE_ENDIAN), false, false);
+    }
+
+    /**
+     * Reads the headers of a file of which only {@code bytes[0, limit)} has arrived, {@code bytes} being
+     * little-endian. Returns {@code null} while more bytes are needed, i.e. until the VP8/VP8L chunk starts, with
+     * its frame header unless a VP8X chunk gave the canvas size, and any ALPH chunk in front of it is complete.
+     */
+    static WebPInfo parseArriving(ByteBuffer bytes) throws WebPDecodeException {
+        return parse(bytes, false, true);
+    }
+
+    /**
+     * Walks the RIFF chunks of the little-endian buffer {@code bytes}, starting at index 0, and validates the
+     * headers. Animated files are reported, not rejected. Unless {@code complete} is set, the walk stops at the
+     * first chunk that is cut off by the end of the input instead of failing. With {@code arriving}, input that
+     * ends before the headers do gives {@code null} instead of an exception.
+     */
+    private static WebPInfo parse(ByteBuffer bytes, boolean complete, boolean arriving) throws WebPDecodeException {
+        int length = bytes.limit();
+        if (length < 12) {
+            if (arriving) return null;
             throw new WebPDecodeException("Input too short");
         }
-        ByteBuffer bb = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
 
-        byte[] riff = new byte[4];
-        bb.get(riff);
-        if (!isFourCC(riff, 'R', 'I', 'F', 'F')) {
+        if (!isFourCC(bytes, 0, 'R', 'I', 'F', 'F')) {
             throw new WebPDecodeException("Invalid RIFF signature");
         }
 
-        int riffSize = bb.getInt();
+        int riffSize = bytes.getInt(4);
 
-        byte[] webp = new byte[4];
-        bb.get(webp);
-        if (!isFourCC(webp, 'W', 'E', 'B', 'P')) {
+        if (!isFourCC(bytes, 8, 'W', 'E', 'B', 'P')) {
             throw new WebPDecodeException("Invalid WEBP signature");
         }
 
@@ -37,7 +187,6 @@ final class WebPRiffDecoder {
         int vp8Size = -1;
         int vp8lStart = -1;
         int vp8lSize = -1;
-        int vp8xStart = -1;
         int alphStart = -1;
         int alphSize = -1;
 
@@ -47,70 +196,54 @@ final class WebPRiffDecoder {
         int width = 0;
         int height = 0;
 
-        // For RIFF, size includes everything after the size field. In practice we just bounds-check on the byte[].
-        int maxPos = Math.min(bytes.length, 8 + riffSize);
+        // For RIFF, size includes everything after the size field. In practice we just bounds-check on the input.
+        int maxPos = Math.min(length, 8 + riffSize);
         if (maxPos < 12) {
-            maxPos = bytes.length;
+            maxPos = length;
         }
 
-        while (bb.position() + 8 <= maxPos) {
-            int chunkHeaderPos = bb.position();
-            byte[] fourcc = new byte[4];
-            bb.get(fourcc);
-            int chunkSize = bb.getInt();
+        int pos = 12;
+        while (pos + 8 <= maxPos) {
+            int chunkHeaderPos = pos;
+            int chunkSize = bytes.getInt(pos + 4);
             if (chunkSize < 0) {
                 throw new WebPDecodeException("Invalid chunk size");
             }
-            int dataStart = bb.position();
+            int dataStart = pos + 8;
             int dataEnd = dataStart + chunkSize;
-            if (dataEnd < dataStart || dataEnd > bytes.length) {
+            boolean truncated = dataEnd > length;
+            if (dataEnd < dataStart || (truncated && complete)) {
                 throw new WebPDecodeException("Invalid chunk bounds");
             }
 
-            if (isFourCC(fourcc, 'V', 'P', '8', 'X')) {
+            if (isFourCC(bytes, chunkHeaderPos, 'V', 'P', '8', 'X')) {
                 extended = true;
-                vp8xStart = dataStart;
 
                 if (chunkSize < 10) {
                     throw new WebPDecodeException("Invalid VP8X chunk");
                 }
+                if (arriving && dataStart + 10 > length) return null;
 
-                int flags = bytes[dataStart] & 0xFF;
+                int flags = bytes.get(dataStart) & 0xFF;
                 hasAlpha = (flags & 0b0001_0000) != 0;
                 animated = (flags & 0b0000_0010) != 0;
-                if (animated) {
-                    throw new WebPDecodeException("Animated WebP not supported in this Java port");
-                }
 
                 width = read3LE(bytes, dataStart + 4) + 1;
                 height = read3LE(bytes, dataStart + 7) + 1;
-            } else if (isFourCC(fourcc, 'V', 'P', '8', ' ')) {
+            } else if (isFourCC(bytes, chunkHeaderPos, 'V', 'P', '8', ' ')) {
                 vp8Start = dataStart;
                 vp8Size = chunkSize;
 
                 if (!extended) {
-                    // Parse width/height from VP8 keyframe header.
                     if (chunkSize < 10) {
                         throw new WebPDecodeException("Invalid VP8 chunk");
                     }
-                    int tag = (bytes[dataStart] & 0xFF)
-                            | ((bytes[dataStart + 1] & 0xFF) << 8)
-                            | ((bytes[dataStart + 2] & 0xFF) << 16);
-                    boolean keyframe = (tag & 1) == 0;
-                    if (!keyframe) {
-                        throw new WebPDecodeException("Non-keyframe VP8 not supported");
-                    }
-                    if ((bytes[dataStart + 3] & 0xFF) != 0x9D
-                            || (bytes[dataStart + 4] & 0xFF) != 0x01
-                            || (bytes[dataStart + 5] & 0xFF) != 0x2A) {
-                        throw new WebPDecodeException("Invalid VP8 magic");
-                    }
-                    int w = ((bytes[dataStart + 6] & 0xFF) | ((bytes[dataStart + 7] & 0xFF) << 8)) & 0x3FFF;
-                    int h = ((bytes[dataStart + 8] & 0xFF) | ((bytes[dataStart + 9] & 0xFF) << 8)) & 0x3FFF;
-                    width = w;
-                    height = h;
+                    if (arriving && dataStart + 10 > length) return null;
+                    int size = readVp8Size(bytes, dataStart);
+                    width = size & 0xFFFF;
+                    height = size >>> 16;
                 }
-            } else if (isFourCC(fourcc, 'V', 'P', '8', 'L')) {
+            } else if (isFourCC(bytes, chunkHeaderPos, 'V', 'P', '8', 'L')) {
                 vp8lStart = dataStart;
                 vp8lSize = chunkSize;
 
@@ -118,88 +251,110 @@ final class WebPRiffDecoder {
                     if (chunkSize < 5) {
                         throw new WebPDecodeException("Invalid VP8L chunk");
                     }
-                    int sig = bytes[dataStart] & 0xFF;
-                    if (sig != 0x2F) {
-                        throw new WebPDecodeException("Invalid VP8L signature");
-                    }
-                    int header = (bytes[dataStart + 1] & 0xFF)
-                            | ((bytes[dataStart + 2] & 0xFF) << 8)
-                            | ((bytes[dataStart + 3] & 0xFF) << 16)
-                            | ((bytes[dataStart + 4] & 0xFF) << 24);
-                    int version = header >>> 29;
-                    if (version != 0) {
-                        throw new WebPDecodeException("Unsupported VP8L version: " + version);
-                    }
+                    if (arriving && dataStart + 5 > length) return null;
+                    int header = readVp8lHeader(bytes, dataStart);
                     width = (1 + header) & 0x3FFF;
                     height = (1 + (header >>> 14)) & 0x3FFF;
                     hasAlpha = ((header >>> 28) & 1) != 0;
                 }
-            } else if (isFourCC(fourcc, 'A', 'L', 'P', 'H')) {
+            } else if (isFourCC(bytes, chunkHeaderPos, 'A', 'L', 'P', 'H')) {
                 alphStart = dataStart;
                 alphSize = chunkSize;
             }
 
+            if (truncated) {
+                break;
+            }
+
             // Skip payload (+ padding to even).
             int rounded = chunkSize + (chunkSize & 1);
-            bb.position(dataStart + rounded);
+            pos = dataStart + rounded;
 
             // Guard against malformed sizes that don't advance.
-            if (bb.position() <= chunkHeaderPos) {
+            if (pos <= chunkHeaderPos) {
                 throw new WebPDecodeException("Invalid chunk size (no progress)");
             }
         }
 
+        boolean hasVp8 = vp8Start >= 0;
+        boolean hasVp8l = vp8lStart >= 0;
+        if (arriving && !animated && !hasVp8 && !hasVp8l && length < 8L + Integer.toUnsignedLong(riffSize)) {
+            return null;
+        }
+
         if (width <= 0 || height <= 0) {
             throw new WebPDecodeException("Missing/invalid dimensions");
         }
 
-        boolean hasVp8 = vp8Start >= 0;
-        boolean hasVp8l = vp8lStart >= 0;
+        if (animated) {
+            // Frames live in ANMF chunks, which this decoder does not parse.
+            return new WebPInfo(width, height, hasAlpha, true, WebPInfo.Format.MIXED, extended, -1, -1, -1, -1);
+        }
+
         if (hasVp8 == hasVp8l) {
             throw new WebPDecodeException("Expected exactly one of VP8 or VP8L");
         }
-
-        // Decode.
-        int rgbaSize = width * height * 4;
-        ByteBuffer rgba = rgbaAllocator.apply(rgbaSize);
-        if (rgba == null || rgba.capacity() < rgbaSize) {
-            throw new WebPDecodeException("RGBA allocator returned too-small buffer");
+        if (hasVp8l) {
+            return new WebPInfo(width, height, hasAlpha, false, WebPInfo.Format.LOSSLESS, extended,
+                    vp8lStart, vp8lSize, -1, -1);
         }
-        rgba.clear();
-        rgba.limit(rgbaSize);
+        if (hasAlpha && alphStart < 0) {
+            throw new WebPDecodeException("VP8X alpha flag set but no ALPH chunk found");
+        }
+        return new WebPInfo(width, height, hasAlpha, false, WebPInfo.Format.LOSSY, extended,
+                vp8Start, vp8Size, alphStart, alphSize);
+    }
 
-        if (hasVp8l) {
-            Vp8LDecoder.decodeToRgba(bytes, vp8lStart, vp8lSize, width, height, false, rgba, rgbaAllocator);
-            rgba.position(0);
-            return new DecodedWebP(width, height, hasAlpha, rgba);
+    /**
+     * Validates the 10-byte VP8 keyframe header at {@code bytes[off]} and returns {@code width | height << 16}.
+     */
+    static int readVp8Size(ByteBuffer bytes, int off) throws WebPDecodeException {
+        int tag = read3LE(bytes, off);
+        boolean keyframe = (tag & 1) == 0;
+        if (!keyframe) {
+            throw new WebPDecodeException("Non-keyframe VP8 not supported");
+        }
+        if ((bytes.get(off + 3) & 0xFF) != 0x9D
+                || (bytes.get(off + 4) & 0xFF) != 0x01
+                || (bytes.get(off + 5) & 0xFF) != 0x2A) {
+            throw new WebPDecodeException("Invalid VP8 magic");
         }
+        int w = read16LE(bytes, off + 6) & 0x3FFF;
+        int h = read16LE(bytes, off + 8) & 0x3FFF;
+        return w | (h << 16);
+    }
 
-        // VP8 lossy
-        Vp8Decoder.decodeToRgba(bytes, vp8Start, vp8Size, width, height, rgba);
-        if (hasAlpha) {
-            if (alphStart < 0) {
-                throw new WebPDecodeException("VP8X alpha flag set but no ALPH chunk found");
-            }
-            AlphaChunkDecoder.applyAlph(bytes, alphStart, alphSize, width, height, rgba, rgbaAllocator);
-        } else {
-            // ensure opaque
-            for (int i = 3; i < rgbaSize; i += 4) {
-                rgba.put(i, (byte) 0xFF);
-            }
+    /**
+     * Validates the 5-byte VP8L header at {@code bytes[off]} and returns its 32-bit size/alpha/version word:
+     * width - 1 in bits 0-13, height - 1 in bits 14-27 and the alpha hint in bit 28.
+     */
+    static int readVp8lHeader(ByteBuffer bytes, int off) throws WebPDecodeException {
+        int sig = bytes.get(off) & 0xFF;
+        if (sig != 0x2F) {
+            throw new WebPDecodeException("Invalid VP8L signature");
+        }
+        int header = read16LE(bytes, off + 1) | (read16LE(bytes, off + 3) << 16);
+        int version = header >>> 29;
+        if (version != 0) {
+            throw new WebPDecodeException("Unsupported VP8L version: " + version);
         }
+        return header;
+    }
 
-        rgba.position(0);
-        return new DecodedWebP(width, height, hasAlpha, rgba);
+    /** Reads an unsigned 16-bit little-endian value; independent of the buffer's byte order. */
+    static int read16LE(ByteBuffer b, int off) {
+        return (b.get(off) & 0xFF) | ((b.get(off + 1) & 0xFF) << 8);
     }
 
-    static int read3LE(byte[] b, int off) {
-        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16);
+    /** Reads an unsigned 24-bit little-endian value; independent of the buffer's byte order. */
+    static int read3LE(ByteBuffer b, int off) {
+        return read16LE(b, off) | ((b.get(off + 2) & 0xFF) << 16);
     }
 
-    private static boolean isFourCC(byte[] a, char c0, char c1, char c2, char c3) {
-        return (a[0] & 0xFF) == c0
-                && (a[1] & 0xFF) == c1
-                && (a[2] & 0xFF) == c2
-                && (a[3] & 0xFF) == c3;
+    private static boolean isFourCC(ByteBuffer b, int off, char c0, char c1, char c2, char c3) {
+        return (b.get(off) & 0xFF) == c0
+                && (b.get(off + 1) & 0xFF) == c1
+                && (b.get(off + 2) & 0xFF) == c2
+                && (b.get(off + 3) & 0xFF) == c3;
     }
 }
@@ -84,48 +84,55 @@ final class Yuv {
             throw new WebPDecodeException("Output buffer too small");
         }
 
-        int base = outRgba.position();
-
-        int chromaBufferWidth = bufferWidth / 2;
-        int chromaWidth = (width + 1) / 2;
-
-        // top row
-        fillRowFancyWith1UvRow(outRgba, base, yBuffer, 0, uBuffer, 0, vBuffer, 0, width, chromaWidth);
-
-        int outRow = 1;
-        int yIndex = bufferWidth;
-        int uRowIndex = 0;
-
-        int mainPairs = (height - 1) / 2;
-        for (int i = 0; i < mainPairs; i++) {
-            int outOff1 = base + outRow * width * BPP;
-            int outOff2 = outOff1 + width * BPP;
-
-            int yOff1 = yIndex;
-            int yOff2 = yOff1 + bufferWidth;
-
-            int uOff1 = uRowIndex * chromaBufferWidth;
-            int uOff2 = uOff1 + chromaBufferWidth;
-
-            int vOff1 = uOff1;
-            int vOff2 = uOff2;
-
-            fillRowFancyWith2UvRows(outRgba, outOff1, yBuffer, yOff1, uBuffer, uOff1, uBuffer, uOff2,
-                    vBuffer, vOff1, vBuffer, vOff2, width, chromaWidth);
-            fillRowFancyWith2UvRows(outRgba, outOff2, yBuffer, yOff2, uBuffer, uOff2, uBuffer, uOff1,
-                    vBuffer, vOff2, vBuffer, vOff1, width, chromaWidth);
-
-            outRow += 2;
-            yIndex += bufferWidth * 2;
-            uRowIndex += 1;
+        PixelWriter writer = PixelWriter.of(outRgba, WebPPixelFormat.RGBA, outRgba.position(), width * BPP);
+        int[] row = new int[width];
+        for (int r = 0; r < height; r++) {
+            fillArgbRowFancy(row, 0, yBuffer, 0, bufferWidth, uBuffer, vBuffer, 0, bufferWidth / 2, width, height, r);
+            writer.putRow(r, row, 0, width);
         }
+    }
 
-        if (outRow < height) {
-            int chromaHeight = (height + 1) / 2;
-            int lastUOff = (chromaHeight - 1) * chromaBufferWidth;
-            int outOff = base + outRow * width * BPP;
-            fillRowFancyWith1UvRow(outRgba, outOff, yBuffer, yIndex, uBuffer, lastUOff, vBuffer, lastUOff,
-                    width, chromaWidth);
+    /**
+     * Converts output row {@code row} of a {@code width x height} frame to packed ARGB at {@code out[outOff]}.
+     *
+     * <p>The row reads luma from {@code yBase + row * yStride} and chroma row {@code c} from
+     * {@code uvBase + c * uvStride}. The bases may be negative so that callers can pass a strip that holds only the
+     * rows around {@code row}: it needs its own luma row and the chroma rows {@code (row - 1) / 2} and
+     * {@code (row + 1) / 2}.
+     */
+    static void fillArgbRowFancy(
+            int[] out,
+            int outOff,
+            byte[] yBuffer,
+            int yBase,
+            int yStride,
+            byte[] uBuffer,
+            byte[] vBuffer,
+            int uvBase,
+            int uvStride,
+            int width,
+            int height,
+            int row
+    ) {
+        int chromaWidth = (width + 1) / 2;
+        int yOff = yBase + row * yStride;
+        if (row == 0) {
+            fillRowFancyWith1UvRow(out, outOff, yBuffer, yOff, uBuffer, uvBase, vBuffer, uvBase, width, chromaWidth);
+        } else if ((row & 1) != 0) {
+            int uvOff = uvBase + ((row - 1) >> 1) * uvStride;
+            if (row == height - 1) {
+                fillRowFancyWith1UvRow(out, outOff, yBuffer, yOff, uBuffer, uvOff, vBuffer, uvOff,
+                        width, chromaWidth);
+            } else {
+                int uvNext = uvOff + uvStride;
+                fillRowFancyWith2UvRows(out, outOff, yBuffer, yOff, uBuffer, uvOff, uBuffer, uvNext,
+                        vBuffer, uvOff, vBuffer, uvNext, width, chromaWidth);
+            }
+        } else {
+            int uvOff = uvBase + (row >> 1) * uvStride;
+            int uvPrev = uvOff - uvStride;
+            fillRowFancyWith2UvRows(out, outOff, yBuffer, yOff, uBuffer, uvOff, uBuffer, uvPrev,
+                    vBuffer, uvOff, vBuffer, uvPrev, width, chromaWidth);
         }
     }
 
@@ -197,7 +204,7 @@ final class Yuv {
     }
 
     private static void fillRowFancyWith2UvRows(
-            ByteBuffer outRgba,
+            int[] outArgb,
             int outOff,
             byte[] yRow,
             int yOff,
@@ -217,10 +224,10 @@ final class Yuv {
             int y = yRow[yOff] & 0xFF;
             int u = getFancyChromaValue(uRow1[u1Off] & 0xFF, uRow1[u1Off] & 0xFF, uRow2[u2Off] & 0xFF, uRow2[u2Off] & 0xFF);
             int v = getFancyChromaValue(vRow1[v1Off] & 0xFF, vRow1[v1Off] & 0xFF, vRow2[v2Off] & 0xFF, vRow2[v2Off] & 0xFF);
-            setPixel(outRgba, outOff, y, u, v);
+            setPixel(outArgb, outOff, y, u, v);
         }
 
-        int out = outOff + BPP;
+        int out = outOff + 1;
         int yIdx = yOff + 1;
         int win = 0;
 
@@ -241,13 +248,13 @@ final class Yuv {
 
             int uA = getFancyChromaValue(u10, u11, u20, u21);
             int vA = getFancyChromaValue(v10, v11, v20, v21);
-            setPixel(outRgba, out, y0, uA, vA);
+            setPixel(outArgb, out, y0, uA, vA);
 
             int uB = getFancyChromaValue(u11, u10, u21, u20);
             int vB = getFancyChromaValue(v11, v10, v21, v20);
-            setPixel(outRgba, out + BPP, y1, uB, vB);
+            setPixel(outArgb, out + 1, y1, uB, vB);
 
-            out += 2 * BPP;
+            out += 2;
             win += 1;
         }
 
@@ -259,7 +266,7 @@ final class Yuv {
             int lastV2 = vRow2[v2Off + chromaWidth - 1] & 0xFF;
             int u = getFancyChromaValue(lastU1, lastU1, lastU2, lastU2);
             int v = getFancyChromaValue(lastV1, lastV1, lastV2, lastV2);
-            setPixel(outRgba, out, y, u, v);
+            setPixel(outArgb, out, y, u, v);
         }
     }
 
@@ -318,7 +325,7 @@ final class Yuv {
     }
 
     private static void fillRowFancyWith1UvRow(
-            ByteBuffer outRgba,
+            int[] outArgb,
             int outOff,
             byte[] yRow,
             int yOff,
@@ -334,10 +341,10 @@ final class Yuv {
             int y = yRow[yOff] & 0xFF;
             int u = uRow[uOff] & 0xFF;
             int v = vRow[vOff] & 0xFF;
-            setPixel(outRgba, outOff, y, u, v);
+            setPixel(outArgb, outOff, y, u, v);
         }
 
-        int out = outOff + BPP;
+        int out = outOff + 1;
         int yIdx = yOff + 1;
         int win = 0;
 
@@ -353,13 +360,13 @@ final class Yuv {
 
             int uA = getFancyChromaValue(u0, u1, u0, u1);
             int vA = getFancyChromaValue(v0, v1, v0, v1);
-            setPixel(outRgba, out, y0, uA, vA);
+            setPixel(outArgb, out, y0, uA, vA);
 
             int uB = getFancyChromaValue(u1, u0, u1, u0);
             int vB = getFancyChromaValue(v1, v0, v1, v0);
-            setPixel(outRgba, out + BPP, y1, uB, vB);
+            setPixel(outArgb, out + 1, y1, uB, vB);
 
-            out += 2 * BPP;
+            out += 2;
             win += 1;
         }
 
@@ -367,7 +374,7 @@ final class Yuv {
             int y = yRow[yIdx] & 0xFF;
             int u = uRow[uOff + chromaWidth - 1] & 0xFF;
             int v = vRow[vOff + chromaWidth - 1] & 0xFF;
-            setPixel(outRgba, out, y, u, v);
+            setPixel(outArgb, out, y, u, v);
         }
     }
 
@@ -382,11 +389,8 @@ final class Yuv {
         out[off + 3] = (byte) 0xFF;
     }
 
-    private static void setPixel(ByteBuffer out, int off, int y, int u, int v) {
-        out.put(off, (byte) yuvToR(y, v));
-        out.put(off + 1, (byte) yuvToG(y, u, v));
-        out.put(off + 2, (byte) yuvToB(y, u));
-        out.put(off + 3, (byte) 0xFF);
+    private static void setPixel(int[] out, int off, int y, int u, int v) {
+        out[off] = 0xFF00_0000 | (yuvToR(y, v) << 16) | (yuvToG(y, u, v) << 8) | yuvToB(y, u);
     }
 
     private static int mulhi(int v, int coeff) {
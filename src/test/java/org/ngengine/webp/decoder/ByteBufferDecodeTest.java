@@ -0,0 +1,82 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.ngengine.webp.decoder.TestFixtures.read;
+import static org.ngengine.webp.decoder.TestFixtures.toByteArray;
+
+/** Decodes from heap, direct and memory-mapped buffers and compares with the byte[] entry point. */
+final class ByteBufferDecodeTest {
+    private static final String[] FIXTURES = {
+            "gallery1/1",
+            "gallery2/1_webp_a",
+            "gallery2/1_webp_ll",
+            "regression/tiny",
+    };
+
+    @Test
+    void heapAndDirectSlicesMatchByteArrayDecode() throws Exception {
+        for (String fixture : FIXTURES) {
+            byte[] webp = read(fixture);
+            byte[] expected = toByteArray(WebPDecoder.decode(webp).rgba);
+
+            // Image embedded in a larger buffer, selected by position/limit.
+            ByteBuffer heap = ByteBuffer.allocate(webp.length + 100);
+            heap.position(37);
+            heap.put(webp);
+            heap.position(37).limit(37 + webp.length);
+            assertArrayEquals(expected, toByteArray(WebPDecoder.decode(heap).rgba), fixture + " heap");
+            assertEquals(37, heap.position(), "position must be left unchanged");
+            assertEquals(ByteOrder.BIG_ENDIAN, heap.order());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(webp.length + 3).order(ByteOrder.LITTLE_ENDIAN);
+            direct.position(3);
+            direct.put(webp);
+            direct.position(3);
+            ByteBuffer slice = direct.slice().asReadOnlyBuffer();
+            assertArrayEquals(expected, toByteArray(WebPDecoder.decode(slice).rgba), fixture + " direct");
+        }
+    }
+
+    @Test
+    void mappedPackFileMatchesByteArrayDecode(@TempDir Path dir) throws Exception {
+        Path pack = dir.resolve("pack.bin");
+        int[] offsets = new int[FIXTURES.length];
+        int[] lengths = new int[FIXTURES.length];
+        try (FileChannel ch = FileChannel.open(pack, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < FIXTURES.length; i++) {
+                byte[] webp = read(FIXTURES[i]);
+                ch.write(ByteBuffer.wrap(new byte[i + 1]));
+                offsets[i] = (int) ch.position();
+                lengths[i] = webp.length;
+                ch.write(ByteBuffer.wrap(webp));
+            }
+        }
+
+        try (FileChannel ch = FileChannel.open(pack, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            for (int i = 0; i < FIXTURES.length; i++) {
+                byte[] expected = toByteArray(WebPDecoder.decode(read(FIXTURES[i])).rgba);
+                mapped.limit(offsets[i] + lengths[i]).position(offsets[i]);
+                assertArrayEquals(expected, toByteArray(WebPDecoder.decode(mapped).rgba), FIXTURES[i]);
+                mapped.clear();
+            }
+        }
+    }
+
+    @Test
+    void truncatedBufferIsRejected() throws Exception {
+        byte[] webp = read("gallery1/1");
+        ByteBuffer truncated = ByteBuffer.wrap(webp, 0, webp.length / 2);
+        assertThrows(WebPDecodeException.class, () -> WebPDecoder.decode(truncated));
+    }
+}
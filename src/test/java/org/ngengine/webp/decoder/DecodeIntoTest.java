@@ -0,0 +1,91 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.ngengine.webp.decoder.TestFixtures.read;
+import static org.ngengine.webp.decoder.TestFixtures.toByteArray;
+
+/** Decodes into sub-rectangles of larger buffers and checks the surrounding bytes stay untouched. */
+final class DecodeIntoTest {
+    private static final String[] FIXTURES = {
+            "gallery1/2",
+            "gallery2/3_webp_a",
+            "gallery2/3_webp_ll",
+            "regression/color_index",
+            "regression/tiny",
+    };
+    private static final byte FILL = 0x5A;
+
+    @Test
+    void stridedRegionMatchesPackedDecode() throws Exception {
+        for (String fixture : FIXTURES) {
+            byte[] webp = read(fixture);
+            DecodedWebP expected = WebPDecoder.decode(webp);
+            int rowBytes = expected.width * 4;
+            for (int pad : new int[] {0, 12}) {
+                for (boolean direct : new boolean[] {false, true}) {
+                    int stride = rowBytes + pad;
+                    int offset = 13;
+                    int size = offset + stride * expected.height + 7;
+                    ByteBuffer dst = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+                    for (int i = 0; i < size; i++) {
+                        dst.put(i, FILL);
+                    }
+                    dst.position(5).limit(size - 1);
+
+                    WebPInfo info = WebPDecoder.decodeInto(webp, dst, offset, stride);
+
+                    String label = fixture + " pad=" + pad + " direct=" + direct;
+                    assertEquals(expected.width, info.width, label);
+                    assertEquals(expected.height, info.height, label);
+                    assertEquals(5, dst.position(), label);
+                    assertEquals(size - 1, dst.limit(), label);
+                    byte[] actual = new byte[size];
+                    dst.duplicate().clear().get(actual);
+                    assertRegion(label, toByteArray(expected.rgba), actual, offset, stride, rowBytes, expected.height);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsBadArguments() throws Exception {
+        byte[] webp = read("regression/tiny");
+        WebPInfo info = WebPDecoder.probe(webp);
+        int rowBytes = info.width * 4;
+        ByteBuffer dst = ByteBuffer.allocate(rowBytes * info.height);
+
+        assertThrows(IllegalArgumentException.class, () -> WebPDecoder.decodeInto(webp, dst, -1, rowBytes));
+        assertThrows(IllegalArgumentException.class, () -> WebPDecoder.decodeInto(webp, dst, 0, rowBytes - 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> WebPDecoder.decodeInto(webp, dst.asReadOnlyBuffer(), 0, rowBytes));
+        assertThrows(WebPDecodeException.class, () -> WebPDecoder.decodeInto(webp, dst, 1, rowBytes));
+        assertThrows(WebPDecodeException.class, () -> WebPDecoder.decodeInto(webp, dst, 0, rowBytes + 4));
+        WebPDecoder.decodeInto(webp, dst, 0, rowBytes);
+    }
+
+    private static void assertRegion(
+            String label,
+            byte[] expected,
+            byte[] actual,
+            int offset,
+            int stride,
+            int rowBytes,
+            int height
+    ) {
+        byte[] outside = actual.clone();
+        for (int y = 0; y < height; y++) {
+            int at = offset + y * stride;
+            assertArrayEquals(Arrays.copyOfRange(expected, y * rowBytes, (y + 1) * rowBytes),
+                    Arrays.copyOfRange(actual, at, at + rowBytes), label + " row " + y);
+            Arrays.fill(outside, at, at + rowBytes, FILL);
+        }
+        byte[] untouched = new byte[actual.length];
+        Arrays.fill(untouched, FILL);
+        assertArrayEquals(untouched, outside, label + " bytes outside the image");
+    }
+}
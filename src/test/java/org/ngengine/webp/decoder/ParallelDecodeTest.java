@@ -0,0 +1,99 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.ngengine.webp.decoder.TestFixtures.read;
+import static org.ngengine.webp.decoder.TestFixtures.toByteArray;
+
+/** Checks that pipelined lossy decoding gives the same pixels as the single-threaded path. */
+final class ParallelDecodeTest {
+    private static final String[] LOSSY_FIXTURES = {
+            "gallery1/1",
+            "gallery1/3",
+            "gallery1/4",
+            "gallery2/1_webp_a",
+            "gallery2/4_webp_a",
+            "regression/tiny",
+    };
+
+    @Test
+    void threadedDecodeMatchesSerial() throws Exception {
+        WebPDecoderContext context = new WebPDecoderContext();
+        for (String fixture : LOSSY_FIXTURES) {
+            byte[] webp = read(fixture);
+            byte[] expected = toByteArray(WebPDecoder.decode(webp).rgba);
+            for (int threads = 2; threads <= 4; threads++) {
+                WebPDecodeOptions options = WebPDecodeOptions.DEFAULT.withThreads(threads);
+                DecodedWebP decoded = WebPDecoder.decode(webp, ByteBuffer::allocateDirect, context, options);
+                assertArrayEquals(expected, toByteArray(decoded.rgba), fixture + " threads=" + threads);
+            }
+        }
+    }
+
+    @Test
+    void callerExecutorMatchesSerial() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            WebPDecodeOptions options = WebPDecodeOptions.DEFAULT.withThreads(3).withExecutor(executor);
+            for (String fixture : LOSSY_FIXTURES) {
+                byte[] webp = read(fixture);
+                byte[] expected = toByteArray(WebPDecoder.decode(webp).rgba);
+                assertArrayEquals(expected, toByteArray(WebPDecoder.decode(webp, options).rgba), fixture);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void executorsThatDoNotRunStagesFallBackToTheDecodingThread() throws Exception {
+        ExecutorService busy = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        busy.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Executor[] executors = {
+                Runnable::run,
+                task -> {},
+                task -> {
+                    throw new RejectedExecutionException();
+                },
+                busy,
+        };
+        try {
+            for (Executor executor : executors) {
+                for (int threads = 2; threads <= 3; threads++) {
+                    WebPDecodeOptions options = WebPDecodeOptions.DEFAULT.withThreads(threads).withExecutor(executor);
+                    for (String fixture : LOSSY_FIXTURES) {
+                        byte[] webp = read(fixture);
+                        byte[] expected = toByteArray(WebPDecoder.decode(webp).rgba);
+                        byte[] actual = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                                () -> toByteArray(WebPDecoder.decode(webp, options).rgba));
+                        assertArrayEquals(expected, actual, fixture + " threads=" + threads);
+                    }
+                }
+            }
+        } finally {
+            release.countDown();
+            busy.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectsInvalidThreadCount() {
+        assertThrows(IllegalArgumentException.class, () -> WebPDecodeOptions.DEFAULT.withThreads(0));
+    }
+}
@@ -0,0 +1,131 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.ngengine.webp.decoder.TestFixtures.read;
+import static org.ngengine.webp.decoder.TestFixtures.toByteArray;
+
+/** Checks every {@link WebPPixelFormat} and {@code int[]} output against a conversion of the RGBA decode. */
+final class PixelFormatTest {
+    private static final String[] FIXTURES = {
+            "gallery1/5",
+            "gallery2/2_webp_a",
+            "gallery2/2_webp_ll",
+            "regression/lossless_indexed_2bit_palette",
+    };
+
+    @Test
+    void formatsMatchConvertedRgba() throws Exception {
+        for (String fixture : FIXTURES) {
+            byte[] webp = read(fixture);
+            byte[] rgba = toByteArray(WebPDecoder.decode(webp).rgba);
+            for (WebPPixelFormat format : WebPPixelFormat.values()) {
+                WebPDecodeOptions options = WebPDecodeOptions.DEFAULT.withPixelFormat(format);
+                DecodedWebP decoded = WebPDecoder.decode(webp, options);
+                assertEquals(format, decoded.format);
+                assertArrayEquals(convert(rgba, format), toByteArray(decoded.rgba), fixture + " " + format);
+            }
+        }
+    }
+
+    @Test
+    void threadedAndStridedOutputUseTheFormat() throws Exception {
+        byte[] webp = read("gallery2/2_webp_a");
+        byte[] rgba = toByteArray(WebPDecoder.decode(webp).rgba);
+        WebPInfo info = WebPDecoder.probe(webp);
+        WebPPixelFormat format = WebPPixelFormat.BGRA_PREMULTIPLIED;
+        byte[] expected = convert(rgba, format);
+
+        WebPDecodeOptions options = WebPDecodeOptions.DEFAULT.withPixelFormat(format).withThreads(3);
+        assertArrayEquals(expected, toByteArray(WebPDecoder.decode(webp, options).rgba));
+
+        int rowBytes = info.width * 4;
+        ByteBuffer dst = ByteBuffer.allocateDirect((rowBytes + 8) * info.height);
+        WebPDecoder.decodeInto(ByteBuffer.wrap(webp), dst, 0, rowBytes + 8, new WebPDecoderContext(), options);
+        for (int y = 0; y < info.height; y++) {
+            for (int i = 0; i < rowBytes; i++) {
+                assertEquals(expected[y * rowBytes + i], dst.get(y * (rowBytes + 8) + i), "row " + y);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> WebPDecoder.decodeInto(ByteBuffer.wrap(webp), dst, 0,
+                info.width * 3, new WebPDecoderContext(), options));
+    }
+
+    @Test
+    void intArgbOutputMatchesRgba() throws Exception {
+        for (String fixture : FIXTURES) {
+            byte[] webp = read(fixture);
+            byte[] rgba = toByteArray(WebPDecoder.decode(webp).rgba);
+            WebPInfo info = WebPDecoder.probe(webp);
+            int stride = info.width + 3;
+            int[] argb = new int[2 + stride * info.height];
+            argb[0] = 0x12345678;
+            WebPDecoder.decodeInto(webp, argb, 2, stride);
+
+            assertEquals(0x12345678, argb[0], fixture);
+            for (int y = 0; y < info.height; y++) {
+                for (int x = 0; x < info.width; x++) {
+                    int p = (y * info.width + x) * 4;
+                    int expected = (rgba[p + 3] & 0xFF) << 24 | (rgba[p] & 0xFF) << 16
+                            | (rgba[p + 1] & 0xFF) << 8 | (rgba[p + 2] & 0xFF);
+                    assertEquals(expected, argb[2 + y * stride + x], fixture + " (" + x + ", " + y + ")");
+                }
+                if (y + 1 < info.height) {
+                    assertEquals(0, argb[2 + y * stride + info.width], fixture + " padding");
+                }
+            }
+            assertThrows(IllegalArgumentException.class, () -> WebPDecoder.decodeInto(webp, argb, 0, info.width - 1));
+            assertThrows(WebPDecodeException.class, () -> WebPDecoder.decodeInto(webp, argb, 6, stride));
+        }
+    }
+
+    @Test
+    void premultiplyRoundsToNearest() {
+        for (int a = 0; a < 256; a++) {
+            for (int c = 0; c < 256; c++) {
+                int expected = (int) Math.round(c * a / 255.0);
+                int got = PixelWriter.premultiply(a << 24 | c << 16 | c << 8 | c);
+                assertEquals(a << 24 | expected * 0x010101, got, "a=" + a + " c=" + c);
+            }
+        }
+    }
+
+    private static byte[] convert(byte[] rgba, WebPPixelFormat format) {
+        int pixels = rgba.length / 4;
+        int bpp = format.bytesPerPixel();
+        byte[] out = new byte[pixels * bpp];
+        for (int i = 0; i < pixels; i++) {
+            int r = rgba[i * 4] & 0xFF;
+            int g = rgba[i * 4 + 1] & 0xFF;
+            int b = rgba[i * 4 + 2] & 0xFF;
+            int a = rgba[i * 4 + 3] & 0xFF;
+            if (format == WebPPixelFormat.RGBA_PREMULTIPLIED || format == WebPPixelFormat.BGRA_PREMULTIPLIED) {
+                r = (int) Math.round(r * a / 255.0);
+                g = (int) Math.round(g * a / 255.0);
+                b = (int) Math.round(b * a / 255.0);
+            }
+            int[] channels;
+            switch (format) {
+                case BGRA:
+                case BGRA_PREMULTIPLIED:
+                    channels = new int[] {b, g, r, a};
+                    break;
+                case ARGB:
+                    channels = new int[] {a, r, g, b};
+                    break;
+                case RGB:
+                    channels = new int[] {r, g, b};
+                    break;
+                default:
+                    channels = new int[] {r, g, b, a};
+            }
+            for (int c = 0; c < bpp; c++) {
+                out[i * bpp + c] = (byte) channels[c];
+            }
+        }
+        return out;
+    }
+}
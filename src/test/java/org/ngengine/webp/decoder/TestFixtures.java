@@ -0,0 +1,25 @@
+package org.ngengine.webp.decoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Fixture loading and buffer helpers shared by the decoder tests. */
+final class TestFixtures {
+    private TestFixtures() {}
+
+    /** Reads {@code tests/images/<fixture>.webp}, e.g. {@code read("gallery1/1")}. */
+    static byte[] read(String fixture) throws IOException {
+        return Files.readAllBytes(Path.of(".", "tests", "images", fixture + ".webp"));
+    }
+
+    /** Copies {@code buffer[0, limit)}, whatever its position. */
+    static byte[] toByteArray(ByteBuffer buffer) {
+        ByteBuffer bb = buffer.duplicate();
+        bb.rewind();
+        byte[] out = new byte[bb.remaining()];
+        bb.get(out);
+        return out;
+    }
+}
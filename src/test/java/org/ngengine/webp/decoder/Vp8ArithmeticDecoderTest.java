@@ -2,7 +2,10 @@ package org.ngengine.webp.decoder;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -44,4 +47,58 @@ final class Vp8ArithmeticDecoderTest {
         Vp8ArithmeticDecoder dec = new Vp8ArithmeticDecoder();
         assertThrows(WebPDecodeException.class, dec::readFlag);
     }
+
+    @Test
+    void extendedPrefixDecodesLikeWholePartition() throws Exception {
+        Random rnd = new Random(0x22);
+        byte[] data = new byte[1200];
+        rnd.nextBytes(data);
+        // Little-endian, like the decoders' own views, with the partition not at offset 0.
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int off = 5;
+        int len = data.length - off;
+
+        Vp8ArithmeticDecoder whole = new Vp8ArithmeticDecoder();
+        whole.init(buf, off, len);
+        Vp8ArithmeticDecoder partial = new Vp8ArithmeticDecoder();
+        int given = 3;
+        partial.init(buf, off, given);
+        Vp8ArithmeticDecoder.Position saved = new Vp8ArithmeticDecoder.Position();
+
+        for (int i = 0; i < 600; i++) {
+            int kind = rnd.nextInt(3);
+            int prob = rnd.nextInt(256);
+            int expected = read(whole, kind, prob);
+            while (true) {
+                partial.save(saved);
+                int actual;
+                try {
+                    actual = read(partial, kind, prob);
+                } catch (WebPDecodeException e) {
+                    // Past the tolerated byte as well; the retry below covers it.
+                    assertTrue(partial.usedFinalBytes());
+                    actual = -1;
+                }
+                if (!partial.usedFinalBytes() || given == len) {
+                    assertEquals(expected, actual, "read " + i);
+                    break;
+                }
+                // Read into the tolerated byte of an incomplete partition: rewind and wait for more data.
+                partial.restore(saved);
+                given = Math.min(len, given + 1 + rnd.nextInt(9));
+                partial.extend(buf, off, given);
+            }
+        }
+    }
+
+    private static int read(Vp8ArithmeticDecoder dec, int kind, int prob) throws WebPDecodeException {
+        switch (kind) {
+            case 0:
+                return dec.readBool(prob) ? 1 : 0;
+            case 1:
+                return dec.readFlag() ? 1 : 0;
+            default:
+                return dec.readLiteral(1 + prob % 12);
+        }
+    }
 }
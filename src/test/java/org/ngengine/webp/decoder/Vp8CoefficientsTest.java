@@ -0,0 +1,98 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Compares the unrolled coefficient reader with a generic walk over {@link Vp8Common#DCT_TOKEN_TREE}. */
+final class Vp8CoefficientsTest {
+    @Test
+    void readCoefficientsMatchesTreeWalk() throws Exception {
+        Random rnd = new Random(0x21);
+        for (int round = 0; round < 200; round++) {
+            byte[] probs = Vp8Common.newDefaultTokenProbs();
+            if (round % 2 == 1) {
+                // Skewed probabilities reach the long zero runs and large categories more often.
+                for (int i = 0; i < probs.length; i++) {
+                    probs[i] = (byte) (1 + rnd.nextInt(255));
+                }
+            }
+            byte[] partition = new byte[256];
+            rnd.nextBytes(partition);
+
+            Vp8ArithmeticDecoder actualDec = new Vp8ArithmeticDecoder();
+            Vp8ArithmeticDecoder expectedDec = new Vp8ArithmeticDecoder();
+            actualDec.init(partition, partition.length);
+            expectedDec.init(partition, partition.length);
+            for (int blockNo = 0; blockNo < 20; blockNo++) {
+                int plane = rnd.nextInt(4);
+                int first = plane == 0 ? 1 : 0;
+                int ctx = rnd.nextInt(3);
+                short dcq = (short) (1 + rnd.nextInt(150));
+                short acq = (short) (1 + rnd.nextInt(150));
+
+                int[] actual = new int[20];
+                int end = Vp8Decoder.Decoder.readCoefficients(
+                        actualDec, probs, plane, ctx, first, dcq, acq, actual, 4);
+                int[] expected = new int[16];
+                boolean expectedNz = reference(expectedDec, probs, plane, ctx, first, dcq, acq, expected);
+
+                String where = "round " + round + " block " + blockNo;
+                assertArrayEquals(expected, Arrays.copyOfRange(actual, 4, 20), where);
+                assertEquals(expectedNz, end > first, where);
+                for (int i = end; i < 16; i++) {
+                    assertEquals(0, expected[Vp8Common.ZIGZAG[i]], where + " past end " + end);
+                }
+                assertEquals(expectedDec.readLiteral(8), actualDec.readLiteral(8), where);
+            }
+        }
+    }
+
+    /** The token loop as it was written against per-context {@link Vp8TreeNode} trees. */
+    private static boolean reference(Vp8ArithmeticDecoder dec, byte[] probs, int plane, int ctx, int first,
+                                     short dcq, short acq, int[] block) throws WebPDecodeException {
+        boolean hasCoeffs = false;
+        boolean skip = false;
+        for (int i = first; i < 16; i++) {
+            int at = plane * Vp8Common.TOKEN_PROBS_PER_PLANE + Vp8Common.COEFF_BANDS[i] * Vp8Common.TOKEN_PROBS_PER_BAND
+                    + ctx * Vp8Common.TOKEN_PROBS_PER_CTX;
+            short[] nodeProbs = new short[Vp8Common.TOKEN_PROBS_PER_CTX];
+            for (int t = 0; t < nodeProbs.length; t++) {
+                nodeProbs[t] = (short) (probs[at + t] & 0xFF);
+            }
+            Vp8TreeNode[] tree = Vp8Common.treeNodesFrom(Vp8Common.DCT_TOKEN_TREE, nodeProbs);
+            int token = dec.readWithTreeWithFirstNode(tree, tree[skip ? 1 : 0]);
+
+            int absValue;
+            if (token == Vp8Common.DCT_EOB) {
+                break;
+            } else if (token == Vp8Common.DCT_0) {
+                skip = true;
+                hasCoeffs = true;
+                ctx = 0;
+                continue;
+            } else if (token <= Vp8Common.DCT_4) {
+                absValue = token;
+            } else {
+                int extra = 0;
+                for (short pr : Vp8Common.PROB_DCT_CAT[token - Vp8Common.DCT_CAT1]) {
+                    if (pr == 0) break;
+                    extra = extra + extra + (dec.readBool(pr) ? 1 : 0);
+                }
+                absValue = Vp8Common.DCT_CAT_BASE[token - Vp8Common.DCT_CAT1] + extra;
+            }
+            skip = false;
+            ctx = absValue == 1 ? 1 : 2;
+            if (dec.readSign()) {
+                absValue = -absValue;
+            }
+            int zigzag = Vp8Common.ZIGZAG[i];
+            block[zigzag] = absValue * (zigzag > 0 ? acq : dcq);
+            hasCoeffs = true;
+        }
+        return hasCoeffs;
+    }
+}
@@ -0,0 +1,55 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.ngengine.webp.decoder.TestFixtures.read;
+
+/** Checks that lossy decoding with a warm context does not allocate per macroblock. */
+final class Vp8DecoderAllocationTest {
+    // A 1280x720 frame has 3600 macroblocks; one int[384] each would already be ~5.5 MiB.
+    private static final long MAX_BYTES_PER_DECODE = 64 * 1024;
+
+    @Test
+    void warmDecodeAllocationDoesNotGrowWithImageSize() throws Exception {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        assumeTrue(mx instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) mx;
+        assumeTrue(bean.isThreadAllocatedMemorySupported());
+        if (!bean.isThreadAllocatedMemoryEnabled()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        byte[] small = read("gallery1/1");
+        byte[] large = read("gallery1/3");
+
+        ByteBuffer out = ByteBuffer.allocate(1280 * 720 * 4);
+        WebPDecoderContext context = new WebPDecoderContext();
+        WebPDecoder.decode(large, size -> out, context);
+        WebPDecoder.decode(small, size -> out, context);
+
+        long smallBytes = allocatedBytes(bean, small, out, context);
+        long largeBytes = allocatedBytes(bean, large, out, context);
+
+        assertTrue(smallBytes < MAX_BYTES_PER_DECODE, "small decode allocated " + smallBytes + " bytes");
+        assertTrue(largeBytes < MAX_BYTES_PER_DECODE, "large decode allocated " + largeBytes + " bytes");
+    }
+
+    private static long allocatedBytes(
+            com.sun.management.ThreadMXBean bean,
+            byte[] webp,
+            ByteBuffer out,
+            WebPDecoderContext context
+    ) throws WebPDecodeException {
+        long thread = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(thread);
+        DecodedWebP decoded = WebPDecoder.decode(webp, size -> out, context);
+        long after = bean.getThreadAllocatedBytes(thread);
+        assertSame(out, decoded.rgba);
+        return after - before;
+    }
+}
@@ -0,0 +1,70 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Compares {@link Vp8LBitReader} with a bit-at-a-time reference across the word and byte refill paths. */
+final class Vp8LBitReaderTest {
+    @Test
+    void readBitsMatchesReference() throws Exception {
+        Random rnd = new Random(0x5EED);
+        for (int len : new int[] {0, 1, 7, 8, 9, 15, 16, 63, 64, 200}) {
+            byte[] raw = new byte[len + 5];
+            rnd.nextBytes(raw);
+            for (ByteOrder order : new ByteOrder[] {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+                // The reader must stay inside [off, off + len) of a larger buffer.
+                ByteBuffer buf = ByteBuffer.wrap(raw).order(order);
+                Vp8LBitReader br = new Vp8LBitReader(buf, 3, len);
+                long bitPos = 3 * 8L;
+                long bitEnd = (3L + len) * 8;
+                while (true) {
+                    int num = rnd.nextInt(33);
+                    if (bitPos + num > bitEnd) {
+                        assertThrows(WebPDecodeException.class, () -> br.readBits(num), "len " + len);
+                        break;
+                    }
+                    assertEquals(referenceBits(raw, bitPos, num), br.readBits(num), "len " + len + " at " + bitPos);
+                    bitPos += num;
+                }
+            }
+        }
+    }
+
+    @Test
+    void fillThenPeekAndConsume() throws Exception {
+        byte[] raw = new byte[32];
+        new Random(7).nextBytes(raw);
+        Vp8LBitReader br = new Vp8LBitReader(ByteBuffer.wrap(raw), 0, raw.length);
+        long bitPos = 0;
+        for (int step = 0; bitPos + 13 <= raw.length * 8L; step++) {
+            br.fill();
+            assertTrue(br.nbits > 56 || bitPos + br.nbits == raw.length * 8L, "step " + step);
+            int num = 1 + step % 13;
+            assertEquals(referenceBits(raw, bitPos, num), br.peek(num));
+            br.consume(num);
+            bitPos += num;
+        }
+        assertThrows(WebPDecodeException.class, () -> br.consume(br.nbits + 1));
+    }
+
+    @Test
+    void readBitsRejectsInvalidCounts() {
+        Vp8LBitReader br = new Vp8LBitReader(ByteBuffer.wrap(new byte[16]), 0, 16);
+        assertThrows(WebPDecodeException.class, () -> br.readBits(-1));
+        assertThrows(WebPDecodeException.class, () -> br.readBits(33));
+    }
+
+    private static int referenceBits(byte[] raw, long bitPos, int num) {
+        int v = 0;
+        for (int i = 0; i < num; i++) {
+            long p = bitPos + i;
+            v |= ((raw[(int) (p >>> 3)] >> (p & 7)) & 1) << i;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,62 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.ngengine.webp.decoder.TestFixtures.read;
+
+/** Checks that {@link Vp8LDecoder} streams rows to its sink in order, while entropy decoding is in progress. */
+final class Vp8LDecoderTest {
+    @Test
+    void rowsArriveInOrderAndMatchFullDecode() throws Exception {
+        String[] fixtures = {
+                "gallery2/1_webp_ll",
+                "gallery2/3_webp_ll",
+                "regression/color_index",
+                "regression/lossless_indexed_2bit_palette",
+                "regression/tiny",
+        };
+        for (String fixture : fixtures) {
+            byte[] webp = read(fixture);
+            WebPInfo info = WebPDecoder.probe(webp);
+            int[] expected = new int[info.width * info.height];
+            WebPDecoder.decodeInto(webp, expected, 0, info.width);
+
+            int[] actual = new int[expected.length];
+            int[] nextRow = {0};
+            Vp8LDecoder.decode(wrap(webp), info.imageOffset, info.imageLength, info.width, info.height, false,
+                    (y, argb, off, width) -> {
+                        assertEquals(nextRow[0]++, y, fixture);
+                        System.arraycopy(argb, off, actual, y * width, width);
+                    });
+            assertEquals(info.height, nextRow[0], fixture);
+            assertArrayEquals(expected, actual, fixture);
+        }
+    }
+
+    @Test
+    void truncatedStreamDeliversLeadingRowsFirst() throws Exception {
+        byte[] webp = read("gallery2/3_webp_ll");
+        WebPInfo info = WebPDecoder.probe(webp);
+        int[] expected = new int[info.width * info.height];
+        WebPDecoder.decodeInto(webp, expected, 0, info.width);
+
+        int[] rows = {0};
+        assertThrows(WebPDecodeException.class, () -> Vp8LDecoder.decode(
+                wrap(webp), info.imageOffset, info.imageLength / 2, info.width, info.height, false,
+                (y, argb, off, width) -> {
+                    int[] row = Arrays.copyOfRange(argb, off, off + width);
+                    assertArrayEquals(Arrays.copyOfRange(expected, y * width, (y + 1) * width), row, "row " + y);
+                    rows[0]++;
+                }));
+        assertTrue(rows[0] > 0 && rows[0] < info.height, "rows before the cut: " + rows[0]);
+    }
+
+    private static ByteBuffer wrap(byte[] webp) {
+        return ByteBuffer.wrap(webp).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
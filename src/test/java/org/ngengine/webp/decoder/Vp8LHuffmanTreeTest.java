@@ -0,0 +1,60 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Checks tree sharing in {@link Vp8LHuffmanTree.Scratch} and symbol peeking. */
+final class Vp8LHuffmanTreeTest {
+    @Test
+    void identicalCodesShareOneTree() throws Exception {
+        Vp8LHuffmanTree.Scratch scratch = new Vp8LHuffmanTree.Scratch();
+        int[] lengths = new int[40];
+        lengths[3] = 1;
+        lengths[7] = 2;
+        lengths[9] = 2;
+
+        Vp8LHuffmanTree first = scratch.shared(lengths, lengths.length);
+        int[] copy = lengths.clone();
+        assertSame(first, scratch.shared(copy, copy.length));
+
+        copy[9] = 0;
+        copy[10] = 2;
+        assertNotSame(first, scratch.shared(copy, copy.length));
+
+        assertSame(scratch.sharedSimple(5, -1), scratch.sharedSimple(5, -1));
+        assertSame(scratch.sharedSimple(5, 6), scratch.sharedSimple(5, 6));
+        assertNotSame(scratch.sharedSimple(5, 6), scratch.sharedSimple(6, 5));
+        assertNotSame(scratch.sharedSimple(5, -1), scratch.sharedSimple(5, 6));
+    }
+
+    @Test
+    void peekSymbolMatchesReadSymbol() throws Exception {
+        int[] lengths = new int[300];
+        // Complete code with lengths 1..12 plus a second 12-bit code, so some codes need the secondary table.
+        for (int len = 1; len <= 12; len++) {
+            lengths[len] = len;
+        }
+        lengths[13] = 12;
+        Vp8LHuffmanTree tree = Vp8LHuffmanTree.buildImplicit(lengths);
+
+        byte[] raw = new byte[64];
+        new Random(3).nextBytes(raw);
+        Vp8LBitReader br = new Vp8LBitReader(ByteBuffer.wrap(raw), 0, raw.length);
+        for (int i = 0; i < 40; i++) {
+            br.fill();
+            int peek = tree.peekSymbol(br);
+            int before = br.nbits;
+            int symbol = tree.readSymbol(br);
+            if (peek >= 0) {
+                assertEquals(symbol, peek & 0xFFF);
+                assertEquals(before - br.nbits, peek >>> 12);
+            } else {
+                assertTrue(before - br.nbits > 10, "only codes past the primary table are not peekable");
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Compares the row kernels of {@link Vp8LTransforms}, applied to whole images, with per-pixel readings of the spec. */
+final class Vp8LTransformsTest {
+    @Test
+    void predictorTransformMatchesReference() {
+        Random rnd = new Random(0x18);
+        int[][] sizes = {{1, 1}, {1, 9}, {9, 1}, {17, 5}, {64, 33}, {100, 40}};
+        for (int[] size : sizes) {
+            for (int sizeBits = 2; sizeBits <= 4; sizeBits++) {
+                int width = size[0];
+                int height = size[1];
+                int[] residuals = new int[width * height];
+                for (int i = 0; i < residuals.length; i++) {
+                    residuals[i] = rnd.nextInt();
+                }
+                int blocks = Vp8LTransforms.subsampleSize(width, sizeBits)
+                        * Vp8LTransforms.subsampleSize(height, sizeBits);
+                int[] modes = new int[blocks];
+                for (int b = 0; b < blocks; b++) {
+                    // Runs of equal modes exercise the merged spans.
+                    modes[b] = b > 0 && rnd.nextBoolean() ? modes[b - 1] : (rnd.nextInt(14) << 8);
+                }
+
+                int[] actual = residuals.clone();
+                for (int y = 0; y < height; y++) {
+                    Vp8LTransforms.applyPredictorRow(actual, y * width, width, y, sizeBits, modes);
+                }
+                int[] expected = reference(residuals, width, height, sizeBits, modes);
+                assertArrayEquals(expected, actual, width + "x" + height + " bits " + sizeBits);
+            }
+        }
+    }
+
+    @Test
+    void colorIndexingTransformMatchesReference() {
+        Random rnd = new Random(0x19);
+        for (int tableSize : new int[] {1, 2, 3, 4, 11, 16, 17, 200, 256}) {
+            int[] palette = new int[tableSize];
+            for (int i = 0; i < tableSize; i++) {
+                palette[i] = rnd.nextInt();
+            }
+            int bits = Vp8LTransforms.colorIndexBits(tableSize);
+            int bitsPerIndex = 8 >> bits;
+            for (int width : new int[] {1, 7, 8, 9, 33}) {
+                int height = 3;
+                int packedWidth = Vp8LTransforms.subsampleSize(width, bits);
+                int[] image = new int[width * height];
+                int[] expected = new int[width * height];
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        // Indexes past the palette are allowed and decode to transparent black.
+                        int index = rnd.nextInt(Math.min(1 << bitsPerIndex, tableSize + 2));
+                        int p = y * packedWidth + (x >> bits);
+                        image[p] |= index << (8 + (x & ((1 << bits) - 1)) * bitsPerIndex);
+                        expected[y * width + x] = index < tableSize ? palette[index] : 0;
+                    }
+                }
+                int[] lut = Vp8LTransforms.expansionTable(tableSize, palette, bits);
+                int[] packedRow = new int[packedWidth];
+                // Expanded rows are at least as long as packed ones, so working bottom-up never overwrites unread
+                // input.
+                for (int y = height - 1; y >= 0; y--) {
+                    Vp8LTransforms.applyColorIndexingRow(image, y * packedWidth, image, y * width, width, bits, lut,
+                            packedRow);
+                }
+                assertArrayEquals(expected, image, "palette " + tableSize + " width " + width);
+            }
+        }
+    }
+
+    private static int[] reference(int[] residuals, int width, int height, int sizeBits, int[] modes) {
+        int blockXsize = Vp8LTransforms.subsampleSize(width, sizeBits);
+        int[] out = new int[residuals.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int mode;
+                if (y == 0) {
+                    mode = x == 0 ? -1 : 1;
+                } else if (x == 0) {
+                    mode = 2;
+                } else {
+                    mode = (modes[(y >> sizeBits) * blockXsize + (x >> sizeBits)] >> 8) & 0xFF;
+                }
+                int i = y * width + x;
+                int pred = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int l = x > 0 ? channel(out[i - 1], shift) : 0;
+                    int t = y > 0 ? channel(out[i - width], shift) : 0;
+                    int tl = x > 0 && y > 0 ? channel(out[i - width - 1], shift) : 0;
+                    // The top-right of the last pixel in a row is the first pixel of the current row.
+                    int tr = y > 0 ? channel(out[i - width + 1], shift) : 0;
+                    pred |= predict(mode, shift, l, t, tl, tr, out, i, width, x, y) << shift;
+                }
+                int value = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    value |= ((channel(residuals[i], shift) + channel(pred, shift)) & 0xFF) << shift;
+                }
+                out[i] = value;
+            }
+        }
+        return out;
+    }
+
+    private static int predict(int mode, int shift, int l, int t, int tl, int tr, int[] out, int i, int width,
+                               int x, int y) {
+        switch (mode) {
+            case -1:
+            case 0:
+                return shift == 24 ? 0xFF : 0;
+            case 1:
+                return l;
+            case 2:
+                return t;
+            case 3:
+                return tr;
+            case 4:
+                return tl;
+            case 5:
+                return avg(avg(l, tr), t);
+            case 6:
+                return avg(l, tl);
+            case 7:
+                return avg(l, t);
+            case 8:
+                return avg(tl, t);
+            case 9:
+                return avg(t, tr);
+            case 10:
+                return avg(avg(l, tl), avg(t, tr));
+            case 11:
+            {
+                int manhattanLeft = 0;
+                int manhattanTop = 0;
+                for (int s = 0; s < 32; s += 8) {
+                    int cl = channel(out[i - 1], s);
+                    int ct = channel(out[i - width], s);
+                    int ctl = channel(out[i - width - 1], s);
+                    int p = cl + ct - ctl;
+                    manhattanLeft += Math.abs(p - cl);
+                    manhattanTop += Math.abs(p - ct);
+                }
+                return manhattanLeft < manhattanTop ? l : t;
+            }
+            case 12:
+                return clamp(l + t - tl);
+            case 13:
+            {
+                int a = avg(l, t);
+                return clamp(a + (a - tl) / 2);
+            }
+            default:
+                return 0;
+        }
+    }
+
+    private static int channel(int argb, int shift) {
+        return (argb >>> shift) & 0xFF;
+    }
+
+    private static int avg(int a, int b) {
+        return (a + b) / 2;
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+}
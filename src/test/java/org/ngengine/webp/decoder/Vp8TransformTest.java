@@ -2,6 +2,8 @@ package org.ngengine.webp.decoder;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /** Port of Rust unit tests in src/transform.rs. */
@@ -36,6 +38,50 @@ final class Vp8TransformTest {
         }
     }
 
+    /**
+     * Reference inverse DCT, a direct port of the Rust one: both passes over the whole block, in place.
+     * {@link Vp8Transform#addInverseTransform} must match it followed by {@link Vp8PredictionTest#addResidue}.
+     */
+    static void idct4x4(int[] block) {
+        // block length must be >= 16
+        for (int i = 0; i < 4; i++) {
+            long a1 = (long) block[i] + (long) block[8 + i];
+            long b1 = (long) block[i] - (long) block[8 + i];
+
+            long t1 = ((long) block[4 + i] * 35468L) >> 16;
+            long t2 = (long) block[12 + i] + (((long) block[12 + i] * 20091L) >> 16);
+            long c1 = t1 - t2;
+
+            t1 = (long) block[4 + i] + (((long) block[4 + i] * 20091L) >> 16);
+            t2 = ((long) block[12 + i] * 35468L) >> 16;
+            long d1 = t1 + t2;
+
+            block[i] = (int) (a1 + d1);
+            block[4 + i] = (int) (b1 + c1);
+            block[12 + i] = (int) (a1 - d1);
+            block[8 + i] = (int) (b1 - c1);
+        }
+
+        for (int i = 0; i < 4; i++) {
+            int base = 4 * i;
+            long a1 = (long) block[base] + (long) block[base + 2];
+            long b1 = (long) block[base] - (long) block[base + 2];
+
+            long t1 = ((long) block[base + 1] * 35468L) >> 16;
+            long t2 = (long) block[base + 3] + (((long) block[base + 3] * 20091L) >> 16);
+            long c1 = t1 - t2;
+
+            t1 = (long) block[base + 1] + (((long) block[base + 1] * 20091L) >> 16);
+            t2 = ((long) block[base + 3] * 35468L) >> 16;
+            long d1 = t1 + t2;
+
+            block[base] = (int) ((a1 + d1 + 4) >> 3);
+            block[base + 3] = (int) ((a1 - d1 + 4) >> 3);
+            block[base + 1] = (int) ((b1 + c1 + 4) >> 3);
+            block[base + 2] = (int) ((b1 - c1 + 4) >> 3);
+        }
+    }
+
     @Test
     void dctInverseRoundTrip() {
         int[] block = new int[] {38, 6, 210, 107, 42, 125, 185, 151, 241, 224, 125, 233, 227, 8, 57, 96};
@@ -44,8 +90,38 @@ final class Vp8TransformTest {
         dct4x4(dctBlock);
 
         int[] inverse = dctBlock.clone();
-        Vp8Transform.idct4x4(inverse);
+        idct4x4(inverse);
 
         assertArrayEquals(block, inverse);
     }
+
+    @Test
+    void addInverseTransformMatchesIdctPlusAdd() {
+        Random rnd = new Random(0x23);
+        int stride = 9;
+        for (int round = 0; round < 2000; round++) {
+            int[] coeffs = new int[16];
+            int end = 1 + rnd.nextInt(16);
+            // Large values reach the clamps; zigzag positions from end on stay zero.
+            int range = round % 2 == 0 ? 64 : 4096;
+            for (int n = 0; n < end; n++) {
+                coeffs[Vp8Common.ZIGZAG[n]] = rnd.nextInt(2 * range + 1) - range;
+            }
+            int kind = Vp8Transform.kind(end, coeffs[0] != 0);
+
+            byte[] expected = new byte[4 * stride];
+            rnd.nextBytes(expected);
+            byte[] actual = expected.clone();
+
+            int[] residue = coeffs.clone();
+            idct4x4(residue);
+            Vp8PredictionTest.addResidue(expected, residue, 0, 1, stride);
+
+            int[] in = new int[20];
+            System.arraycopy(coeffs, 0, in, 3, 16);
+            Vp8Transform.addInverseTransform(kind, in, 3, actual, 1, stride);
+
+            assertArrayEquals(expected, actual, "round " + round + " kind " + kind);
+        }
+    }
 }
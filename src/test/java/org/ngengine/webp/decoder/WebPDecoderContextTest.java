@@ -0,0 +1,52 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.ngengine.webp.decoder.TestFixtures.read;
+import static org.ngengine.webp.decoder.TestFixtures.toByteArray;
+
+/** Checks that a reused {@link WebPDecoderContext} decodes exactly like a fresh decoder. */
+final class WebPDecoderContextTest {
+    // Mixed sizes (grow and shrink), lossy with and without ALPH, plus lossless.
+    private static final String[] FIXTURES = {
+            "regression/dark",
+            "gallery1/1",
+            "gallery1/3",
+            "gallery2/1_webp_a",
+            "gallery1/2",
+            "gallery2/1_webp_ll",
+            "regression/tiny",
+            "gallery1/1",
+    };
+
+    @Test
+    void reusedContextMatchesFreshDecode() throws Exception {
+        WebPDecoderContext context = new WebPDecoderContext();
+        for (String fixture : FIXTURES) {
+            byte[] webp = read(fixture);
+
+            DecodedWebP fresh = WebPDecoder.decode(webp);
+            DecodedWebP reused = WebPDecoder.decode(webp, context);
+
+            assertEquals(fresh.width, reused.width, fixture);
+            assertEquals(fresh.height, reused.height, fixture);
+            assertEquals(fresh.hasAlpha, reused.hasAlpha, fixture);
+            assertArrayEquals(toByteArray(fresh.rgba), toByteArray(reused.rgba), fixture);
+        }
+    }
+
+    @Test
+    void contextStaysUsableAfterFailureAndClear() throws Exception {
+        WebPDecoderContext context = new WebPDecoderContext();
+        byte[] webp = read("gallery1/2");
+        byte[] expected = toByteArray(WebPDecoder.decode(webp).rgba);
+
+        byte[] truncated = java.util.Arrays.copyOf(webp, webp.length / 3);
+        assertThrows(WebPDecodeException.class, () -> WebPDecoder.decode(truncated, context));
+        assertArrayEquals(expected, toByteArray(WebPDecoder.decode(webp, context).rgba));
+
+        context.clear();
+        assertArrayEquals(expected, toByteArray(WebPDecoder.decode(webp, context).rgba));
+    }
+}
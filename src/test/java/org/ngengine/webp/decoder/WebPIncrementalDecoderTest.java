@@ -0,0 +1,95 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.ngengine.webp.decoder.TestFixtures.read;
+import static org.ngengine.webp.decoder.TestFixtures.toByteArray;
+
+/** Feeds fixtures to {@link WebPIncrementalDecoder} in pieces and compares with one-shot decoding. */
+final class WebPIncrementalDecoderTest {
+    private static final String[] FIXTURES = {
+            "gallery1/1",
+            "gallery1/3",
+            "gallery2/1_webp_a",
+            "gallery2/4_webp_a",
+            "gallery2/1_webp_ll",
+            "gallery2/2_webp_ll",
+            "gallery2/5_webp_ll",
+            "regression/tiny",
+    };
+
+    @Test
+    void chunkedFeedMatchesOneShotDecode() throws Exception {
+        for (String fixture : FIXTURES) {
+            byte[] webp = read(fixture);
+            byte[] expected = toByteArray(WebPDecoder.decode(webp).rgba);
+            for (int chunkSize : new int[] {1, 777, 4096}) {
+                if (chunkSize == 1 && webp.length > 64 * 1024) continue;
+                assertIncremental(fixture + " chunk=" + chunkSize, webp, expected, chunkSize);
+            }
+        }
+    }
+
+    @Test
+    void lossyRowsCompleteBeforeLastByte() throws Exception {
+        byte[] webp = read("gallery1/3");
+        WebPIncrementalDecoder decoder = new WebPIncrementalDecoder();
+        decoder.feed(ByteBuffer.wrap(webp, 0, webp.length / 2));
+        assertEquals(WebPIncrementalDecoder.Status.DECODING, decoder.status());
+        assertEquals(1280, decoder.width());
+        assertEquals(720, decoder.height());
+        assertTrue(decoder.completedRows() > 0 && decoder.completedRows() < 720, "rows=" + decoder.completedRows());
+        assertThrows(IllegalStateException.class, decoder::result);
+    }
+
+    @Test
+    void losslessRowsCompleteBeforeLastByte() throws Exception {
+        byte[] webp = read("gallery2/3_webp_ll");
+        WebPIncrementalDecoder decoder = new WebPIncrementalDecoder();
+        decoder.feed(ByteBuffer.wrap(webp, 0, webp.length / 2));
+        assertEquals(WebPIncrementalDecoder.Status.DECODING, decoder.status());
+        int rows = decoder.completedRows();
+        assertTrue(rows > 0 && rows < decoder.height(), "rows=" + rows);
+
+        decoder.feed(ByteBuffer.wrap(webp, webp.length / 2, webp.length - webp.length / 2));
+        assertEquals(WebPIncrementalDecoder.Status.DONE, decoder.status());
+        assertArrayEquals(toByteArray(WebPDecoder.decode(webp).rgba), toByteArray(decoder.result().rgba));
+    }
+
+    @Test
+    void rejectsNonWebPInput() {
+        WebPIncrementalDecoder decoder = new WebPIncrementalDecoder();
+        byte[] junk = "RIFX\0\0\0\0WEBPVP8 ".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        assertThrows(WebPDecodeException.class, () -> decoder.feed(ByteBuffer.wrap(junk)));
+        assertThrows(IllegalStateException.class, () -> decoder.feed(ByteBuffer.allocate(1)));
+    }
+
+    private static void assertIncremental(String label, byte[] webp, byte[] expected, int chunkSize) throws Exception {
+        WebPIncrementalDecoder decoder = new WebPIncrementalDecoder();
+        int rowBytes = 0;
+        int lastRows = 0;
+        for (int off = 0; off < webp.length; off += chunkSize) {
+            int n = Math.min(chunkSize, webp.length - off);
+            decoder.feed(ByteBuffer.wrap(webp, off, n));
+            if (decoder.status() == WebPIncrementalDecoder.Status.HEADERS) continue;
+
+            rowBytes = decoder.width() * 4;
+            int rows = decoder.completedRows();
+            assertTrue(rows >= lastRows, label);
+            if (rows > lastRows) {
+                // Rows reported complete must already hold their final values.
+                byte[] got = new byte[(rows - lastRows) * rowBytes];
+                decoder.rgba().duplicate().position(lastRows * rowBytes).get(got);
+                assertArrayEquals(Arrays.copyOfRange(expected, lastRows * rowBytes, rows * rowBytes), got,
+                        label + " rows " + lastRows + ".." + rows);
+                lastRows = rows;
+            }
+        }
+        assertEquals(WebPIncrementalDecoder.Status.DONE, decoder.status(), label);
+        assertArrayEquals(expected, toByteArray(decoder.result().rgba), label);
+    }
+}
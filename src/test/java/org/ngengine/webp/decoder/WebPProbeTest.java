@@ -0,0 +1,81 @@
+package org.ngengine.webp.decoder;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Checks {@link WebPDecoder#probe} against full decodes of the fixtures. */
+final class WebPProbeTest {
+    @Test
+    void probeMatchesDecode() throws Exception {
+        for (Path file : stillFixtures()) {
+            byte[] webp = Files.readAllBytes(file);
+            WebPInfo info = WebPDecoder.probe(webp);
+            DecodedWebP decoded = WebPDecoder.decode(webp);
+
+            String name = file.toString();
+            assertEquals(decoded.width, info.width, name);
+            assertEquals(decoded.height, info.height, name);
+            assertEquals(decoded.hasAlpha, info.hasAlpha, name);
+            assertFalse(info.animated, name);
+            assertEquals(decoded.rgba.remaining(), info.rgbaSize(), name);
+            String fourcc = new String(webp, info.imageOffset - 8, 4, StandardCharsets.US_ASCII);
+            assertEquals(fourcc.equals("VP8L") ? WebPInfo.Format.LOSSLESS : WebPInfo.Format.LOSSY, info.format, name);
+            assertEquals(info.format == WebPInfo.Format.LOSSLESS ? 0x2F : 0x9D,
+                    webp[info.imageOffset + (info.format == WebPInfo.Format.LOSSLESS ? 0 : 3)] & 0xFF, name);
+            assertTrue(info.imageOffset + info.imageLength <= webp.length, name);
+            assertEquals(info.alphaOffset >= 0, info.format == WebPInfo.Format.LOSSY && info.hasAlpha, name);
+        }
+    }
+
+    @Test
+    void probeNeedsOnlyTheHeaders() throws Exception {
+        for (Path file : stillFixtures()) {
+            byte[] webp = Files.readAllBytes(file);
+            WebPInfo full = WebPDecoder.probe(webp);
+            int headerEnd = full.imageOffset + 10;
+            if (full.alphaOffset > full.imageOffset) continue;
+
+            WebPInfo prefix = WebPDecoder.probe(ByteBuffer.wrap(webp, 0, headerEnd));
+            assertEquals(full.toString(), prefix.toString(), file.toString());
+            assertThrows(WebPDecodeException.class, () -> WebPDecoder.decode(Arrays.copyOf(webp, headerEnd)));
+        }
+    }
+
+    @Test
+    void animatedFilesAreReportedNotRejected() throws Exception {
+        for (String name : new String[] {"random_lossy", "random_lossless"}) {
+            byte[] webp = Files.readAllBytes(Path.of(".", "tests", "images", "animated", name + ".webp"));
+            WebPInfo info = WebPDecoder.probe(webp);
+            assertTrue(info.animated, name);
+            assertTrue(info.extended, name);
+            assertEquals(WebPInfo.Format.MIXED, info.format, name);
+            assertTrue(info.width > 0 && info.height > 0, name);
+            assertThrows(WebPDecodeException.class, () -> WebPDecoder.decode(webp));
+        }
+    }
+
+    @Test
+    void rejectsNonWebPInput() {
+        assertThrows(WebPDecodeException.class, () -> WebPDecoder.probe(new byte[11]));
+        assertThrows(WebPDecodeException.class, () -> WebPDecoder.probe(new byte[64]));
+    }
+
+    private static List<Path> stillFixtures() throws Exception {
+        try (Stream<Path> files = Files.walk(Path.of(".", "tests", "images"))) {
+            return files.filter(p -> p.toString().endsWith(".webp"))
+                    .filter(p -> !p.toString().contains("animated"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}